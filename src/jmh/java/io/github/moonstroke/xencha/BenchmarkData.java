@@ -0,0 +1,212 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * This class generates the datasets of the benchmarks, at various scales, from the playlist samples of the tests.
+ */
+final class BenchmarkData {
+
+	/** The stylesheet of the samples, that computes the duration of playlists. */
+	static final String STYLESHEET = "extract-playlist-duration.xsl";
+
+	private static final String DESCRIPTOR_NAMESPACE_URI = "http://moonstroke.github.io/xencha";
+
+
+	private BenchmarkData() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Copy a sample file from the classpath to the given directory.
+	 *
+	 * @param name      The name of the sample file
+	 * @param directory The destination directory
+	 *
+	 * @return The path to the copy
+	 *
+	 * @throws IOException if the copy fails
+	 */
+	static Path copySample(String name, Path directory) throws IOException {
+		Path target = directory.resolve(name);
+		try (InputStream inputStream = BenchmarkData.class.getResourceAsStream("/benchmark-data/" + name)) {
+			Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return target;
+	}
+
+	/**
+	 * Generate a playlists document by repeating the playlists of the sample until the requested count is reached.
+	 *
+	 * @param playlistCount The number of playlists of the document
+	 *
+	 * @return The generated document
+	 */
+	static Document playlists(int playlistCount) throws IOException, SAXException {
+		Document sample;
+		try (InputStream inputStream = BenchmarkData.class.getResourceAsStream("/benchmark-data/playlists.xml")) {
+			sample = newDocumentBuilder().parse(inputStream);
+		}
+		List<Element> samplePlaylists = childElements(sample.getDocumentElement());
+		Document document = newDocumentBuilder().newDocument();
+		Element root = document.createElement("playlists");
+		document.appendChild(root);
+		for (int i = 0; i < playlistCount; ++i) {
+			root.appendChild(document.importNode(samplePlaylists.get(i % samplePlaylists.size()), true));
+		}
+		return document;
+	}
+
+	/**
+	 * Generate a tree of the given shape, named and valued after the tracks of the sample playlists.
+	 *
+	 * @param elementCount   The number of elements of the tree
+	 * @param depth          The depth of the tree (at least 1)
+	 * @param attributeCount The number of attributes of each element
+	 *
+	 * @return The generated document
+	 */
+	static Document tree(int elementCount, int depth, int attributeCount) throws IOException, SAXException {
+		/* The fields of the first track: name, artist, duration, etc. */
+		List<Element> fields = childElements((Element) playlists(1).getElementsByTagName("track").item(0));
+		Document document = newDocumentBuilder().newDocument();
+		/* The fan-out of each level is chosen so that the tree reaches the given depth with the given size */
+		int fanOut = Math.max(1, (int) Math.ceil(Math.pow(elementCount, 1.0 / Math.max(1, depth - 1))));
+		int[] remaining = { elementCount - 1 };
+		Element root = document.createElement("tracks");
+		document.appendChild(root);
+		fill(root, fields, depth - 1, fanOut, attributeCount, remaining);
+		return document;
+	}
+
+	private static void fill(Element parent, List<Element> fields, int depth, int fanOut, int attributeCount,
+	                         int[] remaining) {
+		for (int i = 0; i < fanOut && remaining[0] > 0 && depth > 0; ++i) {
+			Element field = fields.get((remaining[0] + i) % fields.size());
+			Element element = parent.getOwnerDocument().createElement(field.getTagName());
+			for (int j = 0; j < attributeCount; ++j) {
+				Element valueField = fields.get(j % fields.size());
+				element.setAttribute(valueField.getTagName() + j, valueField.getTextContent());
+			}
+			parent.appendChild(element);
+			--remaining[0];
+			if (depth == 1) {
+				element.setTextContent(field.getTextContent());
+			} else {
+				fill(element, fields, depth - 1, fanOut, attributeCount, remaining);
+			}
+		}
+	}
+
+	/**
+	 * Write a test suite of the sample stylesheet in the given directory, whose cases all take as input a playlists
+	 * document of given size.
+	 *
+	 * @param directory     The directory in which to write the suite
+	 * @param playlistCount The number of playlists of the input document
+	 * @param caseCount     The number of cases of the suite
+	 *
+	 * @return The path to the descriptor of the suite
+	 */
+	static Path writeTestSuite(Path directory, int playlistCount, int caseCount)
+			throws IOException, SAXException, TransformerException {
+		Path stylesheet = copySample(STYLESHEET, directory);
+		Path input = directory.resolve("input.xml");
+		write(new DOMSource(playlists(playlistCount)), input);
+		Path expectedOutput = directory.resolve("expected-output.xml");
+		TransformerFactory transformerFactory = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl",
+		                                                                      null);
+		transformerFactory.newTransformer(new StreamSource(stylesheet.toFile()))
+		                  .transform(new StreamSource(input.toFile()), new StreamResult(expectedOutput.toFile()));
+		Path descriptor = directory.resolve("suite.xml");
+		try (Writer writer = Files.newBufferedWriter(descriptor, StandardCharsets.UTF_8)) {
+			writer.write("<test xmlns=\"" + DESCRIPTOR_NAMESPACE_URI + "\">\n");
+			writer.write("<name>Benchmark suite</name>\n");
+			writer.write("<source><path>" + STYLESHEET + "</path></source>\n<cases>\n");
+			for (int i = 1; i <= caseCount; ++i) {
+				writer.write("<case><name>Case " + i + "</name><input><path>input.xml</path></input>"
+				             + "<expectedOutput><path>expected-output.xml</path></expectedOutput></case>\n");
+			}
+			writer.write("</cases>\n</test>\n");
+		}
+		return descriptor;
+	}
+
+	/**
+	 * Write a test suite descriptor whose cases have inline inputs and expected outputs.
+	 *
+	 * @param directory The directory in which to write the descriptor
+	 * @param caseCount The number of cases of the suite
+	 *
+	 * @return The path to the descriptor
+	 */
+	static Path writeInlineDescriptor(Path directory, int caseCount)
+			throws IOException, SAXException, TransformerException {
+		Transformer serializer = TransformerFactory.newInstance().newTransformer();
+		serializer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter input = new StringWriter();
+		serializer.transform(new DOMSource(playlists(2)), new StreamResult(input));
+		Path descriptor = directory.resolve("inline-suite.xml");
+		try (Writer writer = Files.newBufferedWriter(descriptor, StandardCharsets.UTF_8)) {
+			writer.write("<test xmlns=\"" + DESCRIPTOR_NAMESPACE_URI + "\">\n");
+			writer.write("<source><path>" + STYLESHEET + "</path></source>\n<cases>\n");
+			for (int i = 1; i <= caseCount; ++i) {
+				writer.write("<case><name>Case " + i + "</name><input><inline>" + input + "</inline></input>"
+				             + "<expectedOutput><inline>" + input + "</inline></expectedOutput></case>\n");
+			}
+			writer.write("</cases>\n</test>\n");
+		}
+		return descriptor;
+	}
+
+	private static void write(DOMSource source, Path path) throws IOException, TransformerException {
+		TransformerFactory.newInstance().newTransformer().transform(source, new StreamResult(path.toFile()));
+	}
+
+	private static List<Element> childElements(Element parent) {
+		List<Element> children = new ArrayList<>();
+		for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				children.add((Element) child);
+			}
+		}
+		return children;
+	}
+
+	private static DocumentBuilder newDocumentBuilder() {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		try {
+			return factory.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.github.moonstroke.xencha.model.TestSuite;
+
+/**
+ * This benchmark measures the reading of test suite descriptors with inline inputs and expected outputs, with and
+ * without validation against the schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DescriptorReadingBenchmark {
+
+	@Param({ "10", "1000" })
+	int caseCount;
+
+	@Param({ "true", "false" })
+	boolean validate;
+
+	private Path descriptor;
+
+
+	@Setup
+	public void writeDescriptor() throws Exception {
+		Path directory = Files.createTempDirectory("xencha-benchmark");
+		directory.toFile().deleteOnExit();
+		descriptor = BenchmarkData.writeInlineDescriptor(directory, caseCount);
+		descriptor.toFile().deleteOnExit();
+	}
+
+	@Benchmark
+	public TestSuite readTestSuite() throws Exception {
+		return TestSuiteRunner.readTestSuite(descriptor, validate);
+	}
+}
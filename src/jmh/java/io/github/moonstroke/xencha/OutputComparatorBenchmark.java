@@ -0,0 +1,60 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+/**
+ * This benchmark measures the comparison of two equal trees by {@link OutputComparator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OutputComparatorBenchmark {
+
+	@Param({ "100", "10000" })
+	int elementCount;
+
+	@Param({ "3", "12" })
+	int depth;
+
+	@Param({ "0", "8" })
+	int attributeCount;
+
+	@Param({ "false", "true" })
+	boolean parallel;
+
+	private OutputComparator outputComparator;
+	private DOMSource expectedOutput;
+	private DOMResult obtainedOutput;
+
+
+	@Setup
+	public void generateTrees() throws Exception {
+		outputComparator = new OutputComparator(false, false, false, Collections.emptySet(), parallel);
+		/* Two distinct but equal trees, so that the comparison does not short-circuit on identity */
+		Document expected = BenchmarkData.tree(elementCount, depth, attributeCount);
+		Document obtained = BenchmarkData.tree(elementCount, depth, attributeCount);
+		expectedOutput = new DOMSource(expected);
+		obtainedOutput = new DOMResult(obtained);
+	}
+
+	@Benchmark
+	public boolean areEqual() {
+		return outputComparator.areEqual(expectedOutput, obtainedOutput);
+	}
+}
@@ -0,0 +1,56 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This benchmark measures the compilation of the sample stylesheets, with and without the stylesheet cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StylesheetCompilationBenchmark {
+
+	@Param({ "extract-playlist-duration.xsl", "html-to-fo.xsl" })
+	String stylesheetName;
+
+	private final TransformerFactory transformerFactory =
+			TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
+	private final StylesheetCache stylesheetCache = TestSuiteRunner.newStylesheetCache(StylesheetCache.DEFAULT_CAPACITY);
+	private Path stylesheet;
+
+
+	@Setup
+	public void copyStylesheet() throws Exception {
+		Path directory = Files.createTempDirectory("xencha-benchmark");
+		directory.toFile().deleteOnExit();
+		stylesheet = BenchmarkData.copySample(stylesheetName, directory);
+		stylesheet.toFile().deleteOnExit();
+	}
+
+	@Benchmark
+	public Templates compile() throws Exception {
+		return transformerFactory.newTemplates(new StreamSource(stylesheet.toFile()));
+	}
+
+	@Benchmark
+	public Templates compileCached() throws Exception {
+		return stylesheetCache.getTemplates(stylesheet);
+	}
+}
@@ -0,0 +1,55 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This benchmark measures the execution of a whole test suite, from the loading of its descriptor to the comparison
+ * of the outputs of its cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TestSuiteRunnerBenchmark {
+
+	private static final int CASE_COUNT = 5;
+
+	@Param({ "10", "1000" })
+	int playlistCount;
+
+	private final TestSuiteRunner testSuiteRunner = new TestSuiteRunner();
+	private Path descriptor;
+
+
+	@Setup
+	public void writeTestSuite() throws Exception {
+		Path directory = Files.createTempDirectory("xencha-benchmark");
+		directory.toFile().deleteOnExit();
+		descriptor = BenchmarkData.writeTestSuite(directory, playlistCount, CASE_COUNT);
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> file.toFile().deleteOnExit());
+		}
+		TestSuiteResult result = testSuiteRunner.runSuite(descriptor);
+		if (result.getStatus() != TestStatus.SUCCESS) {
+			throw new IllegalStateException("Invalid benchmark suite: " + result.getDetails());
+		}
+	}
+
+	@Benchmark
+	public TestSuiteResult runSuite() {
+		return testSuiteRunner.runSuite(descriptor);
+	}
+}
@@ -0,0 +1,181 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import io.github.moonstroke.xencha.model.Batch;
+import io.github.moonstroke.xencha.model.Case;
+import io.github.moonstroke.xencha.model.Source;
+
+/**
+ * This class expands the batches of a test suite into their cases: one for each file of the input directory of a
+ * batch, paired with the file of the same name in its expected output directory.
+ *
+ * The cases of a batch are produced lazily, in the order of the names of their input files. A background thread lists
+ * the directories and reads the small files of the next cases ahead, while the current ones are run; the number of
+ * cases read ahead is bounded.
+ */
+final class BatchCases implements Iterator<Case>, Closeable {
+
+	/* The number of cases prepared ahead of the one being run */
+	private static final int READ_AHEAD_CASES = 16;
+
+	/* The maximum size of the files read ahead: the parsing of bigger files outweighs the latency of their reading */
+	private static final long MAX_READ_AHEAD_SIZE = 256 * 1024;
+
+	/* Marks the end of the cases in the queue */
+	private static final Case END = new Case();
+
+	private final Path rootPath;
+	private final List<Batch> batches;
+	private final BlockingQueue<Case> preparedCases = new ArrayBlockingQueue<>(READ_AHEAD_CASES);
+	private Thread reader;
+	private Case nextCase;
+	private volatile RuntimeException failure;
+
+
+	/**
+	 * Prepare the expansion of the given batches.
+	 *
+	 * @param rootPath The directory against which to resolve the directories of the batches
+	 * @param batches  The batches to expand, in order
+	 */
+	BatchCases(Path rootPath, List<Batch> batches) {
+		this.rootPath = rootPath;
+		this.batches = batches;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextCase == null) {
+			if (batches.isEmpty()) {
+				return false;
+			}
+			if (reader == null) {
+				reader = new Thread(this::prepareCases, "xencha-batch-reader");
+				reader.setDaemon(true);
+				reader.start();
+			}
+			try {
+				nextCase = preparedCases.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while listing the cases of the batches", e);
+			}
+		}
+		if (nextCase == END) {
+			if (failure != null) {
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public Case next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Case c = nextCase;
+		nextCase = null;
+		return c;
+	}
+
+	/* Stop reading ahead, when the cases are not all run */
+	@Override
+	public void close() {
+		if (reader != null) {
+			reader.interrupt();
+		}
+	}
+
+	/* Run by the reader thread */
+	private void prepareCases() {
+		try {
+			for (Batch batch : batches) {
+				prepareCases(batch);
+			}
+		} catch (InterruptedException e) {
+			/* Closed: nobody takes the cases anymore */
+			return;
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		try {
+			preparedCases.put(END);
+		} catch (InterruptedException e) {
+			/* Closed meanwhile */
+		}
+	}
+
+	private void prepareCases(Batch batch) throws InterruptedException {
+		Path inputDirectory = rootPath.resolve(batch.getInputDirectory());
+		Path expectedOutputDirectory = rootPath.resolve(batch.getExpectedOutputDirectory());
+		/* Only the names are kept, to sort them: the order of the listing depends on the file system */
+		List<String> fileNames = new ArrayList<>();
+		try (DirectoryStream<Path> inputs = Files.newDirectoryStream(inputDirectory)) {
+			for (Path input : inputs) {
+				if (Files.isRegularFile(input)) {
+					fileNames.add(input.getFileName().toString());
+				}
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			throw new IllegalStateException("Cannot list the inputs of the batch " + inputDirectory + ": " + e, e);
+		}
+		Collections.sort(fileNames);
+		for (String fileName : fileNames) {
+			Case c = new Case();
+			c.setName(batch.getName() == null ? fileName : batch.getName() + "/" + fileName);
+			c.setInput(readAhead(inputDirectory.resolve(fileName)));
+			c.setExpectedOutput(readAhead(expectedOutputDirectory.resolve(fileName)));
+			c.setParameters(batch.getParameters());
+			preparedCases.put(c);
+		}
+	}
+
+	/* A missing or unreadable file is left for the case to report */
+	private static Source readAhead(Path path) {
+		ReadAheadSource source = new ReadAheadSource();
+		source.setPath(path.toString());
+		try {
+			if (Files.size(path) <= MAX_READ_AHEAD_SIZE) {
+				source.content = Files.readAllBytes(path);
+			}
+		} catch (IOException e) {
+			/* Read, and reported, by the case */
+		}
+		return source;
+	}
+
+	/**
+	 * Retrieve the content of the given external source, if it was read ahead.
+	 *
+	 * @param source The source of a case
+	 *
+	 * @return The content of the file of the source, or {@code null} if it has to be read
+	 */
+	static byte[] getContent(Source source) {
+		return source instanceof ReadAheadSource ? ((ReadAheadSource) source).content : null;
+	}
+
+
+	/* The absolute path to the file of a case of a batch, and its content if it was read ahead */
+	private static class ReadAheadSource extends Source {
+
+		private byte[] content;
+	}
+}
@@ -0,0 +1,164 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.sf.saxon.Version;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathSelector;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmMap;
+import net.sf.saxon.s9api.XdmValue;
+
+/**
+ * This class holds the benchmark statistics of the cases of a previous run, to compare the current ones against.
+ *
+ * Baselines are stored as JSON files, that list the statistics of each case along with the name of its suite. As a
+ * listener of a runner, a baseline records the statistics of the cases of its last run, in the order of their
+ * completion.
+ */
+public class BenchmarkBaseline implements TestListener {
+
+	private static final QName JSON_VARIABLE = new QName("json");
+
+	/* The statistics of each case, indexed by the names of its suite and of itself */
+	private final Map<String, Map<String, BenchmarkStatistics>> statistics = new LinkedHashMap<>();
+
+
+	/**
+	 * Create an empty baseline, to record the statistics of a run.
+	 */
+	public BenchmarkBaseline() {
+		/* Nothing to do */
+	}
+
+	/**
+	 * Load the baseline stored in the given file.
+	 *
+	 * @param path The path to the baseline file
+	 *
+	 * @return The baseline
+	 *
+	 * @throws IOException if the file cannot be read, or is not a valid baseline
+	 */
+	public static BenchmarkBaseline read(Path path) throws IOException {
+		String json = Files.readString(path, StandardCharsets.UTF_8);
+		BenchmarkBaseline baseline = new BenchmarkBaseline();
+		try {
+			XPathCompiler compiler = new Processor(false).newXPathCompiler();
+			compiler.declareVariable(JSON_VARIABLE);
+			XPathSelector selector = compiler.compile("parse-json($json)?cases?*").load();
+			selector.setVariable(JSON_VARIABLE, new XdmAtomicValue(json));
+			for (XdmItem item : selector) {
+				XdmMap entry = (XdmMap) item;
+				BenchmarkStatistics caseStatistics = new BenchmarkStatistics((int) getNumber(entry, "iterations"),
+				                                                             getNumber(entry, "meanDuration"),
+				                                                             getNumber(entry, "durationVariance"),
+				                                                             (long) getNumber(entry, "p50Duration"),
+				                                                             (long) getNumber(entry, "p90Duration"),
+				                                                             (long) getNumber(entry, "p99Duration"),
+				                                                             (long) getNumber(entry,
+				                                                                              "medianAllocatedBytes"));
+				baseline.statistics.computeIfAbsent(getString(entry, "suite"), k -> new LinkedHashMap<>())
+				                   .put(getString(entry, "case"), caseStatistics);
+			}
+		} catch (SaxonApiException | ClassCastException e) {
+			throw new IOException("Invalid benchmark baseline " + path + ": " + e.getMessage(), e);
+		}
+		return baseline;
+	}
+
+	private static String getString(XdmMap entry, String key) throws IOException {
+		return getItem(entry, key).getStringValue();
+	}
+
+	private static double getNumber(XdmMap entry, String key) throws IOException, SaxonApiException {
+		return ((XdmAtomicValue) getItem(entry, key)).getDoubleValue();
+	}
+
+	private static XdmItem getItem(XdmMap entry, String key) throws IOException {
+		XdmValue value = entry.get(key);
+		if (value == null || value.size() != 1) {
+			throw new IOException("Invalid benchmark baseline entry: no single value for \"" + key + "\"");
+		}
+		return value.itemAt(0);
+	}
+
+	@Override
+	public synchronized void testRunStarted() {
+		statistics.clear();
+	}
+
+	/* The cases that were not benchmarked are not recorded */
+	@Override
+	public synchronized void testCaseFinished(String testSuiteName, TestResult result) {
+		if (result.getBenchmarkStatistics() != null) {
+			statistics.computeIfAbsent(testSuiteName, k -> new LinkedHashMap<>())
+			          .put(result.getName(), result.getBenchmarkStatistics());
+		}
+	}
+
+	/**
+	 * Store the statistics of this baseline in a file.
+	 *
+	 * @param path The path to the baseline file, overwritten if it exists
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void write(Path path) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("{\n\t\"saxonVersion\": " + Json.toJson(Version.getProductVersion()) + ",\n");
+			writer.write("\t\"javaVersion\": " + Json.toJson(System.getProperty("java.version")) + ",\n");
+			writer.write("\t\"cases\": [");
+			String separator = "\n";
+			for (Map.Entry<String, Map<String, BenchmarkStatistics>> suiteStatistics : statistics.entrySet()) {
+				for (Map.Entry<String, BenchmarkStatistics> caseEntry : suiteStatistics.getValue().entrySet()) {
+					BenchmarkStatistics caseStatistics = caseEntry.getValue();
+					writer.write(separator);
+					separator = ",\n";
+					writer.write(String.format(Locale.ROOT,
+					                           "\t\t{\"suite\": %s, \"case\": %s, \"iterations\": %d, "
+					                           + "\"meanDuration\": %.1f, \"durationVariance\": %.1f, "
+					                           + "\"p50Duration\": %d, \"p90Duration\": %d, \"p99Duration\": %d, "
+					                           + "\"medianAllocatedBytes\": %d}",
+					                           Json.toJson(suiteStatistics.getKey()), Json.toJson(caseEntry.getKey()),
+					                           caseStatistics.getIterations(), caseStatistics.getMeanDuration(),
+					                           caseStatistics.getDurationVariance(), caseStatistics.getP50Duration(),
+					                           caseStatistics.getP90Duration(), caseStatistics.getP99Duration(),
+					                           caseStatistics.getMedianAllocatedBytes()));
+				}
+			}
+			writer.write("\n\t]\n}\n");
+		}
+	}
+
+	/**
+	 * Retrieve the statistics of a case of the baseline.
+	 *
+	 * @param testSuiteName The name of the suite of the case
+	 * @param testCaseName  The name of the case
+	 *
+	 * @return The statistics of the case, or {@code null} if the baseline has none
+	 */
+	public BenchmarkStatistics get(String testSuiteName, String testCaseName) {
+		Map<String, BenchmarkStatistics> suiteStatistics = statistics.get(testSuiteName);
+		return suiteStatistics == null ? null : suiteStatistics.get(testCaseName);
+	}
+
+	/* The statistics of each case, indexed by the names of its suite and of itself, in the order of their recording */
+	synchronized Map<String, Map<String, BenchmarkStatistics>> getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,202 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.util.Arrays;
+
+/**
+ * This class summarizes the measures of repeated runs of the transformation of a test case.
+ *
+ * The durations are expressed in nanoseconds.
+ */
+public class BenchmarkStatistics {
+
+	/* The quantile of the one-sided 99 % confidence level of the standard normal distribution */
+	private static final double NORMAL_QUANTILE = 2.3263478740408408;
+	/* The minimal relative increase of the mean duration considered as a slowdown, so that negligible but significant
+	 * differences are not reported */
+	private static final double MIN_SLOWDOWN = 0.05;
+
+	private final int iterations;
+	private final double meanDuration;
+	private final double durationVariance;
+	private final long p50Duration;
+	private final long p90Duration;
+	private final long p99Duration;
+	private final long medianAllocatedBytes;
+
+
+	/**
+	 * Construct statistics from their values.
+	 *
+	 * @param iterations           The number of measured runs
+	 * @param meanDuration         The mean duration of the runs
+	 * @param durationVariance     The sample variance of the durations of the runs
+	 * @param p50Duration          The median duration of the runs
+	 * @param p90Duration          The 90th percentile of the durations of the runs
+	 * @param p99Duration          The 99th percentile of the durations of the runs
+	 * @param medianAllocatedBytes The median number of bytes allocated by the runs
+	 */
+	public BenchmarkStatistics(int iterations, double meanDuration, double durationVariance, long p50Duration,
+	                           long p90Duration, long p99Duration, long medianAllocatedBytes) {
+		this.iterations = iterations;
+		this.meanDuration = meanDuration;
+		this.durationVariance = durationVariance;
+		this.p50Duration = p50Duration;
+		this.p90Duration = p90Duration;
+		this.p99Duration = p99Duration;
+		this.medianAllocatedBytes = medianAllocatedBytes;
+	}
+
+	/**
+	 * Compute the statistics of the given measures.
+	 *
+	 * @param durations      The durations of the runs
+	 * @param allocatedBytes The numbers of bytes allocated by the runs, in the same order
+	 *
+	 * @return The statistics of the measures
+	 *
+	 * @throws IllegalArgumentException if no measure is given
+	 */
+	public static BenchmarkStatistics of(long[] durations, long[] allocatedBytes) {
+		if (durations.length == 0) {
+			throw new IllegalArgumentException("No measure given");
+		}
+		long[] sortedDurations = durations.clone();
+		Arrays.sort(sortedDurations);
+		long[] sortedAllocatedBytes = allocatedBytes.clone();
+		Arrays.sort(sortedAllocatedBytes);
+		double mean = 0;
+		for (long duration : durations) {
+			mean += duration;
+		}
+		mean /= durations.length;
+		double variance = 0;
+		for (long duration : durations) {
+			variance += (duration - mean) * (duration - mean);
+		}
+		variance = durations.length == 1 ? 0 : variance / (durations.length - 1);
+		return new BenchmarkStatistics(durations.length, mean, variance, percentile(sortedDurations, 50),
+		                               percentile(sortedDurations, 90), percentile(sortedDurations, 99),
+		                               percentile(sortedAllocatedBytes, 50));
+	}
+
+	/* Nearest-rank percentile */
+	private static long percentile(long[] sortedValues, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sortedValues.length);
+		return sortedValues[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * Retrieve the number of measured runs.
+	 *
+	 * @return The number of iterations
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Retrieve the mean duration of the runs.
+	 *
+	 * @return The mean duration
+	 */
+	public double getMeanDuration() {
+		return meanDuration;
+	}
+
+	/**
+	 * Retrieve the sample variance of the durations of the runs.
+	 *
+	 * @return The variance of the durations
+	 */
+	public double getDurationVariance() {
+		return durationVariance;
+	}
+
+	/**
+	 * Retrieve the median duration of the runs.
+	 *
+	 * @return The 50th percentile of the durations
+	 */
+	public long getP50Duration() {
+		return p50Duration;
+	}
+
+	/**
+	 * Retrieve the duration under which 90 % of the runs completed.
+	 *
+	 * @return The 90th percentile of the durations
+	 */
+	public long getP90Duration() {
+		return p90Duration;
+	}
+
+	/**
+	 * Retrieve the duration under which 99 % of the runs completed.
+	 *
+	 * @return The 99th percentile of the durations
+	 */
+	public long getP99Duration() {
+		return p99Duration;
+	}
+
+	/**
+	 * Retrieve the median number of bytes allocated by the runs.
+	 *
+	 * @return The median allocated memory
+	 */
+	public long getMedianAllocatedBytes() {
+		return medianAllocatedBytes;
+	}
+
+	/**
+	 * Retrieve the number of transformations that can be run per second, sequentially.
+	 *
+	 * @return The throughput of the transformation, in operations per second
+	 */
+	public double getThroughput() {
+		return 1e9 / meanDuration;
+	}
+
+	/**
+	 * Determine whether these measures are significantly slower than those of a baseline.
+	 *
+	 * The mean durations are compared with Welch's t-test, at the one-sided 99 % confidence level. Slowdowns of less
+	 * than 5 % are not reported, however significant.
+	 *
+	 * @param baseline The statistics of the reference measures
+	 *
+	 * @return {@code true} if the runs are slower than those of the baseline
+	 */
+	public boolean isSlowerThan(BenchmarkStatistics baseline) {
+		if (meanDuration <= baseline.meanDuration * (1 + MIN_SLOWDOWN)) {
+			return false;
+		}
+		double standardError2 = durationVariance / iterations;
+		double baselineStandardError2 = baseline.durationVariance / baseline.iterations;
+		double standardError = Math.sqrt(standardError2 + baselineStandardError2);
+		if (standardError == 0) {
+			return true;
+		}
+		double t = (meanDuration - baseline.meanDuration) / standardError;
+		/* Welch-Satterthwaite degrees of freedom */
+		double degreesOfFreedom = (standardError2 + baselineStandardError2) * (standardError2 + baselineStandardError2)
+		                          / (standardError2 * standardError2 / Math.max(iterations - 1, 1)
+		                             + baselineStandardError2 * baselineStandardError2
+		                               / Math.max(baseline.iterations - 1, 1));
+		return t > studentQuantile(degreesOfFreedom);
+	}
+
+	/* Cornish-Fisher expansion of the quantile of Student's t distribution, from that of the normal distribution:
+	 * precise enough beyond a few degrees of freedom */
+	private static double studentQuantile(double degreesOfFreedom) {
+		double z = NORMAL_QUANTILE;
+		double z3 = z * z * z;
+		double z5 = z3 * z * z;
+		double z7 = z5 * z * z;
+		return z + (z3 + z) / (4 * degreesOfFreedom)
+		       + (5 * z5 + 16 * z3 + 3 * z) / (96 * degreesOfFreedom * degreesOfFreedom)
+		       + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * degreesOfFreedom * degreesOfFreedom * degreesOfFreedom);
+	}
+}
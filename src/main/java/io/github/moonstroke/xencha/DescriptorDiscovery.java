@@ -0,0 +1,467 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * This class finds the test suite descriptors designated by the arguments of a run: descriptor files, directories and
+ * glob patterns.
+ *
+ * Directories and patterns are walked in parallel, and the descriptors are made available as soon as they are found,
+ * so that the first suites can run before the walk is finished: iterating over this collection blocks until the next
+ * descriptor is found or the walk is finished. The walk starts on the first access to the collection. The descriptors
+ * are told apart from the other XML files of the walked trees by their root element; the order in which they are found
+ * is not specified. The directories that cannot be listed do not fail the iteration: they are kept apart, for the run
+ * to report them.
+ */
+final class DescriptorDiscovery extends AbstractCollection<Path> {
+
+	private static final String DESCRIPTOR_NAMESPACE_URI = "http://moonstroke.github.io/xencha";
+
+	private final List<Path> files;
+	private final List<Root> roots;
+	private List<Pattern> includes = Collections.emptyList();
+	private List<Pattern> excludes = Collections.emptyList();
+	/* The descriptors found so far, guarded by this */
+	private final List<Path> found = new ArrayList<>();
+	private boolean started;
+	private boolean finished;
+	/* The directories that could not be walked, with their error */
+	private final Map<Path, IOException> failures = new LinkedHashMap<>();
+
+
+	private DescriptorDiscovery(List<Path> files, List<Root> roots) {
+		this.files = files;
+		this.roots = roots;
+	}
+
+	/**
+	 * Prepare the discovery of the descriptors designated by the given arguments.
+	 *
+	 * @param rawPaths The paths to descriptor files or to directories, or glob patterns
+	 *
+	 * @return The discovery, not started yet
+	 *
+	 * @throws FileNotFoundException if a given path is neither a file nor a directory, or if the fixed part of a
+	 *                               pattern is not a directory
+	 */
+	static DescriptorDiscovery of(String... rawPaths) throws FileNotFoundException {
+		List<Path> files = new ArrayList<>();
+		List<Root> roots = new ArrayList<>();
+		for (String rawPath : rawPaths) {
+			if (isGlob(rawPath)) {
+				String[] parts = splitGlob(rawPath);
+				Path directory = Path.of(parts[0]);
+				if (!Files.isDirectory(directory)) {
+					throw new FileNotFoundException(rawPath);
+				}
+				roots.add(new Root(directory, toRegex(parts[1])));
+				continue;
+			}
+			Path path = Path.of(rawPath);
+			if (Files.isDirectory(path)) {
+				roots.add(new Root(path, null));
+			} else if (Files.isRegularFile(path)) {
+				files.add(path);
+			} else {
+				throw new FileNotFoundException(rawPath);
+			}
+		}
+		return new DescriptorDiscovery(files, roots);
+	}
+
+	/* Whether the given argument is a glob pattern rather than a path */
+	static boolean isGlob(String rawPath) {
+		for (int i = 0; i < rawPath.length(); ++i) {
+			if ("*?[{".indexOf(rawPath.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Split a pattern into the directory to walk, the longest leading part of the pattern without wildcards, and the
+	 * pattern of the paths relative to that directory */
+	private static String[] splitGlob(String glob) {
+		String[] segments = glob.replace(File.separatorChar, '/').split("/", -1);
+		int patternStart = 0;
+		while (!isGlob(segments[patternStart])) {
+			++patternStart;
+		}
+		String directory = String.join("/", Arrays.asList(segments).subList(0, patternStart));
+		if (directory.isEmpty()) {
+			directory = patternStart == 0 ? "." : "/";
+		}
+		String pattern = String.join("/", Arrays.asList(segments).subList(patternStart, segments.length));
+		return new String[] { directory, pattern };
+	}
+
+	/* Resolve a relative path or pattern against the given directory */
+	static String resolve(Path workingDirectory, String rawPath) {
+		if (!isGlob(rawPath)) {
+			return workingDirectory.resolve(rawPath).toString();
+		}
+		String[] parts = splitGlob(rawPath);
+		return workingDirectory.resolve(parts[0]).toString() + "/" + parts[1];
+	}
+
+	/*
+	 * Translate a glob pattern into a regular expression over paths with slash separators: a star and a question mark
+	 * match within a segment, a double star matches across segments (followed by a slash, it matches zero or more whole
+	 * segments), [...] matches a character of a class ([!...] of its complement) and {a,b} matches one of the given
+	 * alternatives.
+	 */
+	static Pattern toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int groupDepth = 0;
+		for (int i = 0; i < glob.length(); ++i) {
+			char c = glob.charAt(i);
+			switch (c) {
+			case '*':
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					++i;
+					if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+						++i;
+						regex.append("(?:.*/)?");
+					} else {
+						regex.append(".*");
+					}
+				} else {
+					regex.append("[^/]*");
+				}
+				break;
+			case '?':
+				regex.append("[^/]");
+				break;
+			case '[':
+				int classEnd = glob.indexOf(']', i + 2);
+				if (classEnd < 0) {
+					regex.append("\\[");
+					break;
+				}
+				String characterClass = glob.substring(i + 1, classEnd).replace("\\", "\\\\").replace("[", "\\[");
+				if (characterClass.startsWith("!")) {
+					characterClass = "^" + characterClass.substring(1);
+				}
+				regex.append('[').append(characterClass).append(']');
+				i = classEnd;
+				break;
+			case '{':
+				++groupDepth;
+				regex.append("(?:");
+				break;
+			case '}':
+				if (groupDepth > 0) {
+					--groupDepth;
+					regex.append(')');
+				} else {
+					regex.append("\\}");
+				}
+				break;
+			case ',':
+				regex.append(groupDepth > 0 ? "|" : ",");
+				break;
+			default:
+				if (!Character.isLetterOrDigit(c)) {
+					regex.append('\\');
+				}
+				regex.append(c);
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Restrict the descriptors to those whose path or suite name matches one of the included patterns, if any, and
+	 * none of the excluded ones.
+	 *
+	 * @param includes The glob patterns of the descriptors to run
+	 * @param excludes The glob patterns of the descriptors to skip
+	 *
+	 * @throws IllegalStateException if the discovery has started
+	 */
+	synchronized void setFilters(Collection<String> includes, Collection<String> excludes) {
+		if (started) {
+			throw new IllegalStateException("The discovery has started");
+		}
+		this.includes = toRegexes(includes);
+		this.excludes = toRegexes(excludes);
+	}
+
+	private static List<Pattern> toRegexes(Collection<String> globs) {
+		List<Pattern> regexes = new ArrayList<>(globs.size());
+		for (String glob : globs) {
+			regexes.add(toRegex(glob));
+		}
+		return regexes;
+	}
+
+	private boolean isAccepted(Path path, String name) {
+		String pathString = path.toString().replace(File.separatorChar, '/');
+		for (Pattern exclude : excludes) {
+			if (matches(exclude, pathString, name)) {
+				return false;
+			}
+		}
+		if (includes.isEmpty()) {
+			return true;
+		}
+		for (Pattern include : includes) {
+			if (matches(include, pathString, name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(Pattern pattern, String path, String name) {
+		return pattern.matcher(path).matches() || name != null && pattern.matcher(name).matches();
+	}
+
+	private synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		boolean filtered = !includes.isEmpty() || !excludes.isEmpty();
+		for (Path file : files) {
+			/* The given files are run even if they do not look like descriptors, to report why they are not */
+			if (!filtered || isAccepted(file, readSuiteName(file))) {
+				found.add(file);
+			}
+		}
+		if (roots.isEmpty()) {
+			finished = true;
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.execute(new RecursiveAction() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				try {
+					List<DirectoryWalk> walks = new ArrayList<>(roots.size());
+					for (Root root : roots) {
+						walks.add(new DirectoryWalk(root, root.directory));
+					}
+					invokeAll(walks);
+				} finally {
+					finish();
+					pool.shutdown();
+				}
+			}
+		});
+	}
+
+	private synchronized void addDescriptor(Path descriptor) {
+		found.add(descriptor);
+		notifyAll();
+	}
+
+	private synchronized void fail(Path directory, IOException e) {
+		failures.put(directory, e);
+	}
+
+	private synchronized void finish() {
+		finished = true;
+		notifyAll();
+	}
+
+	/* Wait until the descriptor of given index is found or the walk is finished, and tell if it was found */
+	private synchronized boolean awaitDescriptor(int index) {
+		start();
+		while (index >= found.size() && !finished) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while discovering the descriptors", e);
+			}
+		}
+		return index < found.size();
+	}
+
+	/*
+	 * Wait for the end of the walk, and take the directories that could not be walked, with their error: they are
+	 * only returned once.
+	 */
+	synchronized Map<Path, IOException> takeFailures() {
+		awaitDescriptor(Integer.MAX_VALUE);
+		Map<Path, IOException> takenFailures = new LinkedHashMap<>(failures);
+		failures.clear();
+		return takenFailures;
+	}
+
+	private synchronized Path get(int index) {
+		return found.get(index);
+	}
+
+	@Override
+	public Iterator<Path> iterator() {
+		return new Iterator<Path>() {
+
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return awaitDescriptor(index);
+			}
+
+			@Override
+			public Path next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return get(index++);
+			}
+		};
+	}
+
+	/* Waits for the end of the walk */
+	@Override
+	public int size() {
+		int size = 0;
+		while (awaitDescriptor(size)) {
+			++size;
+		}
+		return size;
+	}
+
+	/*
+	 * Read the name of the suite of a descriptor: the empty string if the suite is unnamed, or null if the file is not
+	 * a descriptor. A file that cannot be read or parsed is deemed an unnamed descriptor, so that the run reports it.
+	 */
+	private static String readSuiteName(Path file) {
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			XMLStreamReader reader = TestSuiteRunner.TestSuiteXMLInputFactory.INSTANCE.get()
+			                                                                  .createXMLStreamReader(inputStream);
+			try {
+				reader.nextTag();
+				if (!DESCRIPTOR_NAMESPACE_URI.equals(reader.getNamespaceURI())
+				    || !"test".equals(reader.getLocalName())) {
+					return null;
+				}
+				/* The children of the root come in any order: the name is looked for among them, skipping their
+				 * subtrees, until the end of the root */
+				int depth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						if (depth == 0 && DESCRIPTOR_NAMESPACE_URI.equals(reader.getNamespaceURI())
+						    && "name".equals(reader.getLocalName())) {
+							return reader.getElementText();
+						}
+						++depth;
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						if (depth == 0) {
+							break;
+						}
+						--depth;
+					}
+				}
+				return "";
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			return "";
+		}
+	}
+
+
+	/* A directory to walk, and the pattern of the paths of its descriptors relative to it (null for any XML file) */
+	private static class Root {
+
+		private final Path directory;
+		private final Pattern pattern;
+
+
+		Root(Path directory, Pattern pattern) {
+			this.directory = directory;
+			this.pattern = pattern;
+		}
+	}
+
+	private class DirectoryWalk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Root root;
+		private final transient Path directory;
+
+
+		DirectoryWalk(Root root, Path directory) {
+			this.root = root;
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute() {
+			List<DirectoryWalk> subdirectoryWalks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					/* Symbolic links to directories are not followed, to avoid cycles */
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+						subdirectoryWalks.add(new DirectoryWalk(root, entry));
+						/* Walk the subdirectories while this one is being listed */
+						subdirectoryWalks.get(subdirectoryWalks.size() - 1).fork();
+					} else if (Files.isRegularFile(entry)) {
+						consider(entry);
+					}
+				}
+			} catch (IOException e) {
+				fail(directory, e);
+			} catch (DirectoryIteratorException e) {
+				fail(directory, e.getCause());
+			}
+			for (DirectoryWalk subdirectoryWalk : subdirectoryWalks) {
+				subdirectoryWalk.join();
+			}
+		}
+
+		private void consider(Path file) {
+			if (root.pattern == null) {
+				if (!file.getFileName().toString().endsWith(".xml")) {
+					return;
+				}
+			} else {
+				String relativePath = root.directory.relativize(file).toString().replace(File.separatorChar, '/');
+				if (!root.pattern.matcher(relativePath).matches()) {
+					return;
+				}
+			}
+			String name = readSuiteName(file);
+			if (name != null && isAccepted(file, name)) {
+				addDescriptor(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+/**
+ * This enum lists the levels of the diagnostics attached to the results of the test cases.
+ *
+ * @see TestResult#getDiagnostics()
+ */
+public enum DiagnosticsLevel {
+
+	/**
+	 * No diagnostics are produced.
+	 */
+	OFF,
+	/**
+	 * The failing cases are given a diff of their outputs around the first difference.
+	 */
+	ON_FAILURE,
+	/**
+	 * The failing cases are given a diff of their outputs around the first difference, and the successful ones their
+	 * whole output.
+	 */
+	ALWAYS,
+}
@@ -0,0 +1,670 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class compares output trees through canonical structural digests.
+ *
+ * The digest of a node is computed from its name, its attributes (regardless of their order) and the digests of its
+ * children, in the manner of a Merkle tree; adjacent text nodes are digested as one. Two trees with equal digests are
+ * considered equal without further comparison. Otherwise, the digests of their subtrees lead directly to the first
+ * difference.
+ *
+ * The digest of the obtained output can be computed while it is produced, through a {@link Digester}. The digests of
+ * the expected outputs read from files are cached for the lifetime of the comparator, and optionally on disk for the
+ * next runs, as long as the files are not modified. A document without element has a digest of its own.
+ *
+ * Instances of this class are thread-safe, and multiple processes can share a same digest directory.
+ *
+ * The comparison follows the same rules as {@link OutputComparator}, except that namespace declarations are not
+ * compared as attributes: only the namespaces of the element and attribute names are.
+ */
+public class DigestOutputComparator {
+
+	private static final byte ELEMENT = 'E';
+	private static final byte ATTRIBUTE = 'A';
+	private static final byte TEXT = 'T';
+	private static final byte COMMENT = 'C';
+	private static final byte PROCESSING_INSTRUCTION = 'P';
+	private static final byte END = '$';
+
+	private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+	static {
+		PARSER_FACTORY.setNamespaceAware(true);
+	}
+
+	/* SAX parsers are not thread-safe */
+	private static final ThreadLocal<SAXParser> PARSER = ThreadLocal.withInitial(() -> {
+		try {
+			return PARSER_FACTORY.newSAXParser();
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IllegalStateException(e);
+		}
+	});
+
+	private final boolean ignoreWhitespaceNodes;
+	private final boolean ignoreDifferingNsPrefixes;
+	private final Path digestDirectory;
+	private final Map<FileKey, byte[]> fileDigests = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Construct a new digest output comparator.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 */
+	public DigestOutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes) {
+		this(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes, null);
+	}
+
+	/**
+	 * Construct a new digest output comparator, that stores the digests of the expected output files on disk.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 * @param digestDirectory           The directory where to store the digests, created on the first store if it does
+	 *                                  not exist; or {@code null} to only retain them in memory
+	 */
+	public DigestOutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes,
+	                              Path digestDirectory) {
+		this.ignoreWhitespaceNodes = ignoreWhitespaceNodes;
+		this.ignoreDifferingNsPrefixes = ignoreDifferingNsPrefixes;
+		this.digestDirectory = digestDirectory;
+	}
+
+	/* The comparators with other options share the digest directory, whose entries are keyed by the options */
+	Path getDigestDirectory() {
+		return digestDirectory;
+	}
+
+	/**
+	 * Compute the digest of the given document.
+	 *
+	 * @param document The document to digest
+	 *
+	 * @return The digest of the document element
+	 */
+	public byte[] digest(Document document) {
+		Node root = document.getDocumentElement();
+		return root == null ? emptyDocumentDigest() : digest(root, null);
+	}
+
+	/* Only elements are digested: the digest of nothing cannot be that of an element */
+	private static byte[] emptyDocumentDigest() {
+		return StylesheetCache.newDigest().digest();
+	}
+
+	/**
+	 * Compute the digest of the XML document stored in the given file, without building it in memory.
+	 *
+	 * The digest is computed once, and then retrieved from a cache as long as the file is not modified; it is also
+	 * looked up in, and stored into, the digest directory of the comparator if it has one.
+	 *
+	 * @param path The path to the document
+	 *
+	 * @return The digest of the document element
+	 *
+	 * @throws IOException  if the file cannot be read
+	 * @throws SAXException if the file is not a well-formed XML document
+	 */
+	public byte[] digest(Path path) throws IOException, SAXException {
+		Path realPath = path.toRealPath();
+		BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+		FileKey key = new FileKey(realPath, attributes.lastModifiedTime().toMillis(), attributes.size());
+		byte[] digest = fileDigests.get(key);
+		if (digest == null) {
+			Path entry = digestDirectory == null ? null : ResultCache.entryPath(digestDirectory, digestKey(key));
+			digest = entry == null ? null : readEntry(entry);
+			if (digest == null) {
+				digest = digest(new InputSource(realPath.toUri().toString()));
+				if (entry != null) {
+					try {
+						ResultCache.writeEntry(entry, digest);
+					} catch (IOException e) {
+						/* The stored digests are only an optimization: the file will be parsed again next time */
+					}
+				}
+			}
+			/* Drop the digests of previous versions of the file */
+			fileDigests.keySet().removeIf(k -> k.path.equals(realPath));
+			fileDigests.put(key, digest);
+		}
+		return digest;
+	}
+
+	/**
+	 * Compute the digest of the XML document read from the given source, without building it in memory.
+	 *
+	 * Unlike those of files, the digests of sources are neither cached nor stored.
+	 *
+	 * @param source The source of the document, such as the content of a file already read
+	 *
+	 * @return The digest of the document element
+	 *
+	 * @throws IOException  if the source cannot be read
+	 * @throws SAXException if the source is not a well-formed XML document
+	 */
+	public byte[] digest(InputSource source) throws IOException, SAXException {
+		Digester digester = newDigester(null, null);
+		SAXParser parser = PARSER.get();
+		parser.setProperty("http://xml.org/sax/properties/lexical-handler", digester);
+		parser.parse(source, digester);
+		return digester.getDigest();
+	}
+
+	/* The key of the stored digest of a file: the digests of a same file differ with the options */
+	private byte[] digestKey(FileKey key) {
+		MessageDigest digest = StylesheetCache.newDigest();
+		digest.update((byte) (ignoreWhitespaceNodes ? 1 : 0));
+		digest.update((byte) (ignoreDifferingNsPrefixes ? 1 : 0));
+		digestString(digest, key.path.toString());
+		digest.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(key.lastModifiedTime).putLong(key.size).array());
+		return digest.digest();
+	}
+
+	/* Return null if the entry is missing or unreadable */
+	private static byte[] readEntry(Path entry) {
+		try {
+			byte[] digest = Files.readAllBytes(entry);
+			return digest.length == StylesheetCache.newDigest().getDigestLength() ? digest : null;
+		} catch (IOException e) {
+			/* Not stored, or unreadable: it will be overwritten */
+			return null;
+		}
+	}
+
+	/**
+	 * Create a handler that computes the digest of a document from its SAX events.
+	 *
+	 * The handler can forward the events it receives, e.g. to build the document in parallel.
+	 *
+	 * @param next        The handler to which to forward the events, or {@code null}
+	 * @param nextLexical The handler to which to forward the lexical events, or {@code null}
+	 *
+	 * @return A new digester
+	 */
+	public Digester newDigester(ContentHandler next, LexicalHandler nextLexical) {
+		return new Digester(next, nextLexical);
+	}
+
+	/**
+	 * Find the first difference between two documents.
+	 *
+	 * @param expectedOutput The expected document
+	 * @param obtainedOutput The obtained document
+	 *
+	 * @return The first difference, or {@code null} if the documents are equal
+	 */
+	public Mismatch findMismatch(Document expectedOutput, Document obtainedOutput) {
+		Map<Node, byte[]> expectedDigests = new IdentityHashMap<>();
+		Map<Node, byte[]> obtainedDigests = new IdentityHashMap<>();
+		Node expectedRoot = expectedOutput.getDocumentElement();
+		Node obtainedRoot = obtainedOutput.getDocumentElement();
+		if (expectedRoot == null || obtainedRoot == null) {
+			/* Nothing but an element is compared */
+			return expectedRoot == obtainedRoot ? null
+			                                    : new Mismatch(expectedRoot, obtainedRoot, expectedOutput, obtainedOutput,
+			                                                   "/node()[1]");
+		}
+		if (Arrays.equals(digest(expectedRoot, expectedDigests), digest(obtainedRoot, obtainedDigests))) {
+			return null;
+		}
+		while (true) {
+			if (!haveSameHeader(expectedRoot, obtainedRoot)) {
+				return Mismatch.between(expectedRoot, obtainedRoot);
+			}
+			List<Node> expectedChildren = children(expectedRoot);
+			List<Node> obtainedChildren = children(obtainedRoot);
+			int commonChildCount = Math.min(expectedChildren.size(), obtainedChildren.size());
+			int i = 0;
+			while (i < commonChildCount
+			       && Arrays.equals(expectedDigests.get(expectedChildren.get(i)),
+			                        obtainedDigests.get(obtainedChildren.get(i)))) {
+				++i;
+			}
+			if (i == commonChildCount) {
+				/* A child is missing or in excess */
+				return new Mismatch(i < expectedChildren.size() ? expectedChildren.get(i) : null,
+				                    i < obtainedChildren.size() ? obtainedChildren.get(i) : null, expectedRoot,
+				                    obtainedRoot, Mismatch.pathOf(expectedRoot) + "/node()[" + (i + 1) + ']');
+			}
+			expectedRoot = expectedChildren.get(i);
+			obtainedRoot = obtainedChildren.get(i);
+			if (expectedRoot.getNodeType() != Node.ELEMENT_NODE || obtainedRoot.getNodeType() != Node.ELEMENT_NODE) {
+				return Mismatch.between(expectedRoot, obtainedRoot);
+			}
+		}
+	}
+
+	/* Compute the digest of the given node, and record the digests of its subtrees in the given map, if any */
+	private byte[] digest(Node node, Map<Node, byte[]> digests) {
+		MessageDigest digest = StylesheetCache.newDigest();
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			digest.update(ELEMENT);
+			digestName(digest, node.getNamespaceURI(), node.getLocalName(), node.getPrefix());
+			List<Node> attributes = attributes(node);
+			digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(attributes.size()).array());
+			for (Node attribute : attributes) {
+				digest.update(ATTRIBUTE);
+				digestName(digest, attribute.getNamespaceURI(), attribute.getLocalName(), attribute.getPrefix());
+				digestString(digest, attribute.getNodeValue());
+			}
+			for (Node child : children(node)) {
+				digest.update(digest(child, digests));
+			}
+			digest.update(END);
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			digest.update(TEXT);
+			digestString(digest, mergedText(node));
+			break;
+		case Node.COMMENT_NODE:
+			digest.update(COMMENT);
+			digestString(digest, node.getNodeValue());
+			break;
+		case Node.PROCESSING_INSTRUCTION_NODE:
+			digest.update(PROCESSING_INSTRUCTION);
+			digestString(digest, node.getNodeName());
+			digestString(digest, node.getNodeValue());
+			break;
+		default:
+			throw new IllegalArgumentException("Unexpected node type: " + node.getNodeType());
+		}
+		byte[] result = digest.digest();
+		if (digests != null) {
+			digests.put(node, result);
+		}
+		return result;
+	}
+
+	private void digestName(MessageDigest digest, String namespaceUri, String localName, String prefix) {
+		digestString(digest, namespaceUri == null ? "" : namespaceUri);
+		digestString(digest, localName);
+		if (!ignoreDifferingNsPrefixes) {
+			digestString(digest, prefix == null ? "" : prefix);
+		}
+	}
+
+	private static void digestString(MessageDigest digest, String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	/* The attributes of the given element, sorted by namespace and local name, without namespace declarations */
+	private static List<Node> attributes(Node element) {
+		NamedNodeMap attributeMap = element.getAttributes();
+		List<Node> attributes = new ArrayList<>(attributeMap.getLength());
+		for (int i = 0; i < attributeMap.getLength(); ++i) {
+			Node attribute = attributeMap.item(i);
+			if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+				attributes.add(attribute);
+			}
+		}
+		attributes.sort(Comparator.comparing((Node attribute) -> Objects.toString(attribute.getNamespaceURI(), ""))
+		                          .thenComparing(Node::getLocalName));
+		return attributes;
+	}
+
+	/* The children of the given element that take part in the comparison. Of adjacent text nodes, only the first is
+	 * listed */
+	private List<Node> children(Node element) {
+		List<Node> children = new ArrayList<>();
+		Node child = element.getFirstChild();
+		while (child != null) {
+			if (isText(child)) {
+				if (!ignoreWhitespaceNodes || !mergedText(child).isBlank()) {
+					children.add(child);
+				}
+				while (child.getNextSibling() != null && isText(child.getNextSibling())) {
+					child = child.getNextSibling();
+				}
+			} else if (child.getNodeType() != Node.ENTITY_REFERENCE_NODE) {
+				children.add(child);
+			}
+			child = child.getNextSibling();
+		}
+		return children;
+	}
+
+	private static boolean isText(Node node) {
+		return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+	}
+
+	/* The text of the given node and of its adjacent text siblings */
+	private static String mergedText(Node textNode) {
+		Node next = textNode.getNextSibling();
+		if (next == null || !isText(next)) {
+			return textNode.getNodeValue();
+		}
+		StringBuilder text = new StringBuilder(textNode.getNodeValue());
+		for (; next != null && isText(next); next = next.getNextSibling()) {
+			text.append(next.getNodeValue());
+		}
+		return text.toString();
+	}
+
+	private boolean haveSameHeader(Node element1, Node element2) {
+		if (!Objects.equals(element1.getNamespaceURI(), element2.getNamespaceURI())
+		    || !Objects.equals(element1.getLocalName(), element2.getLocalName())
+		    || !ignoreDifferingNsPrefixes && !Objects.equals(element1.getPrefix(), element2.getPrefix())) {
+			return false;
+		}
+		List<Node> attributes1 = attributes(element1);
+		List<Node> attributes2 = attributes(element2);
+		if (attributes1.size() != attributes2.size()) {
+			return false;
+		}
+		for (int i = 0; i < attributes1.size(); ++i) {
+			Node attribute1 = attributes1.get(i);
+			Node attribute2 = attributes2.get(i);
+			if (!Objects.equals(attribute1.getNamespaceURI(), attribute2.getNamespaceURI())
+			    || !attribute1.getLocalName().equals(attribute2.getLocalName())
+			    || !ignoreDifferingNsPrefixes && !Objects.equals(attribute1.getPrefix(), attribute2.getPrefix())
+			    || !attribute1.getNodeValue().equals(attribute2.getNodeValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This class computes the digest of a document from its SAX events, following the same rules as
+	 * {@link DigestOutputComparator#digest(Document)}.
+	 *
+	 * It must also be registered as lexical handler for the comments to be digested.
+	 */
+	public class Digester extends DefaultHandler implements LexicalHandler {
+
+		private final ContentHandler next;
+		private final LexicalHandler nextLexical;
+		private final Deque<MessageDigest> openElements = new ArrayDeque<>();
+		private final StringBuilder text = new StringBuilder();
+		private byte[] result;
+
+
+		Digester(ContentHandler next, LexicalHandler nextLexical) {
+			this.next = next;
+			this.nextLexical = nextLexical;
+		}
+
+		/**
+		 * Retrieve the digest of the document.
+		 *
+		 * @return The digest of the document element
+		 *
+		 * @throws IllegalStateException if the document is not complete
+		 */
+		public byte[] getDigest() {
+			if (result == null) {
+				throw new IllegalStateException("Incomplete document");
+			}
+			return result;
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			if (next != null) {
+				next.setDocumentLocator(locator);
+			}
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			if (next != null) {
+				next.startDocument();
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			if (result == null && openElements.isEmpty()) {
+				result = emptyDocumentDigest();
+			}
+			if (next != null) {
+				next.endDocument();
+			}
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			if (next != null) {
+				next.startPrefixMapping(prefix, uri);
+			}
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			if (next != null) {
+				next.endPrefixMapping(prefix);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			flushText();
+			MessageDigest digest = StylesheetCache.newDigest();
+			digest.update(ELEMENT);
+			digestName(digest, uri, localName, prefixOf(qName));
+			List<Integer> attributeIndexes = new ArrayList<>(attributes.getLength());
+			for (int i = 0; i < attributes.getLength(); ++i) {
+				String attributeQName = attributes.getQName(i);
+				if (!attributeQName.equals("xmlns") && !attributeQName.startsWith("xmlns:")) {
+					attributeIndexes.add(i);
+				}
+			}
+			attributeIndexes.sort(Comparator.comparing(attributes::getURI).thenComparing(attributes::getLocalName));
+			digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(attributeIndexes.size()).array());
+			for (int i : attributeIndexes) {
+				digest.update(ATTRIBUTE);
+				digestName(digest, attributes.getURI(i), attributes.getLocalName(i), prefixOf(attributes.getQName(i)));
+				digestString(digest, attributes.getValue(i));
+			}
+			openElements.push(digest);
+			if (next != null) {
+				next.startElement(uri, localName, qName, attributes);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			flushText();
+			MessageDigest digest = openElements.pop();
+			digest.update(END);
+			if (openElements.isEmpty()) {
+				result = digest.digest();
+			} else {
+				addChild(digest.digest());
+			}
+			if (next != null) {
+				next.endElement(uri, localName, qName);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			text.append(ch, start, length);
+			if (next != null) {
+				next.characters(ch, start, length);
+			}
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			text.append(ch, start, length);
+			if (next != null) {
+				next.ignorableWhitespace(ch, start, length);
+			}
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			flushText();
+			MessageDigest digest = StylesheetCache.newDigest();
+			digest.update(PROCESSING_INSTRUCTION);
+			digestString(digest, target);
+			digestString(digest, data == null ? "" : data);
+			addChild(digest.digest());
+			if (next != null) {
+				next.processingInstruction(target, data);
+			}
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			if (next != null) {
+				next.skippedEntity(name);
+			}
+		}
+
+		@Override
+		public void comment(char[] ch, int start, int length) throws SAXException {
+			flushText();
+			MessageDigest digest = StylesheetCache.newDigest();
+			digest.update(COMMENT);
+			digestString(digest, new String(ch, start, length));
+			addChild(digest.digest());
+			if (nextLexical != null) {
+				nextLexical.comment(ch, start, length);
+			}
+		}
+
+		@Override
+		public void startDTD(String name, String publicId, String systemId) throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.startDTD(name, publicId, systemId);
+			}
+		}
+
+		@Override
+		public void endDTD() throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.endDTD();
+			}
+		}
+
+		@Override
+		public void startEntity(String name) throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.startEntity(name);
+			}
+		}
+
+		@Override
+		public void endEntity(String name) throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.endEntity(name);
+			}
+		}
+
+		@Override
+		public void startCDATA() throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.startCDATA();
+			}
+		}
+
+		@Override
+		public void endCDATA() throws SAXException {
+			if (nextLexical != null) {
+				nextLexical.endCDATA();
+			}
+		}
+
+		private void flushText() {
+			if (text.length() == 0) {
+				return;
+			}
+			String str = text.toString();
+			text.setLength(0);
+			if (ignoreWhitespaceNodes && str.isBlank()) {
+				return;
+			}
+			MessageDigest digest = StylesheetCache.newDigest();
+			digest.update(TEXT);
+			digestString(digest, str);
+			addChild(digest.digest());
+		}
+
+		/* Add the digest of a child to the digest of its parent. Nodes outside of the document element are ignored */
+		private void addChild(byte[] childDigest) {
+			if (!openElements.isEmpty()) {
+				openElements.peek().update(childDigest);
+			}
+		}
+	}
+
+
+	private static String prefixOf(String qName) {
+		int colonIndex = qName.indexOf(':');
+		return colonIndex < 0 ? "" : qName.substring(0, colonIndex);
+	}
+
+
+	private static class FileKey {
+
+		private final Path path;
+		private final long lastModifiedTime;
+		private final long size;
+
+
+		FileKey(Path path, long lastModifiedTime, long size) {
+			this.path = path;
+			this.lastModifiedTime = lastModifiedTime;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileKey)) {
+				return false;
+			}
+			FileKey other = (FileKey) obj;
+			return path.equals(other.path) && lastModifiedTime == other.lastModifiedTime && size == other.size;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, lastModifiedTime, size);
+		}
+	}
+}
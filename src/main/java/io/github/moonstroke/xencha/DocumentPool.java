@@ -0,0 +1,292 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+
+/**
+ * This class holds the documents parsed during a run, so that the files referenced by many cases are only parsed once.
+ *
+ * A file is parsed into two forms: a Saxon tree, given as input to the transformations, and a DOM document, compared
+ * to the outputs. Entries are keyed by the real path of the file, its size and its modification time, so that a file
+ * modified during the run is parsed again. The pool retains documents up to a budget of their estimated size in
+ * memory, and evicts the least recently used ones beyond it.
+ *
+ * The documents of the pool are shared: they must not be modified. Instances of this class are thread-safe, and
+ * concurrent requests for the same document parse it only once. The Saxon trees are immutable, and can be read by
+ * concurrent threads; the DOM documents are built without deferred node expansion, and can be read concurrently by
+ * navigating through {@link org.w3c.dom.Node#getFirstChild()} and {@link org.w3c.dom.Node#getNextSibling()} (the
+ * node lists of the DOM implementation are not thread-safe).
+ */
+public class DocumentPool {
+
+	/**
+	 * The default budget of a pool, in bytes.
+	 */
+	public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+	/* Rough ratios of the size in memory of the parsed forms of a document to the size of its file */
+	private static final int TREE_SIZE_RATIO = 4;
+	private static final int DOM_SIZE_RATIO = 12;
+
+	private static final String DEFER_NODE_EXPANSION_FEATURE =
+			"http://apache.org/xml/features/dom/defer-node-expansion";
+
+	private final Processor processor;
+	private final DocumentBuilderFactory documentBuilderFactory;
+	private final ThreadLocal<DocumentBuilder> documentBuilder;
+	private final long budget;
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, /* accessOrder: */ true);
+	private long size;
+	private long hitCount;
+	private long missCount;
+
+
+	/**
+	 * Construct an empty document pool.
+	 *
+	 * @param processor The Saxon processor used to build the trees, which can only be used by transformations of the
+	 *                  same processor
+	 * @param budget    The maximum estimated size in memory of the documents to retain, in bytes
+	 *
+	 * @throws IllegalArgumentException if the given budget is negative
+	 */
+	public DocumentPool(Processor processor, long budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("Invalid pool budget: " + budget);
+		}
+		this.processor = Objects.requireNonNull(processor);
+		this.budget = budget;
+		documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		try {
+			/* Deferred nodes are expanded when first read, which concurrent readers would do at the same time */
+			documentBuilderFactory.setFeature(DEFER_NODE_EXPANSION_FEATURE, false);
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("The DOM implementation does not support eager node expansion", e);
+		}
+		documentBuilder = ThreadLocal.withInitial(() -> {
+			try {
+				return documentBuilderFactory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve the file at the given path parsed as a Saxon tree, parsing it if it is not in the pool.
+	 *
+	 * @param path The path to the XML file
+	 *
+	 * @return The parsed document, to be read only
+	 *
+	 * @throws IOException       if the file cannot be read
+	 * @throws SaxonApiException if the file is not a well-formed XML document
+	 */
+	public XdmNode getTree(Path path) throws IOException, SaxonApiException {
+		try {
+			return (XdmNode) get(path, Form.TREE);
+		} catch (SAXException e) {
+			/* Only thrown by the DOM parser */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Retrieve the file at the given path parsed as a DOM document, parsing it if it is not in the pool.
+	 *
+	 * @param path The path to the XML file
+	 *
+	 * @return The parsed document, to be read only
+	 *
+	 * @throws IOException  if the file cannot be read
+	 * @throws SAXException if the file is not a well-formed XML document
+	 */
+	public Document getDocument(Path path) throws IOException, SAXException {
+		try {
+			return (Document) get(path, Form.DOM);
+		} catch (SaxonApiException e) {
+			/* Only thrown by the Saxon parser */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Object get(Path path, Form form) throws IOException, SAXException, SaxonApiException {
+		Path realPath = path.toRealPath();
+		BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+		Key key = new Key(realPath, attributes.size(), attributes.lastModifiedTime(), form);
+		long entrySize = attributes.size() * (form == Form.TREE ? TREE_SIZE_RATIO : DOM_SIZE_RATIO);
+		Entry entry;
+		boolean parse = false;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(entrySize);
+				++missCount;
+				parse = true;
+				/* Documents larger than the whole budget are not retained */
+				if (entrySize <= budget) {
+					entries.put(key, entry);
+					size += entrySize;
+					evict(entry);
+				}
+			} else {
+				++hitCount;
+			}
+		}
+		if (parse) {
+			/* Parse outside of the lock, other threads requesting the same document wait on the future */
+			try {
+				entry.document.complete(form == Form.TREE ? processor.newDocumentBuilder().build(realPath.toFile())
+				                                          : documentBuilder.get().parse(realPath.toFile()));
+			} catch (IOException | SAXException | SaxonApiException | RuntimeException e) {
+				synchronized (entries) {
+					if (entries.remove(key, entry)) {
+						size -= entry.size;
+					}
+				}
+				entry.document.completeExceptionally(e);
+				throw e;
+			}
+		}
+		return await(entry);
+	}
+
+	/* Evict the least recently used entries until the pool fits in its budget, except the given one */
+	private void evict(Entry retainedEntry) {
+		for (Iterator<Entry> it = entries.values().iterator(); size > budget && it.hasNext();) {
+			Entry entry = it.next();
+			if (entry != retainedEntry) {
+				it.remove();
+				size -= entry.size;
+			}
+		}
+	}
+
+	private static Object await(Entry entry) throws IOException, SAXException, SaxonApiException {
+		try {
+			return entry.document.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof SAXException) {
+				throw (SAXException) cause;
+			}
+			if (cause instanceof SaxonApiException) {
+				throw (SaxonApiException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Retrieve the number of requests served from the pool.
+	 *
+	 * @return The number of pool hits
+	 */
+	public long getHitCount() {
+		synchronized (entries) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Retrieve the number of requests that required parsing a document.
+	 *
+	 * @return The number of pool misses
+	 */
+	public long getMissCount() {
+		synchronized (entries) {
+			return missCount;
+		}
+	}
+
+	/**
+	 * Retrieve the estimated size in memory of the documents retained by the pool.
+	 *
+	 * @return The size of the pool, in bytes
+	 */
+	public long getSize() {
+		synchronized (entries) {
+			return size;
+		}
+	}
+
+
+	private enum Form {
+		TREE,
+		DOM
+	}
+
+	private static class Entry {
+
+		private final long size;
+		private final CompletableFuture<Object> document = new CompletableFuture<>();
+
+
+		Entry(long size) {
+			this.size = size;
+		}
+	}
+
+	private static class Key {
+
+		private final Path path;
+		private final long fileSize;
+		private final FileTime lastModifiedTime;
+		private final Form form;
+
+
+		Key(Path path, long fileSize, FileTime lastModifiedTime, Form form) {
+			this.path = path;
+			this.fileSize = fileSize;
+			this.lastModifiedTime = lastModifiedTime;
+			this.form = form;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return path.equals(other.path) && fileSize == other.fileSize
+			       && lastModifiedTime.equals(other.lastModifiedTime) && form == other.form;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, fileSize, lastModifiedTime, form);
+		}
+	}
+}
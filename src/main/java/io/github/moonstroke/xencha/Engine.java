@@ -0,0 +1,18 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+/**
+ * This enum lists the different ways in which the test cases can be executed.
+ */
+public enum Engine {
+
+	/**
+	 * The stylesheets are run through the JAXP API, and the documents are handled as W3C DOM trees.
+	 */
+	JAXP,
+	/**
+	 * The stylesheets are run through Saxon's s9api, and the documents are built in Saxon's native tree model.
+	 */
+	SAXON,
+}
@@ -0,0 +1,182 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Node;
+
+/**
+ * This class produces the diagnostics of the test cases: a compact diff of the expected and obtained outputs, around
+ * their first difference.
+ *
+ * Only the smallest elements containing the difference are serialized, and only the lines around the differing ones
+ * are shown.
+ */
+final class FailureDiagnostics {
+
+	/* The number of unchanged lines shown around the changed ones */
+	private static final int CONTEXT_LINES = 3;
+	/* The maximum number of lines of a serialized context: beyond, only the differing nodes are serialized */
+	private static final int MAX_CONTEXT_LINES = 200;
+
+	private final TransformerFactory transformerFactory;
+
+
+	/**
+	 * Construct a diagnostics producer.
+	 *
+	 * @param transformerFactory The factory of the serializers of the outputs
+	 */
+	FailureDiagnostics(TransformerFactory transformerFactory) {
+		this.transformerFactory = transformerFactory;
+	}
+
+	/**
+	 * Produce the diff of the outputs around the given difference.
+	 *
+	 * @param mismatch The first difference between the outputs
+	 *
+	 * @return The diff, in unified format
+	 *
+	 * @throws TransformerException if the outputs cannot be serialized
+	 */
+	String describe(Mismatch mismatch) throws TransformerException {
+		List<String> expectedLines = serializeLines(mismatch.getExpectedContext());
+		List<String> obtainedLines = serializeLines(mismatch.getObtainedContext());
+		if (expectedLines.size() > MAX_CONTEXT_LINES || obtainedLines.size() > MAX_CONTEXT_LINES) {
+			expectedLines = serializeLines(mismatch.getExpectedNode());
+			obtainedLines = serializeLines(mismatch.getObtainedNode());
+		}
+		StringBuilder diff = new StringBuilder();
+		diff.append("--- expected\n+++ obtained\n@@ ").append(mismatch.getPath()).append(" @@\n");
+		if (expectedLines.equals(obtainedLines)) {
+			/* The difference is not visible once serialized, e.g. in whitespace: show the differing nodes instead */
+			diff.append("- ").append(describe(mismatch.getExpectedNode())).append('\n');
+			diff.append("+ ").append(describe(mismatch.getObtainedNode())).append('\n');
+		} else {
+			appendDiff(diff, truncate(expectedLines), truncate(obtainedLines));
+		}
+		return diff.toString();
+	}
+
+	/* Describe the given node on a single line */
+	private static String describe(Node node) {
+		if (node == null) {
+			return "(nothing)";
+		}
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			return "element " + node.getNodeName();
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			return "text " + Json.toJson(node.getNodeValue());
+		case Node.COMMENT_NODE:
+			return "comment " + Json.toJson(node.getNodeValue());
+		default:
+			return "node " + node.getNodeName() + " " + Json.toJson(node.getNodeValue());
+		}
+	}
+
+	/**
+	 * Serialize the given node.
+	 *
+	 * @param node The node to serialize
+	 *
+	 * @return The serialized node, indented
+	 *
+	 * @throws TransformerException if the node cannot be serialized
+	 */
+	String serialize(Node node) throws TransformerException {
+		Transformer serializer = transformerFactory.newTransformer();
+		serializer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		serializer.setOutputProperty(OutputKeys.INDENT, "yes");
+		StringWriter writer = new StringWriter();
+		/* The serializer reads the node lists of the DOM, that are not thread-safe, and the document may be shared
+		 * through the document pool */
+		synchronized (node.getNodeType() == Node.DOCUMENT_NODE ? node : node.getOwnerDocument()) {
+			serializer.transform(new DOMSource(node), new StreamResult(writer));
+		}
+		return writer.toString();
+	}
+
+	private List<String> serializeLines(Node node) throws TransformerException {
+		if (node == null) {
+			return Collections.emptyList();
+		}
+		if (node.getNodeType() != Node.ELEMENT_NODE && node.getNodeType() != Node.DOCUMENT_NODE) {
+			/* Text, comments and processing instructions are shown as their value */
+			return Arrays.asList(node.getNodeValue().split("\r?\n", -1));
+		}
+		return Arrays.asList(serialize(node).strip().split("\r?\n", -1));
+	}
+
+	private static List<String> truncate(List<String> lines) {
+		if (lines.size() <= MAX_CONTEXT_LINES) {
+			return lines;
+		}
+		List<String> truncatedLines = new ArrayList<>(lines.subList(0, MAX_CONTEXT_LINES));
+		truncatedLines.add("... (" + (lines.size() - MAX_CONTEXT_LINES) + " more lines)");
+		return truncatedLines;
+	}
+
+	/* Append the lines of both lists, marking those only in the expected one with -, those only in the obtained one
+	 * with +; unchanged lines far from the changed ones are elided */
+	private static void appendDiff(StringBuilder diff, List<String> expectedLines, List<String> obtainedLines) {
+		/* Longest common subsequence of the suffixes of the lists */
+		int[][] lcs = new int[expectedLines.size() + 1][obtainedLines.size() + 1];
+		for (int i = expectedLines.size() - 1; i >= 0; --i) {
+			for (int j = obtainedLines.size() - 1; j >= 0; --j) {
+				lcs[i][j] = expectedLines.get(i).equals(obtainedLines.get(j)) ? lcs[i + 1][j + 1] + 1
+				                                                              : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+			}
+		}
+		List<String> lines = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+		while (i < expectedLines.size() || j < obtainedLines.size()) {
+			if (i < expectedLines.size() && j < obtainedLines.size()
+			    && expectedLines.get(i).equals(obtainedLines.get(j))) {
+				lines.add("  " + expectedLines.get(i++));
+				++j;
+			} else if (j == obtainedLines.size() || i < expectedLines.size() && lcs[i + 1][j] >= lcs[i][j + 1]) {
+				lines.add("- " + expectedLines.get(i++));
+			} else {
+				lines.add("+ " + obtainedLines.get(j++));
+			}
+		}
+		int lastShown = -1;
+		for (int k = 0; k < lines.size(); ++k) {
+			if (isNearChange(lines, k)) {
+				if (lastShown < k - 1) {
+					diff.append("  ...\n");
+				}
+				diff.append(lines.get(k)).append('\n');
+				lastShown = k;
+			}
+		}
+		if (lastShown < lines.size() - 1) {
+			diff.append("  ...\n");
+		}
+	}
+
+	private static boolean isNearChange(List<String> lines, int index) {
+		for (int k = Math.max(0, index - CONTEXT_LINES); k <= Math.min(lines.size() - 1, index + CONTEXT_LINES); ++k) {
+			if (!lines.get(k).startsWith(" ")) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
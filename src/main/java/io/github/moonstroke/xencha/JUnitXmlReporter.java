@@ -0,0 +1,143 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * This class writes the results of a run to a file in the JUnit XML format, as they are produced.
+ *
+ * Each suite is written and flushed as soon as it is finished, so that the file can be followed during the run and
+ * that the results of the finished suites need not be kept. The file is overwritten by each run.
+ *
+ * Instances of this class are thread-safe.
+ */
+public class JUnitXmlReporter implements TestListener {
+
+	private final Path path;
+	private Writer writer;
+	private XMLStreamWriter xmlWriter;
+
+
+	/**
+	 * Construct a reporter writing to the given file.
+	 *
+	 * @param path The path to the report file
+	 */
+	public JUnitXmlReporter(Path path) {
+		this.path = path;
+	}
+
+	@Override
+	public synchronized void testRunStarted() {
+		try {
+			writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+			xmlWriter = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+			xmlWriter.writeStartDocument("UTF-8", "1.0");
+			xmlWriter.writeCharacters("\n");
+			xmlWriter.writeStartElement("testsuites");
+			xmlWriter.writeCharacters("\n");
+			flush();
+		} catch (IOException | XMLStreamException e) {
+			throw new IllegalStateException("Cannot write the JUnit report " + path, e);
+		}
+	}
+
+	@Override
+	public synchronized void testSuiteFinished(TestSuiteResult result) {
+		Collection<TestResult> testResults = result.getTestResults();
+		int failureCount = 0;
+		int errorCount = 0;
+		for (TestResult testResult : testResults) {
+			if (testResult.getStatus() == TestStatus.FAILURE) {
+				++failureCount;
+			} else if (testResult.getStatus() == TestStatus.ERROR) {
+				++errorCount;
+			}
+		}
+		try {
+			xmlWriter.writeStartElement("testsuite");
+			xmlWriter.writeAttribute("name", result.getName());
+			xmlWriter.writeAttribute("tests", Integer.toString(Math.max(testResults.size(), 1)));
+			xmlWriter.writeAttribute("failures", Integer.toString(failureCount));
+			xmlWriter.writeAttribute("errors", Integer.toString(errorCount));
+			xmlWriter.writeAttribute("skipped", "0");
+			xmlWriter.writeAttribute("time", toSeconds(result.getTimings().getTotalDuration()));
+			xmlWriter.writeCharacters("\n");
+			if (testResults.isEmpty()) {
+				/* The suite could not be run: report its error as that of a pseudo-case */
+				writeTestCase(result.getName(), new TestResult(result.getName(), result.getStatus(),
+				                                               result.getDetails(), result.getTimings()));
+			}
+			for (TestResult testResult : testResults) {
+				writeTestCase(result.getName(), testResult);
+			}
+			xmlWriter.writeEndElement();
+			xmlWriter.writeCharacters("\n");
+			flush();
+		} catch (IOException | XMLStreamException e) {
+			throw new IllegalStateException("Cannot write the JUnit report " + path, e);
+		}
+	}
+
+	private void writeTestCase(String testSuiteName, TestResult testResult) throws XMLStreamException {
+		xmlWriter.writeCharacters("\t");
+		xmlWriter.writeStartElement("testcase");
+		xmlWriter.writeAttribute("name", testResult.getName());
+		xmlWriter.writeAttribute("classname", testSuiteName);
+		xmlWriter.writeAttribute("time", toSeconds(testResult.getTimings().getTotalDuration()));
+		if (testResult.getStatus() != TestStatus.SUCCESS) {
+			String details = testResult.getDetails() == null ? "" : testResult.getDetails();
+			xmlWriter.writeStartElement(testResult.getStatus() == TestStatus.FAILURE ? "failure" : "error");
+			xmlWriter.writeAttribute("message", details);
+			xmlWriter.writeCharacters(details);
+			if (testResult.getDiagnostics() != null) {
+				xmlWriter.writeCharacters("\n" + testResult.getDiagnostics());
+			}
+			xmlWriter.writeEndElement();
+		} else if (testResult.getDiagnostics() != null) {
+			xmlWriter.writeStartElement("system-out");
+			xmlWriter.writeCharacters(testResult.getDiagnostics());
+			xmlWriter.writeEndElement();
+		}
+		xmlWriter.writeEndElement();
+		xmlWriter.writeCharacters("\n");
+	}
+
+	@Override
+	public synchronized void testRunFinished() {
+		if (xmlWriter == null) {
+			/* The report could not be started */
+			return;
+		}
+		try {
+			xmlWriter.writeEndElement();
+			xmlWriter.writeCharacters("\n");
+			xmlWriter.writeEndDocument();
+			xmlWriter.close();
+			writer.close();
+			xmlWriter = null;
+		} catch (IOException | XMLStreamException e) {
+			throw new IllegalStateException("Cannot write the JUnit report " + path, e);
+		}
+	}
+
+	private void flush() throws IOException, XMLStreamException {
+		xmlWriter.flush();
+		writer.flush();
+	}
+
+	private static String toSeconds(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+	}
+}
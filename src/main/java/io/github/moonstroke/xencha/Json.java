@@ -0,0 +1,54 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+/**
+ * This class provides the serialization of values in JSON.
+ */
+final class Json {
+
+	private Json() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Quote and escape the given string as a JSON string literal.
+	 *
+	 * @param str The string to serialize, or {@code null}
+	 *
+	 * @return The JSON string literal, or the JSON null literal if the given string is {@code null}
+	 */
+	static String toJson(String str) {
+		if (str == null) {
+			return "null";
+		}
+		StringBuilder json = new StringBuilder(str.length() + 2).append('"');
+		for (int i = 0; i < str.length(); ++i) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
+}
@@ -0,0 +1,94 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class writes the events of a run to a file in the JSON Lines format, as they are produced.
+ *
+ * Each event is written as a JSON object on its own line, and flushed immediately. The file is overwritten by each
+ * run.
+ *
+ * Instances of this class are thread-safe.
+ */
+public class JsonLinesReporter implements TestListener {
+
+	static final String RUN_STARTED_LINE = "{\"event\": \"testRunStarted\"}";
+	static final String RUN_FINISHED_LINE = "{\"event\": \"testRunFinished\"}";
+
+	private final Path path;
+	private Writer writer;
+
+
+	/**
+	 * Construct a reporter writing to the given file.
+	 *
+	 * @param path The path to the report file
+	 */
+	public JsonLinesReporter(Path path) {
+		this.path = path;
+	}
+
+	@Override
+	public synchronized void testRunStarted() {
+		try {
+			writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		writeLine(RUN_STARTED_LINE);
+	}
+
+	@Override
+	public synchronized void testSuiteStarted(Path testSuitePath) {
+		writeLine("{\"event\": \"testSuiteStarted\", \"path\": " + Json.toJson(testSuitePath.toString()) + "}");
+	}
+
+	@Override
+	public synchronized void testCaseFinished(String testSuiteName, TestResult result) {
+		writeLine("{\"event\": \"testCaseFinished\", \"suite\": " + Json.toJson(testSuiteName) + ", \"case\": "
+		          + Json.toJson(result.getName()) + ", \"status\": \"" + result.getStatus() + "\", \"details\": "
+		          + Json.toJson(result.getDetails()) + ", \"diagnostics\": " + Json.toJson(result.getDiagnostics())
+		          + ", \"duration\": " + result.getTimings().getTotalDuration() + ", \"allocatedBytes\": "
+		          + result.getTimings().getTotalAllocatedBytes() + ", \"cached\": " + result.isCached() + "}");
+	}
+
+	@Override
+	public synchronized void testSuiteFinished(TestSuiteResult result) {
+		writeLine("{\"event\": \"testSuiteFinished\", \"suite\": " + Json.toJson(result.getName()) + ", \"status\": \""
+		          + result.getStatus() + "\", \"details\": " + Json.toJson(result.getDetails()) + ", \"duration\": "
+		          + result.getTimings().getTotalDuration() + ", \"allocatedBytes\": "
+		          + result.getTimings().getTotalAllocatedBytes() + "}");
+	}
+
+	@Override
+	public synchronized void testRunFinished() {
+		if (writer == null) {
+			/* The report could not be started */
+			return;
+		}
+		writeLine(RUN_FINISHED_LINE);
+		try {
+			writer.close();
+			writer = null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeLine(String line) {
+		try {
+			writer.write(line);
+			writer.write('\n');
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import io.github.moonstroke.xencha.model.InlineSource;
+
+/**
+ * This class holds the inline content of a descriptor in serialized form, and only parses it when it is first
+ * accessed.
+ *
+ * The parsed content is the same as that of a bound descriptor: each element is the root of its own document, and
+ * declares all the namespaces in scope in the descriptor.
+ */
+final class LazyInlineSource extends InlineSource {
+
+	/* The texts, as strings, and the serialized elements of the content, in document order */
+	private final List<Object> parts = new ArrayList<>(3);
+
+
+	void addText(String text) {
+		parts.add(text);
+	}
+
+	void addElement(String markup) {
+		parts.add(new ElementMarkup(markup));
+	}
+
+	/**
+	 * Retrieve the content in serialized form, without parsing it.
+	 *
+	 * @return The serialized content
+	 */
+	String getMarkup() {
+		StringBuilder markup = new StringBuilder();
+		for (Object part : parts) {
+			markup.append(part instanceof ElementMarkup ? ((ElementMarkup) part).markup : (String) part);
+		}
+		return markup.toString();
+	}
+
+	@Override
+	public synchronized List<Object> getContent() {
+		if (content == null) {
+			List<Object> parsedContent = new ArrayList<>(parts.size());
+			for (Object part : parts) {
+				if (part instanceof ElementMarkup) {
+					parsedContent.add(((ElementMarkup) part).parse());
+				} else {
+					parsedContent.add(part);
+				}
+			}
+			content = parsedContent;
+		}
+		return content;
+	}
+
+
+	private static class ElementMarkup {
+
+		private final String markup;
+
+
+		ElementMarkup(String markup) {
+			this.markup = markup;
+		}
+
+		Object parse() {
+			try {
+				return TestSuiteRunner.TestSuiteDocumentBuilder.INSTANCE.get()
+				                                                       .parse(new InputSource(new StringReader(markup)))
+				                                                       .getDocumentElement();
+			} catch (IOException | SAXException e) {
+				/* The markup is serialized from a well-formed descriptor */
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -2,11 +2,18 @@
  * SPDX-License-Identifier: MIT */
 package io.github.moonstroke.xencha;
 
+import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Collection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * This class is the entry point of the tool, when executed from a command line.
@@ -16,28 +23,223 @@ public class Main {
 	/**
 	 * Entry method.
 	 *
-	 * @param args A list of XML test descriptors
+	 * @param args A list of options, followed by a list of XML test descriptors
 	 */
 	public static void main(String[] args) {
-		if (args.length == 0) {
-			System.err.println("At least one XML descriptor path expected");
+		if (args.length >= 2 && "--connect".equals(args[0])) {
+			/* Leave the parsing of the options to the server */
+			try {
+				System.exit(TestClient.run(Path.of(args[1]), Arrays.copyOfRange(args, 2, args.length)));
+			} catch (IOException e) {
+				System.err.println("Cannot reach the server: " + e);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+			}
 			System.exit(1);
 		}
+		Options options;
 		try {
-			TestRunner testRunner = TestRunner.forPaths(args);
-			Collection<TestSuiteResult> results = testRunner.runTests();
-			logResults(results);
-		} catch (Exception e) {
-			e.printStackTrace();
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
 			System.exit(1);
+			return; /* Unreachable */
+		}
+		if (options.server != null) {
+			try {
+				new TestServer(options.server, options.jobs, options.stylesheetCacheCapacity,
+				               options.documentPoolSize * 1024 * 1024).serve();
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
+		}
+		int status = run(options, Path.of(""), System.out, System.err, null);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Run the tests requested by a client of a server.
+	 *
+	 * @param args             The options and descriptors sent by the client
+	 * @param workingDirectory The working directory of the client, against which relative paths are resolved
+	 * @param out              The stream to print the results to
+	 * @param err              The stream to print the errors to
+	 * @param server           The server, whose caches are shared by its requests
+	 *
+	 * @return The exit status of the run
+	 */
+	static int run(String[] args, Path workingDirectory, PrintStream out, PrintStream err, TestServer server) {
+		Options options;
+		try {
+			options = Options.parse(args);
+			if (options.server != null || options.watch) {
+				throw new IllegalArgumentException("Options --server and --watch cannot be sent to a server");
+			}
+		} catch (IllegalArgumentException e) {
+			err.println(e.getMessage());
+			return 1;
 		}
+		return run(options, workingDirectory, out, err, server);
 	}
 
-	private static void logResults(Collection<TestSuiteResult> results) {
-		TestStatus runStatus = TestStatus.SUCCESS;
-		Map<TestStatus, Integer> statusCounts = new EnumMap<>(TestStatus.class);
-		for (TestSuiteResult result : results) {
-			logTestSuiteResult(result);
+	private static int run(Options options, Path workingDirectory, PrintStream out, PrintStream err,
+	                       TestServer server) {
+		options.resolve(workingDirectory);
+		try {
+			if (options.mergedReport != null) {
+				mergeReports(options);
+				return 0;
+			}
+			TestRunner testRunner = TestRunner.forPaths(options.paths);
+			if (!options.includes.isEmpty() || !options.excludes.isEmpty()) {
+				testRunner.setSuiteFilters(options.includes, options.excludes);
+			}
+			if (options.fork > 0) {
+				List<String> jvmOptions = options.forkHeap == null ? List.of() : List.of("-Xmx" + options.forkHeap);
+				testRunner.setFork(options.fork, jvmOptions, options.forkSuites);
+			}
+			SuiteTimings timings = SuiteTimings.read(options.timings);
+			if (options.shardCount > 1) {
+				testRunner.setShard(options.shardIndex, options.shardCount, timings);
+			}
+			testRunner.setSchedule(timings);
+			testRunner.setFailFast(options.failFast);
+			testRunner.setJobs(options.jobs);
+			testRunner.setCaseJobs(options.caseJobs);
+			testRunner.setStreamingComparison(options.streaming);
+			testRunner.setParallelComparison(options.parallelComparison);
+			testRunner.setEngine(options.engine);
+			testRunner.setDigestComparison(options.digest);
+			if (server == null) {
+				testRunner.setStylesheetCacheCapacity(options.stylesheetCacheCapacity);
+				testRunner.setDocumentPoolBudget(options.documentPoolSize * 1024 * 1024);
+			} else {
+				testRunner.setStylesheetCache(server.getStylesheetCache());
+				testRunner.setDocumentPool(server.getDocumentPool());
+			}
+			StylesheetProfiler profiler = null;
+			if (options.profile != null) {
+				/* After the settings of the stylesheet cache, which it replaces with an instrumented one */
+				profiler = new StylesheetProfiler();
+				testRunner.setProfiler(profiler);
+			}
+			testRunner.setDiagnosticsLevel(options.diagnosticsLevel);
+			testRunner.setDescriptorValidation(options.descriptorValidation);
+			if (options.benchmark) {
+				testRunner.setBenchmarkIterations(options.warmUpIterations, options.iterations);
+			}
+			BenchmarkBaseline baseline = null;
+			if (options.baseline != null && Files.exists(options.baseline)) {
+				baseline = BenchmarkBaseline.read(options.baseline);
+			}
+			if (options.resultCache) {
+				testRunner.setResultCache(new ResultCache(workingDirectory.resolve(ResultCache.DEFAULT_DIRECTORY)));
+			}
+			testRunner.addListener(new ConsoleReporter(out, testRunner.getResultCache()));
+			if (options.junitXmlReport != null) {
+				testRunner.addListener(new JUnitXmlReporter(options.junitXmlReport));
+			}
+			if (options.jsonLinesReport != null) {
+				testRunner.addListener(new JsonLinesReporter(options.jsonLinesReport));
+			}
+			/* The results are not kept: the reports at the end of the run are recorded as the suites finish */
+			testRunner.addListener(timings);
+			SlowestRecorder slowest = new SlowestRecorder(options.slowest);
+			testRunner.addListener(slowest);
+			BenchmarkBaseline benchmark = null;
+			if (options.benchmark) {
+				benchmark = new BenchmarkBaseline();
+				testRunner.addListener(benchmark);
+			}
+			int skippedCount = testRunner.getPaths().size() - testRunner.run();
+			timings.save();
+			if (skippedCount > 0) {
+				out.println("Stopped at the first failure: " + skippedCount + " suite(s) not run");
+			}
+			if (options.fork == 0) {
+				/* The caches of the workers are not those of this process */
+				logCacheStatistics(out, testRunner);
+			}
+			logSlowest(out, slowest);
+			logProfile(out, profiler, options.profile, options.slowest);
+			if (benchmark != null) {
+				logBenchmark(out, benchmark, baseline);
+				if (options.savedBaseline != null) {
+					benchmark.write(options.savedBaseline);
+				}
+			}
+			if (options.watch) {
+				out.println("Watching for changes...");
+				BenchmarkBaseline finalBaseline = baseline;
+				BenchmarkBaseline finalBenchmark = benchmark;
+				StylesheetProfiler finalProfiler = profiler;
+				new TestWatcher(testRunner).watch(() -> {
+					if (options.fork == 0) {
+						logCacheStatistics(out, testRunner);
+					}
+					logSlowest(out, slowest);
+					try {
+						logProfile(out, finalProfiler, options.profile, options.slowest);
+					} catch (IOException e) {
+						e.printStackTrace(err);
+					}
+					if (finalBenchmark != null) {
+						logBenchmark(out, finalBenchmark, finalBaseline);
+					}
+					out.println("Watching for changes...");
+				});
+			}
+			return 0;
+		} catch (Exception e) {
+			e.printStackTrace(err);
+			return 1;
+		}
+	}
+
+	private static void mergeReports(Options options) throws IOException {
+		List<Path> inputs = new ArrayList<>(options.paths.length);
+		for (String path : options.paths) {
+			inputs.add(Path.of(path));
+		}
+		switch (options.mergedReportFormat) {
+		case "--merge-junit-xml":
+			ReportMerger.mergeJUnitXml(options.mergedReport, inputs);
+			break;
+		case "--merge-json-lines":
+			ReportMerger.mergeJsonLines(options.mergedReport, inputs);
+			break;
+		default:
+			ReportMerger.mergeTimings(options.mergedReport, inputs);
+		}
+	}
+
+	/* Print the result of each suite as soon as it is finished, and the status of the run at its end */
+	private static class ConsoleReporter implements TestListener {
+
+		private final PrintStream out;
+		private final ResultCache resultCache;
+		private TestStatus runStatus;
+		private final Map<TestStatus, Integer> statusCounts = new EnumMap<>(TestStatus.class);
+
+
+		ConsoleReporter(PrintStream out, ResultCache resultCache) {
+			this.out = out;
+			this.resultCache = resultCache;
+		}
+
+		@Override
+		public synchronized void testRunStarted() {
+			runStatus = TestStatus.SUCCESS;
+			statusCounts.clear();
+		}
+
+		@Override
+		public synchronized void testSuiteFinished(TestSuiteResult result) {
+			logTestSuiteResult(out, result);
 			TestStatus suiteStatus = result.getStatus();
 			if (suiteStatus == TestStatus.FAILURE && runStatus == TestStatus.SUCCESS
 			    || suiteStatus == TestStatus.ERROR && runStatus != TestStatus.ERROR) {
@@ -46,14 +248,23 @@ public class Main {
 			/* Set to 1 if absent or increment if present */
 			statusCounts.merge(suiteStatus, 1, Integer::sum);
 		}
-		logRunStatus(runStatus, statusCounts);
+
+		@Override
+		public synchronized void testRunFinished() {
+			logRunStatus(out, runStatus, statusCounts, resultCache);
+		}
 	}
 
-	private static void logTestSuiteResult(TestSuiteResult result) {
-		printTestResultData(System.out, result.getName(), result.getStatus(), result.getDetails());
+	private static void logTestSuiteResult(PrintStream out, TestSuiteResult result) {
+		printTestResultData(out, result.getName(), result.getStatus(), result.getDetails());
 		for (TestResult testResult : result.getTestResults()) {
-			System.out.print("\t- ");
-			printTestResultData(System.out, testResult.getName(), testResult.getStatus(), testResult.getDetails());
+			out.print("\t- ");
+			printTestResultData(out, testResult.getName(), testResult.getStatus(), testResult.getDetails());
+			if (testResult.getDiagnostics() != null) {
+				for (String line : testResult.getDiagnostics().split("\n")) {
+					out.println("\t\t" + line);
+				}
+			}
 		}
 	}
 
@@ -66,27 +277,440 @@ public class Main {
 		}
 	}
 
-	private static void logRunStatus(TestStatus runStatus, Map<TestStatus, Integer> statusCounts) {
-		System.out.print("Final status: " + runStatus + " (");
+	private static void logRunStatus(PrintStream out, TestStatus runStatus, Map<TestStatus, Integer> statusCounts,
+	                                 ResultCache resultCache) {
+		out.print("Final status: " + runStatus + " (");
 		boolean first = true;
 		for (Map.Entry<TestStatus, Integer> statusCount : statusCounts.entrySet()) {
 			TestStatus status = statusCount.getKey();
 			int count = statusCount.getValue();
 			String statusName = status.name().toLowerCase(Locale.ROOT);
-			System.out.print(statusName);
+			if (first) {
+				first = false;
+			} else {
+				out.print(", ");
+			}
+			out.print(statusName);
 			/* Pluralize */
 			if (statusName.endsWith("s")) {
-				System.out.print("es");
+				out.print("es");
 			} else {
-				System.out.print('s');
+				out.print('s');
 			}
-			System.out.print(": " + count);
-			if (first) {
-				first = false;
-			} else {
-				System.out.println(", ");
+			out.print(": " + count);
+		}
+		out.println(')');
+		if (resultCache != null) {
+			out.println("Result cache: " + resultCache.getHitCount() + " hit(s), " + resultCache.getMissCount()
+			            + " miss(es)");
+		}
+	}
+
+	private static void logCacheStatistics(PrintStream out, TestRunner testRunner) {
+		StylesheetCache stylesheetCache = testRunner.getStylesheetCache();
+		out.println("Stylesheet cache: " + stylesheetCache.getHitCount() + " hit(s), "
+		            + stylesheetCache.getMissCount() + " miss(es)");
+		DocumentPool documentPool = testRunner.getDocumentPool();
+		out.printf(Locale.ROOT, "Document pool: %d hit(s), %d miss(es), %.1f MiB retained%n",
+		           documentPool.getHitCount(), documentPool.getMissCount(),
+		           documentPool.getSize() / (1024.0 * 1024));
+	}
+
+	/* Print the hot spots of the profiled stylesheets, and write the stacks of their components */
+	private static void logProfile(PrintStream out, StylesheetProfiler profiler, Path collapsedStacksPath, int count)
+			throws IOException {
+		if (profiler == null) {
+			return;
+		}
+		if (profiler.isEmpty()) {
+			out.println("Profile: no template or function was called");
+		} else if (count > 0) {
+			profiler.logHotSpots(out, count);
+		}
+		profiler.writeCollapsedStacks(collapsedStacksPath);
+		out.println("Profile stacks written to " + collapsedStacksPath);
+	}
+
+	/* Record the slowest suites and cases of each run, with the time spent in each phase */
+	private static class SlowestRecorder implements TestListener {
+
+		private static final Comparator<Map.Entry<String, PhaseTimings>> FASTEST_FIRST =
+				Comparator.comparingLong(entry -> entry.getValue().getTotalDuration());
+
+		private final int count;
+		/* Only the timings of the slowest ones are kept, the fastest of them at the head to be replaced */
+		private final PriorityQueue<Map.Entry<String, PhaseTimings>> suites = new PriorityQueue<>(FASTEST_FIRST);
+		private final PriorityQueue<Map.Entry<String, PhaseTimings>> cases = new PriorityQueue<>(FASTEST_FIRST);
+
+
+		SlowestRecorder(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public synchronized void testRunStarted() {
+			suites.clear();
+			cases.clear();
+		}
+
+		@Override
+		public synchronized void testCaseFinished(String testSuiteName, TestResult result) {
+			record(cases, testSuiteName + " / " + result.getName(), result.getTimings());
+		}
+
+		@Override
+		public synchronized void testSuiteFinished(TestSuiteResult result) {
+			record(suites, result.getName(), result.getTimings());
+		}
+
+		private void record(PriorityQueue<Map.Entry<String, PhaseTimings>> slowest, String name,
+		                    PhaseTimings timings) {
+			if (count > 0) {
+				slowest.add(Map.entry(String.valueOf(name), timings));
+				if (slowest.size() > count) {
+					slowest.poll();
+				}
+			}
+		}
+
+		/* From the slowest to the fastest */
+		private static List<Map.Entry<String, PhaseTimings>> sort(
+				PriorityQueue<Map.Entry<String, PhaseTimings>> slowest) {
+			List<Map.Entry<String, PhaseTimings>> entries = new ArrayList<>(slowest);
+			entries.sort(FASTEST_FIRST.reversed());
+			return entries;
+		}
+	}
+
+	/* Print the slowest suites and cases of the run, with the time spent in each phase */
+	private static void logSlowest(PrintStream out, SlowestRecorder slowest) {
+		if (slowest.count == 0) {
+			return;
+		}
+		synchronized (slowest) {
+			out.println("Slowest suites:");
+			printTimingsHeader(out);
+			for (Map.Entry<String, PhaseTimings> entry : SlowestRecorder.sort(slowest.suites)) {
+				printTimings(out, entry.getValue(), entry.getKey());
+			}
+			out.println("Slowest cases:");
+			printTimingsHeader(out);
+			for (Map.Entry<String, PhaseTimings> entry : SlowestRecorder.sort(slowest.cases)) {
+				printTimings(out, entry.getValue(), entry.getKey());
 			}
 		}
-		System.out.println(')');
+	}
+
+	private static void printTimingsHeader(PrintStream out) {
+		out.printf("%10s %10s %10s %10s %10s %10s %12s  %s%n", "total (ms)", "descriptor", "stylesheet",
+		           "parsing", "transform", "comparison", "allocated", "name");
+	}
+
+	private static void printTimings(PrintStream out, PhaseTimings timings, String name) {
+		out.printf(Locale.ROOT, "%10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %12s  %s%n",
+		           toMillis(timings.getTotalDuration()), toMillis(timings.getDuration(Phase.DESCRIPTOR_PARSING)),
+		           toMillis(timings.getDuration(Phase.STYLESHEET_COMPILATION)),
+		           toMillis(timings.getDuration(Phase.DOCUMENT_PARSING)),
+		           toMillis(timings.getDuration(Phase.TRANSFORMATION)),
+		           toMillis(timings.getDuration(Phase.COMPARISON)),
+		           formatByteCount(timings.getTotalAllocatedBytes()), name);
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static String formatByteCount(long bytes) {
+		if (bytes < 1024) {
+			return bytes + " B";
+		}
+		if (bytes < 1024 * 1024) {
+			return String.format(Locale.ROOT, "%.1f KiB", bytes / 1024.0);
+		}
+		return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024));
+	}
+
+	/* Print the statistics of the benchmarked cases, compared to those of the baseline if any */
+	private static void logBenchmark(PrintStream out, BenchmarkBaseline benchmark, BenchmarkBaseline baseline) {
+		out.println("Benchmark:");
+		out.printf("%10s %10s %10s %12s %12s  %s%n", "p50 (ms)", "p90 (ms)", "p99 (ms)", "ops/s",
+		           "vs baseline", "name");
+		int slowerCount = 0;
+		for (Map.Entry<String, Map<String, BenchmarkStatistics>> suite : benchmark.getStatistics().entrySet()) {
+			for (Map.Entry<String, BenchmarkStatistics> testCase : suite.getValue().entrySet()) {
+				BenchmarkStatistics statistics = testCase.getValue();
+				BenchmarkStatistics baselineStatistics = baseline == null ? null
+				                                                          : baseline.get(suite.getKey(),
+				                                                                         testCase.getKey());
+				String comparison = "";
+				if (baselineStatistics != null) {
+					comparison = String.format(Locale.ROOT, "%+.1f %%",
+					                           100 * (statistics.getMeanDuration()
+					                                  / baselineStatistics.getMeanDuration() - 1));
+					if (statistics.isSlowerThan(baselineStatistics)) {
+						comparison = "SLOWER " + comparison;
+						++slowerCount;
+					}
+				} else if (baseline != null) {
+					comparison = "new";
+				}
+				out.printf(Locale.ROOT, "%10.3f %10.3f %10.3f %12.1f %12s  %s%n",
+				           toMillis(statistics.getP50Duration()), toMillis(statistics.getP90Duration()),
+				           toMillis(statistics.getP99Duration()), statistics.getThroughput(), comparison,
+				           suite.getKey() + " / " + testCase.getKey());
+			}
+		}
+		if (baseline != null) {
+			out.println(slowerCount + " case(s) significantly slower than the baseline");
+		}
+	}
+
+	/* The settings given on the command line */
+	private static class Options {
+
+		int jobs = 1;
+		int caseJobs = 1;
+		boolean streaming;
+		boolean parallelComparison;
+		Engine engine = Engine.JAXP;
+		boolean digest;
+		boolean watch;
+		boolean resultCache = true;
+		boolean descriptorValidation = true;
+		int stylesheetCacheCapacity = StylesheetCache.DEFAULT_CAPACITY;
+		long documentPoolSize = DocumentPool.DEFAULT_BUDGET / (1024 * 1024);
+		int slowest = 5;
+		boolean benchmark;
+		int warmUpIterations = 10;
+		int iterations = 100;
+		Path baseline;
+		Path savedBaseline;
+		Path junitXmlReport;
+		Path jsonLinesReport;
+		DiagnosticsLevel diagnosticsLevel = DiagnosticsLevel.ON_FAILURE;
+		Path server;
+		int fork;
+		String forkHeap;
+		int forkSuites = 100;
+		int shardIndex = 1;
+		int shardCount = 1;
+		Path timings = SuiteTimings.DEFAULT_PATH;
+		boolean failFast;
+		Path profile;
+		/* The option that requested the merge of the reports given as paths, if any */
+		String mergedReportFormat;
+		Path mergedReport;
+		List<String> includes = new ArrayList<>();
+		List<String> excludes = new ArrayList<>();
+		String[] paths;
+
+
+		static Options parse(String[] args) {
+			Options options = new Options();
+			int i = 0;
+			for (; i < args.length && args[i].startsWith("-"); ++i) {
+				String option = args[i];
+				switch (option) {
+				case "-j":
+				case "--jobs":
+					options.jobs = parsePositiveInt(option, requireValue(args, ++i, option));
+					break;
+				case "--case-jobs":
+					options.caseJobs = parsePositiveInt(option, requireValue(args, ++i, option));
+					break;
+				case "--streaming":
+					options.streaming = true;
+					break;
+				case "--parallel-comparison":
+					options.parallelComparison = true;
+					break;
+				case "--digest":
+					options.digest = true;
+					break;
+				case "--engine":
+					options.engine = parseEngine(option, requireValue(args, ++i, option));
+					break;
+				case "--watch":
+					options.watch = true;
+					break;
+				case "--no-cache":
+					options.resultCache = false;
+					break;
+				case "--no-validation":
+					options.descriptorValidation = false;
+					break;
+				case "--stylesheet-cache-size":
+					options.stylesheetCacheCapacity = parsePositiveInt(option, requireValue(args, ++i, option));
+					break;
+				case "--document-pool-size":
+					/* In MiB */
+					options.documentPoolSize = parseNonNegativeInt(option, requireValue(args, ++i, option));
+					break;
+				case "--slowest":
+					options.slowest = parseNonNegativeInt(option, requireValue(args, ++i, option));
+					break;
+				case "--benchmark":
+					options.benchmark = true;
+					break;
+				case "--warm-up-iterations":
+					options.warmUpIterations = parseNonNegativeInt(option, requireValue(args, ++i, option));
+					break;
+				case "--iterations":
+					options.iterations = parsePositiveInt(option, requireValue(args, ++i, option));
+					break;
+				case "--baseline":
+					options.baseline = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--save-baseline":
+					options.savedBaseline = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--junit-xml":
+					options.junitXmlReport = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--json-lines":
+					options.jsonLinesReport = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--diagnostics":
+					options.diagnosticsLevel = parseDiagnosticsLevel(option, requireValue(args, ++i, option));
+					break;
+				case "--fork":
+					options.fork = parsePositiveInt(option, requireValue(args, ++i, option));
+					break;
+				case "--fork-heap":
+					options.forkHeap = requireValue(args, ++i, option);
+					if (!options.forkHeap.matches("[0-9]+[kKmMgG]?")) {
+						throw usageError("Invalid value for option " + option + ": " + options.forkHeap);
+					}
+					break;
+				case "--fork-suites":
+					options.forkSuites = parseNonNegativeInt(option, requireValue(args, ++i, option));
+					break;
+				case "--shard":
+					parseShard(options, option, requireValue(args, ++i, option));
+					break;
+				case "--fail-fast":
+					options.failFast = true;
+					break;
+				case "--profile":
+					options.profile = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--timings":
+					options.timings = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--merge-junit-xml":
+				case "--merge-json-lines":
+				case "--merge-timings":
+					if (options.mergedReport != null) {
+						throw usageError("Only one kind of report can be merged at a time");
+					}
+					options.mergedReportFormat = option;
+					options.mergedReport = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--include":
+					options.includes.add(requireValue(args, ++i, option));
+					break;
+				case "--exclude":
+					options.excludes.add(requireValue(args, ++i, option));
+					break;
+				case "--server":
+					options.server = Path.of(requireValue(args, ++i, option));
+					break;
+				case "--":
+					++i;
+					options.paths = Arrays.copyOfRange(args, i, args.length);
+					return options.validate();
+				default:
+					throw usageError("Unknown option: " + option);
+				}
+			}
+			options.paths = Arrays.copyOfRange(args, i, args.length);
+			return options.validate();
+		}
+
+		private Options validate() {
+			if (paths.length == 0 && server == null) {
+				throw usageError("At least one XML descriptor path expected");
+			}
+			if (profile != null && fork > 0) {
+				throw usageError("Options --profile and --fork cannot be combined");
+			}
+			return this;
+		}
+
+		/* Resolve the relative paths of the settings against the given directory */
+		void resolve(Path workingDirectory) {
+			for (int i = 0; i < paths.length; ++i) {
+				paths[i] = DescriptorDiscovery.resolve(workingDirectory, paths[i]);
+			}
+			timings = resolve(workingDirectory, timings);
+			mergedReport = resolve(workingDirectory, mergedReport);
+			baseline = resolve(workingDirectory, baseline);
+			savedBaseline = resolve(workingDirectory, savedBaseline);
+			junitXmlReport = resolve(workingDirectory, junitXmlReport);
+			jsonLinesReport = resolve(workingDirectory, jsonLinesReport);
+			profile = resolve(workingDirectory, profile);
+		}
+
+		private static Path resolve(Path workingDirectory, Path path) {
+			return path == null ? null : workingDirectory.resolve(path);
+		}
+
+		private static String requireValue(String[] args, int index, String option) {
+			if (index >= args.length) {
+				throw usageError("Missing value for option " + option);
+			}
+			return args[index];
+		}
+
+		private static int parsePositiveInt(String option, String value) {
+			try {
+				int n = Integer.parseInt(value);
+				if (n > 0) {
+					return n;
+				}
+			} catch (NumberFormatException e) {
+				/* Fall through */
+			}
+			throw usageError("Invalid value for option " + option + ": " + value);
+		}
+
+		private static int parseNonNegativeInt(String option, String value) {
+			return "0".equals(value) ? 0 : parsePositiveInt(option, value);
+		}
+
+		private static void parseShard(Options options, String option, String value) {
+			int separatorIndex = value.indexOf('/');
+			if (separatorIndex < 0) {
+				throw usageError("Invalid value for option " + option + ": " + value);
+			}
+			options.shardIndex = parsePositiveInt(option, value.substring(0, separatorIndex));
+			options.shardCount = parsePositiveInt(option, value.substring(separatorIndex + 1));
+			if (options.shardIndex > options.shardCount) {
+				throw usageError("Invalid value for option " + option + ": " + value);
+			}
+		}
+
+		private static Engine parseEngine(String option, String value) {
+			for (Engine engine : Engine.values()) {
+				if (engine.name().equalsIgnoreCase(value)) {
+					return engine;
+				}
+			}
+			throw usageError("Invalid value for option " + option + ": " + value);
+		}
+
+		private static DiagnosticsLevel parseDiagnosticsLevel(String option, String value) {
+			for (DiagnosticsLevel level : DiagnosticsLevel.values()) {
+				if (level.name().replace('_', '-').equalsIgnoreCase(value)) {
+					return level;
+				}
+			}
+			throw usageError("Invalid value for option " + option + ": " + value);
+		}
+
+		/* The usage errors are reported to the client of a server, rather than exiting */
+		private static IllegalArgumentException usageError(String message) {
+			return new IllegalArgumentException(message);
+		}
 	}
 }
@@ -0,0 +1,133 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import org.w3c.dom.Node;
+
+/**
+ * This class describes the first difference found between an expected output tree and an obtained one.
+ */
+public class Mismatch {
+
+	private final String path;
+	private final Node expectedNode;
+	private final Node obtainedNode;
+	private final Node expectedContext;
+	private final Node obtainedContext;
+
+
+	/**
+	 * Construct the description of a difference.
+	 *
+	 * @param expectedNode    The differing node of the expected tree, or {@code null} if the obtained node is in excess
+	 * @param obtainedNode    The differing node of the obtained tree, or {@code null} if the expected node is missing
+	 * @param expectedContext The smallest element of the expected tree that contains the difference
+	 * @param obtainedContext The smallest element of the obtained tree that contains the difference
+	 * @param path            An XPath expression locating the difference in the expected tree
+	 */
+	Mismatch(Node expectedNode, Node obtainedNode, Node expectedContext, Node obtainedContext, String path) {
+		this.expectedNode = expectedNode;
+		this.obtainedNode = obtainedNode;
+		this.expectedContext = expectedContext;
+		this.obtainedContext = obtainedContext;
+		this.path = path;
+	}
+
+	/**
+	 * Retrieve the location of the difference.
+	 *
+	 * @return An XPath expression locating the difference in the expected tree
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Retrieve the differing node of the expected tree.
+	 *
+	 * @return The expected node, or {@code null} if the obtained tree has a node in excess
+	 */
+	public Node getExpectedNode() {
+		return expectedNode;
+	}
+
+	/**
+	 * Retrieve the differing node of the obtained tree.
+	 *
+	 * @return The obtained node, or {@code null} if the obtained tree lacks a node
+	 */
+	public Node getObtainedNode() {
+		return obtainedNode;
+	}
+
+	/**
+	 * Retrieve the smallest element of the expected tree that contains the difference.
+	 *
+	 * @return The expected context element
+	 */
+	public Node getExpectedContext() {
+		return expectedContext;
+	}
+
+	/**
+	 * Retrieve the smallest element of the obtained tree that contains the difference.
+	 *
+	 * @return The obtained context element
+	 */
+	public Node getObtainedContext() {
+		return obtainedContext;
+	}
+
+	/* Describe a difference between the given nodes. They are shown in the context of their parents, unless they are
+	 * the roots */
+	static Mismatch between(Node expectedNode, Node obtainedNode) {
+		Node expectedParent = expectedNode.getParentNode();
+		Node obtainedParent = obtainedNode.getParentNode();
+		boolean root = expectedParent == null || expectedParent.getNodeType() != Node.ELEMENT_NODE
+		               || obtainedParent == null || obtainedParent.getNodeType() != Node.ELEMENT_NODE;
+		return new Mismatch(expectedNode, obtainedNode, root ? expectedNode : expectedParent,
+		                    root ? obtainedNode : obtainedParent, pathOf(expectedNode));
+	}
+
+	/* Build an XPath expression locating the given node in its document */
+	static String pathOf(Node node) {
+		StringBuilder path = new StringBuilder();
+		for (; node != null && node.getNodeType() != Node.DOCUMENT_NODE; node = node.getParentNode()) {
+			path.insert(0, '/' + step(node));
+		}
+		return path.toString();
+	}
+
+	/* The XPath step selecting the given node from its parent */
+	private static String step(Node node) {
+		String test;
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			test = node.getNodeName();
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			test = "text()";
+			break;
+		case Node.COMMENT_NODE:
+			test = "comment()";
+			break;
+		default:
+			test = "processing-instruction()";
+			break;
+		}
+		int position = 1;
+		for (Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+			boolean sameKind = isText(node) ? isText(sibling) && !isText(sibling.getNextSibling())
+			                                : sibling.getNodeType() == node.getNodeType();
+			if (sameKind && (node.getNodeType() != Node.ELEMENT_NODE || sibling.getNodeName().equals(test))) {
+				++position;
+			}
+		}
+		return test + '[' + position + ']';
+	}
+
+	private static boolean isText(Node node) {
+		return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+	}
+}
@@ -2,22 +2,57 @@
  * SPDX-License-Identifier: MIT */
 package io.github.moonstroke.xencha;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
 
 /**
  * This class encapsulates the operation of comparing two output trees for equality.
  */
 public class OutputComparator {
 
+	/* The number of children above which those of an element are compared by parallel tasks, and the maximum number
+	 * of sibling subtrees compared by each task */
+	private static final int PARALLEL_THRESHOLD = 64;
+
 	private final boolean ignoreWhitespaceNodes;
 	private final boolean ignoreDifferingNsPrefixes;
+	private final boolean canonical;
+	private final Set<QName> unorderedElements;
+	private final boolean parallel;
 
 
 	/**
@@ -27,89 +62,557 @@ public class OutputComparator {
 	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
 	 */
 	public OutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes) {
+		this(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes, /* canonical: */ false, Collections.emptySet());
+	}
+
+	/**
+	 * Construct a new output comparator, with canonical or order-insensitive comparisons.
+	 *
+	 * The children of the unordered elements are matched through the hashes of their subtrees, in linear time.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 * @param canonical                 Whether to compare the attributes as sets, without the namespace declarations,
+	 *                                  and the adjacent text and CDATA nodes as a single text
+	 * @param unorderedElements         The expanded names of the elements whose children can appear in any order
+	 */
+	public OutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes, boolean canonical,
+	                        Set<QName> unorderedElements) {
+		this(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes, canonical, unorderedElements, /* parallel: */ false);
+	}
+
+	/**
+	 * Construct a new output comparator, that can compare the large trees in parallel.
+	 *
+	 * In parallel mode, the children of the elements that have many are split into ranges of sibling subtrees, which
+	 * are compared by fork-join tasks, in the pool of the calling thread or in the common one. As soon as a task finds
+	 * a difference, the tasks that compare the following subtrees are cancelled: the difference reported is the same
+	 * as in sequential mode.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 * @param canonical                 Whether to compare the attributes as sets, without the namespace declarations,
+	 *                                  and the adjacent text and CDATA nodes as a single text
+	 * @param unorderedElements         The expanded names of the elements whose children can appear in any order
+	 * @param parallel                  Whether to compare the children of the elements that have many in parallel
+	 */
+	public OutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes, boolean canonical,
+	                        Set<QName> unorderedElements, boolean parallel) {
 		this.ignoreWhitespaceNodes = ignoreWhitespaceNodes;
 		this.ignoreDifferingNsPrefixes = ignoreDifferingNsPrefixes;
+		this.canonical = canonical;
+		this.unorderedElements = Objects.requireNonNull(unorderedElements);
+		this.parallel = parallel;
 	}
 
 	/**
 	 * Compare the output trees stored in the given objects for equality.
 	 *
+	 * DOM trees are compared as such. Other outputs are compared as streams of events, by a
+	 * {@link StreamingOutputComparator}: the expected output is then read from a stream or StAX source, and the
+	 * obtained output from the system ID to which its stream result was written. The canonical and unordered
+	 * comparisons need DOM trees.
+	 *
 	 * @param expectedOutput The first tree
 	 * @param obtainedOutput The second tree
 	 *
 	 * @return {@code true} if, and only if, the two trees are recursively equal
+	 *
+	 * @throws IllegalArgumentException if the outputs cannot be compared, or read
 	 */
 	public boolean areEqual(Source expectedOutput, Result obtainedOutput) {
-		Node expectedNode = toDOMSource(expectedOutput).getNode();
-		Node obtainedNode = toDOMResult(obtainedOutput).getNode();
+		if (expectedOutput instanceof DOMSource && obtainedOutput instanceof DOMResult) {
+			return findMismatch(expectedOutput, obtainedOutput) == null;
+		}
+		return areEqualStreams(expectedOutput, obtainedOutput);
+	}
+
+	private boolean areEqualStreams(Source expectedOutput, Result obtainedOutput) {
+		if (canonical || !unorderedElements.isEmpty()) {
+			throw new IllegalArgumentException("Canonical and unordered comparisons need DOM trees");
+		}
+		if (!(obtainedOutput instanceof StreamResult) || obtainedOutput.getSystemId() == null) {
+			throw new IllegalArgumentException("Cannot read back the output of a " + obtainedOutput.getClass().getName()
+			                                   + ": a DOM result or a stream result with a system ID is expected");
+		}
+		try {
+			XMLEventReader expectedEvents = toEventReader(expectedOutput);
+			try {
+				StreamingOutputComparator.Comparison comparison =
+						new StreamingOutputComparator(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes)
+								.compareTo(expectedEvents);
+				SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+				parserFactory.setNamespaceAware(true);
+				SAXParser parser = parserFactory.newSAXParser();
+				parser.setProperty("http://xml.org/sax/properties/lexical-handler", comparison);
+				parser.parse(obtainedOutput.getSystemId(), comparison);
+				return comparison.areEqual();
+			} finally {
+				/* The readers of a StAX source belong to the caller */
+				if (!(expectedOutput instanceof StAXSource)) {
+					expectedEvents.close();
+				}
+			}
+		} catch (StreamingOutputComparator.MismatchException e) {
+			/* Thrown at the first difference */
+			return false;
+		} catch (UnsupportedOperationException e) {
+			throw new IllegalArgumentException("Cannot read the expected output from a "
+			                                   + expectedOutput.getClass().getName(), e);
+		} catch (XMLStreamException | SAXException | ParserConfigurationException | IOException e) {
+			throw new IllegalArgumentException("Cannot read the outputs: " + e, e);
+		}
+	}
+
+	private static XMLEventReader toEventReader(Source source) throws XMLStreamException {
+		XMLInputFactory inputFactory = TestSuiteRunner.TestSuiteXMLInputFactory.INSTANCE.get();
+		if (source instanceof StAXSource) {
+			StAXSource staxSource = (StAXSource) source;
+			if (staxSource.getXMLEventReader() != null) {
+				return staxSource.getXMLEventReader();
+			}
+			return inputFactory.createXMLEventReader(staxSource.getXMLStreamReader());
+		}
+		return inputFactory.createXMLEventReader(source);
+	}
+
+	/**
+	 * Find the first difference between the output trees stored in the given objects.
+	 *
+	 * @param expectedOutput The first tree
+	 * @param obtainedOutput The second tree
+	 *
+	 * @return The first difference found, or {@code null} if the two trees are recursively equal
+	 *
+	 * @throws IllegalArgumentException if the outputs are not DOM documents
+	 */
+	public Mismatch findMismatch(Source expectedOutput, Result obtainedOutput) {
+		if (!(expectedOutput instanceof DOMSource && obtainedOutput instanceof DOMResult)) {
+			throw new IllegalArgumentException("DOM documents expected, not a " + expectedOutput.getClass().getName()
+			                                   + " and a " + obtainedOutput.getClass().getName());
+		}
+		Node expectedNode = ((DOMSource) expectedOutput).getNode();
+		Node obtainedNode = ((DOMResult) obtainedOutput).getNode();
 		if (!(expectedNode instanceof Document && obtainedNode instanceof Document)) {
 			throw new IllegalArgumentException("DOM documents expected");
 		}
-		return areEqual(((Document) expectedNode).getDocumentElement(), ((Document) obtainedNode).getDocumentElement());
+		Node expectedRoot = ((Document) expectedNode).getDocumentElement();
+		Node obtainedRoot = ((Document) obtainedNode).getDocumentElement();
+		if (parallel) {
+			/* Run in the pool of the calling thread if it is a fork-join worker, such as those of the case executor */
+			return new SiblingComparison(List.of(expectedRoot), List.of(obtainedRoot), 0, 1, new int[0],
+			                             new AtomicReference<>()).invoke();
+		}
+		return findMismatch(expectedRoot, obtainedRoot, newHashes(), null);
+	}
+
+	/* The hashes of the subtrees are only needed to match the children of unordered elements */
+	private Map<Node, Long> newHashes() {
+		return unorderedElements.isEmpty() ? null : new IdentityHashMap<>();
 	}
 
-	private static DOMSource toDOMSource(Source source) {
-		if (source instanceof DOMSource) {
-			return (DOMSource) source;
+	/* Compare the given subtrees in document order. The traversal is iterative, so that deep trees do not overflow
+	 * the stack; the elements being compared are stacked instead. In a parallel comparison, the children of the
+	 * elements that have many are compared by subtasks of the given task, and the comparison is abandoned once the
+	 * task is preceded by a difference */
+	private Mismatch findMismatch(Node node1, Node node2, Map<Node, Long> hashes, SiblingComparison task) {
+		Deque<Frame> frames = new ArrayDeque<>();
+		while (true) {
+			if (node1 != node2) {
+				if (!haveSameHeader(node1, node2)) {
+					return Mismatch.between(node1, node2);
+				}
+				if (node1.getNodeType() == Node.ELEMENT_NODE) {
+					if (!haveSameAttributes(node1, node2)) {
+						return new Mismatch(node1, node2, node1, node2, Mismatch.pathOf(node1) + "/@*");
+					}
+					if (!unorderedElements.isEmpty() && unorderedElements.contains(expandedName(node1))) {
+						Mismatch mismatch = findUnorderedChildMismatch(node1, node2, hashes);
+						if (mismatch != null) {
+							return mismatch;
+						}
+					} else if (task != null && hasManyChildren(node1)) {
+						Mismatch mismatch = task.findChildMismatch(node1, node2);
+						if (mismatch != null) {
+							return mismatch;
+						}
+					} else {
+						frames.push(new Frame(node1, node2, firstChild(node1), firstChild(node2)));
+					}
+				}
+			}
+			/* Move on to the next pair of children, leaving the elements whose children are all compared */
+			Frame frame = frames.peek();
+			while (frame != null && (frame.child1 == null || frame.child2 == null)) {
+				if (frame.child1 != frame.child2) { /* Implicit "both null" / "both non-null" check */
+					/* A child is missing or in excess */
+					return new Mismatch(frame.child1, frame.child2, frame.element1, frame.element2,
+					                    Mismatch.pathOf(frame.element1) + "/node()[" + (frame.childCount + 1) + ']');
+				}
+				frames.pop();
+				frame = frames.peek();
+			}
+			if (frame == null || task != null && task.isPreceded()) {
+				return null;
+			}
+			node1 = frame.child1;
+			node2 = frame.child2;
+			frame.child1 = nextSibling(node1);
+			frame.child2 = nextSibling(node2);
+			++frame.childCount;
 		}
-		// TODO handle other subtypes
-		throw new UnsupportedOperationException("Source type not handled: " + source.getClass());
 	}
 
-	private static DOMResult toDOMResult(Result result) {
-		if (result instanceof DOMResult) {
-			return (DOMResult) result;
+	/* Whether the given element has enough children to compare them in parallel */
+	private boolean hasManyChildren(Node element) {
+		int childCount = 0;
+		for (Node child = firstChild(element); child != null; child = nextSibling(child)) {
+			if (++childCount > PARALLEL_THRESHOLD) {
+				return true;
+			}
 		}
-		// TODO handle other subtypes
-		throw new UnsupportedOperationException("Result type not handled: " + result.getClass());
+		return false;
 	}
 
-	private boolean areEqual(Node node1, Node node2) {
-		if (node1 == node2) {
-			return true;
+	private List<Node> children(Node element) {
+		List<Node> children = new ArrayList<>();
+		for (Node child = firstChild(element); child != null; child = nextSibling(child)) {
+			children.add(child);
 		}
-		if (node1.getNodeType() != node2.getNodeType()
-		    || !areEqual(node1.getNodeName(), node2.getNodeName())
-		    || !areEqual(node1.getLocalName(), node2.getLocalName())
-		    || !areEqual(node1.getNamespaceURI(), node2.getNamespaceURI())
-		    || !ignoreDifferingNsPrefixes && !areEqual(node1.getPrefix(), node2.getPrefix())
-		    || !areEqual(node1.getNodeValue(), node2.getNodeValue())) {
-			return false;
+		return children;
+	}
+
+	/* Match each expected child with an equal obtained one, regardless of their positions */
+	private Mismatch findUnorderedChildMismatch(Node element1, Node element2, Map<Node, Long> hashes) {
+		/* The obtained children are indexed by the hashes of their subtrees: each expected child is thus compared
+		 * with the obtained children of same hash only, rather than with all of them */
+		Map<Long, List<Node>> obtainedChildren = new LinkedHashMap<>();
+		for (Node child = firstChild(element2); child != null; child = nextSibling(child)) {
+			obtainedChildren.computeIfAbsent(hash(child, hashes), k -> new ArrayList<>(1)).add(child);
 		}
-		if (node1.hasAttributes()) {
-			if (!node2.hasAttributes()) {
-				return false;
+		int childCount = 0;
+		for (Node child = firstChild(element1); child != null; child = nextSibling(child)) {
+			++childCount;
+			List<Node> candidates = obtainedChildren.get(hash(child, hashes));
+			boolean matched = false;
+			if (candidates != null) {
+				for (Iterator<Node> it = candidates.iterator(); it.hasNext() && !matched;) {
+					/* Equal hashes do not guarantee equal subtrees */
+					if (findMismatch(child, it.next(), hashes, null) == null) {
+						it.remove();
+						matched = true;
+					}
+				}
 			}
-			NamedNodeMap attrs1 = node1.getAttributes();
-			NamedNodeMap attrs2 = node2.getAttributes();
+			if (!matched) {
+				return new Mismatch(child, null, element1, element2, Mismatch.pathOf(child));
+			}
+		}
+		for (List<Node> candidates : obtainedChildren.values()) {
+			if (!candidates.isEmpty()) {
+				/* A child is in excess */
+				return new Mismatch(null, candidates.get(0), element1, element2,
+				                    Mismatch.pathOf(element1) + "/node()[" + (childCount + 1) + ']');
+			}
+		}
+		return null;
+	}
+
+	private boolean haveSameHeader(Node node1, Node node2) {
+		return kind(node1) == kind(node2)
+		       && areEqual(localName(node1), localName(node2))
+		       && areEqual(node1.getNamespaceURI(), node2.getNamespaceURI())
+		       && (ignoreDifferingNsPrefixes || areEqual(node1.getPrefix(), node2.getPrefix()))
+		       && areEqual(value(node1), value(node2));
+	}
+
+	private boolean haveSameAttributes(Node element1, Node element2) {
+		NamedNodeMap attrs1 = element1.getAttributes();
+		NamedNodeMap attrs2 = element2.getAttributes();
+		if (!canonical) {
 			int attrsLength = attrs1.getLength();
 			if (attrs2.getLength() != attrsLength) {
 				return false;
 			}
 			for (int i = 0; i < attrsLength; ++i) {
-				Node ithAttr1 = attrs1.item(i);
-				Node ithAttr2 = attrs2.item(i);
-				if (!areEqual(ithAttr1.getLocalName(), ithAttr2.getLocalName())
-				    || !areEqual(ithAttr1.getNamespaceURI(), ithAttr2.getNamespaceURI())
-				    || !ignoreDifferingNsPrefixes && !areEqual(ithAttr1.getPrefix(), ithAttr2.getPrefix())
-				    || !areEqual(ithAttr1.getNodeValue(), ithAttr2.getNodeValue())) {
+				if (!haveSameAttribute(attrs1.item(i), attrs2.item(i))) {
 					return false;
 				}
 			}
+			return true;
+		}
+		/* The expected attributes are indexed by expanded name, to be looked up in constant time */
+		Map<QName, Node> expectedAttrs = new HashMap<>();
+		for (int i = 0; i < attrs1.getLength(); ++i) {
+			Node attr = attrs1.item(i);
+			if (!isNamespaceDeclaration(attr)) {
+				expectedAttrs.put(expandedName(attr), attr);
+			}
 		}
-		Node child1 = node1.getFirstChild();
-		Node child2 = node2.getFirstChild();
-		while (child1 != null && child2 != null) {
-			if (!areEqual(child1, child2)) {
+		int attrCount = 0;
+		for (int i = 0; i < attrs2.getLength(); ++i) {
+			Node attr = attrs2.item(i);
+			if (isNamespaceDeclaration(attr)) {
+				continue;
+			}
+			++attrCount;
+			Node expectedAttr = expectedAttrs.get(expandedName(attr));
+			if (expectedAttr == null || !haveSameAttribute(expectedAttr, attr)) {
 				return false;
 			}
-			child1 = child1.getNextSibling();
-			child2 = child2.getNextSibling();
 		}
-		return child1 == child2; /* Implicit "both null" / "both non-null" check */
+		return attrCount == expectedAttrs.size();
+	}
+
+	private boolean haveSameAttribute(Node attr1, Node attr2) {
+		return areEqual(localName(attr1), localName(attr2))
+		       && areEqual(attr1.getNamespaceURI(), attr2.getNamespaceURI())
+		       && (ignoreDifferingNsPrefixes || areEqual(attr1.getPrefix(), attr2.getPrefix()))
+		       && areEqual(attr1.getNodeValue(), attr2.getNodeValue());
+	}
+
+	/* Compute a hash of the given subtree, consistent with the comparison: equal subtrees have equal hashes. The
+	 * hashes are recorded in the given map, so that each subtree is hashed once */
+	private long hash(Node node, Map<Node, Long> hashes) {
+		Long knownHash = hashes.get(node);
+		if (knownHash != null) {
+			return knownHash;
+		}
+		/* In post-order, iteratively: the hash of an element is computed once those of its children are known */
+		Deque<Node> nodes = new ArrayDeque<>();
+		nodes.push(node);
+		while (!nodes.isEmpty()) {
+			Node current = nodes.peek();
+			boolean childrenHashed = true;
+			if (current.getNodeType() == Node.ELEMENT_NODE) {
+				for (Node child = firstChild(current); child != null; child = nextSibling(child)) {
+					if (!hashes.containsKey(child)) {
+						nodes.push(child);
+						childrenHashed = false;
+					}
+				}
+			}
+			if (childrenHashed) {
+				nodes.pop();
+				hashes.put(current, hashNode(current, hashes));
+			}
+		}
+		return hashes.get(node);
+	}
+
+	/* Compute the hash of the given node, from those of its children */
+	private long hashNode(Node node, Map<Node, Long> hashes) {
+		long hash = kind(node);
+		hash = 31 * hash + Objects.hashCode(localName(node));
+		hash = 31 * hash + Objects.hashCode(node.getNamespaceURI());
+		if (!ignoreDifferingNsPrefixes) {
+			hash = 31 * hash + Objects.hashCode(node.getPrefix());
+		}
+		hash = 31 * hash + Objects.hashCode(value(node));
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			/* The attributes are combined regardless of their order */
+			NamedNodeMap attrs = node.getAttributes();
+			long attrsHash = 0;
+			for (int i = 0; i < attrs.getLength(); ++i) {
+				Node attr = attrs.item(i);
+				if (!canonical || !isNamespaceDeclaration(attr)) {
+					long attrHash = Objects.hash(localName(attr), attr.getNamespaceURI(), attr.getNodeValue(),
+					                             ignoreDifferingNsPrefixes ? null : attr.getPrefix());
+					attrsHash += mix(attrHash);
+				}
+			}
+			hash = 31 * hash + attrsHash;
+			boolean unordered = unorderedElements.contains(expandedName(node));
+			for (Node child = firstChild(node); child != null; child = nextSibling(child)) {
+				long childHash = hashes.get(child);
+				/* The children of unordered elements are combined regardless of their order */
+				hash = unordered ? hash + mix(childHash) : 31 * hash + childHash;
+			}
+		}
+		return mix(hash);
+	}
+
+	/* Spread the bits of the given hash (finalizer of MurmurHash3), so that sums of hashes rarely collide */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/* The first child of the given node that takes part in the comparison */
+	private Node firstChild(Node node) {
+		return skipIgnoredNodes(node.getFirstChild());
+	}
+
+	/* The next sibling of the given node that takes part in the comparison */
+	private Node nextSibling(Node node) {
+		Node next = node.getNextSibling();
+		if (canonical && isText(node)) {
+			/* The adjacent text nodes are compared as one */
+			while (next != null && isText(next)) {
+				next = next.getNextSibling();
+			}
+		}
+		return skipIgnoredNodes(next);
+	}
+
+	private Node skipIgnoredNodes(Node node) {
+		while (node != null && ignoreWhitespaceNodes && isText(node) && value(node).isBlank()) {
+			node = node.getNextSibling();
+		}
+		return node;
+	}
+
+	/* The type of the given node, CDATA sections being text nodes in canonical mode */
+	private int kind(Node node) {
+		return canonical && node.getNodeType() == Node.CDATA_SECTION_NODE ? Node.TEXT_NODE : node.getNodeType();
+	}
+
+	/* The value of the given node, that of text nodes being merged with that of their adjacent text siblings in
+	 * canonical mode */
+	private String value(Node node) {
+		if (!canonical || !isText(node)) {
+			return node.getNodeValue();
+		}
+		Node next = node.getNextSibling();
+		if (next == null || !isText(next)) {
+			return node.getNodeValue();
+		}
+		StringBuilder text = new StringBuilder(node.getNodeValue());
+		for (; next != null && isText(next); next = next.getNextSibling()) {
+			text.append(next.getNodeValue());
+		}
+		return text.toString();
+	}
+
+	private static boolean isText(Node node) {
+		return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+	}
+
+	private static boolean isNamespaceDeclaration(Node attr) {
+		return XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI());
+	}
+
+	/* The local name of the given node, or its node name if it was not built with namespace support */
+	private static String localName(Node node) {
+		return node.getLocalName() == null ? node.getNodeName() : node.getLocalName();
+	}
+
+	private static QName expandedName(Node node) {
+		String namespaceUri = node.getNamespaceURI();
+		return new QName(namespaceUri == null ? XMLConstants.NULL_NS_URI : namespaceUri, localName(node));
 	}
 
 	private static boolean areEqual(String str1, String str2) {
 		return str1 == str2 || str1 != null && str1.equals(str2);
 	}
+
+
+	/* An element being compared, and its next pair of children to compare */
+	private static class Frame {
+
+		final Node element1;
+		final Node element2;
+		Node child1;
+		Node child2;
+		int childCount;
+
+
+		Frame(Node element1, Node element2, Node child1, Node child2) {
+			this.element1 = element1;
+			this.element2 = element2;
+			this.child1 = child1;
+			this.child2 = child2;
+		}
+	}
+
+
+	/* A task of a parallel comparison, that compares a range of pairs of sibling subtrees.
+	 *
+	 * Each task is identified by a key, that orders the tasks of a comparison as the subtrees they compare: the key
+	 * of a subtask extends that of its parent task with its rank among the subtasks of the parent. The key of the
+	 * first task that found a difference is shared by all the tasks, so that those that follow it stop at once. */
+	private class SiblingComparison extends RecursiveTask<Mismatch> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Node> nodes1;
+		private final List<Node> nodes2;
+		private final int from;
+		private final int to;
+		private final int[] key;
+		private final AtomicReference<int[]> mismatchKey;
+		/* The number of subtasks created to compare the children of an element, to rank the next ones */
+		private int subtaskCount;
+
+
+		SiblingComparison(List<Node> nodes1, List<Node> nodes2, int from, int to, int[] key,
+		                  AtomicReference<int[]> mismatchKey) {
+			this.nodes1 = nodes1;
+			this.nodes2 = nodes2;
+			this.from = from;
+			this.to = to;
+			this.key = key;
+			this.mismatchKey = mismatchKey;
+		}
+
+		@Override
+		protected Mismatch compute() {
+			if (to - from > PARALLEL_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				SiblingComparison first = newSubtask(nodes1, nodes2, from, middle);
+				SiblingComparison second = newSubtask(nodes1, nodes2, middle, to);
+				second.fork();
+				Mismatch mismatch = first.compute();
+				/* Joined even when the first half differs, so that no task outlives the comparison */
+				Mismatch secondMismatch = second.join();
+				return mismatch != null ? mismatch : secondMismatch;
+			}
+			/* The hashes are recorded by each task, as the map is not thread-safe */
+			Map<Node, Long> hashes = newHashes();
+			for (int i = from; i < to; ++i) {
+				Mismatch mismatch = findMismatch(nodes1.get(i), nodes2.get(i), hashes, this);
+				if (mismatch != null) {
+					mismatchKey.accumulateAndGet(key, (k1, k2) -> k1 != null && Arrays.compare(k1, k2) < 0 ? k1 : k2);
+					return mismatch;
+				}
+				if (isPreceded()) {
+					return null;
+				}
+			}
+			return null;
+		}
+
+		private SiblingComparison newSubtask(List<Node> subtaskNodes1, List<Node> subtaskNodes2, int subtaskFrom,
+		                                     int subtaskTo) {
+			int[] subtaskKey = Arrays.copyOf(key, key.length + 1);
+			subtaskKey[key.length] = subtaskCount++;
+			return new SiblingComparison(subtaskNodes1, subtaskNodes2, subtaskFrom, subtaskTo, subtaskKey, mismatchKey);
+		}
+
+		/* Compare the children of the given elements in subtasks of this one */
+		Mismatch findChildMismatch(Node element1, Node element2) {
+			List<Node> children1 = children(element1);
+			List<Node> children2 = children(element2);
+			int commonCount = Math.min(children1.size(), children2.size());
+			Mismatch mismatch = newSubtask(children1, children2, 0, commonCount).invoke();
+			if (mismatch == null && children1.size() != children2.size() && !isPreceded()) {
+				/* A child is missing or in excess */
+				mismatch = new Mismatch(commonCount < children1.size() ? children1.get(commonCount) : null,
+				                        commonCount < children2.size() ? children2.get(commonCount) : null,
+				                        element1, element2,
+				                        Mismatch.pathOf(element1) + "/node()[" + (commonCount + 1) + ']');
+			}
+			return mismatch;
+		}
+
+		/* Whether a difference was found in the subtrees that precede those of this task */
+		boolean isPreceded() {
+			int[] firstMismatchKey = mismatchKey.get();
+			return firstMismatchKey != null && Arrays.compare(firstMismatchKey, key) < 0;
+		}
+	}
 }
@@ -0,0 +1,33 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+/**
+ * This enum lists the phases of the execution of a test suite, for which timings are recorded.
+ *
+ * @see PhaseTimings
+ */
+public enum Phase {
+
+	/**
+	 * The loading and validation of the test suite descriptor.
+	 */
+	DESCRIPTOR_PARSING,
+	/**
+	 * The compilation of the stylesheet of the test suite (or its retrieval from the stylesheet cache).
+	 */
+	STYLESHEET_COMPILATION,
+	/**
+	 * The parsing of the inputs and expected outputs of the test cases.
+	 */
+	DOCUMENT_PARSING,
+	/**
+	 * The execution of the stylesheet. In streaming mode, this includes the comparison of the output, and in digest
+	 * mode the computation of its digest, which are done as it is produced.
+	 */
+	TRANSFORMATION,
+	/**
+	 * The comparison of the output of the transformation against the expected output.
+	 */
+	COMPARISON,
+}
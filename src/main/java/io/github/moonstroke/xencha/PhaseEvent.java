@@ -0,0 +1,42 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Flight Recorder event of a phase of the execution of a test suite or test case.
+ *
+ * The events are recorded when the JVM is run with a recording that enables them, e.g. with the option
+ * {@code -XX:StartFlightRecording}.
+ *
+ * @see PhaseTimer
+ */
+@Name("io.github.moonstroke.xencha.Phase")
+@Label("Test Phase")
+@Description("A phase of the execution of a test suite or test case")
+@Category("Xencha")
+/* The events are all committed from the timer: their stack trace is irrelevant */
+@StackTrace(false)
+final class PhaseEvent extends Event {
+
+	@Label("Test Suite")
+	String testSuite;
+
+	@Label("Test Case")
+	@Description("The name of the test case, or null for the phases of the suite itself")
+	String testCase;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Allocated Bytes")
+	@DataAmount
+	long allocatedBytes;
+}
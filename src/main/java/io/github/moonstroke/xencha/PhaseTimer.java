@@ -0,0 +1,86 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * This class measures the consecutive phases of an execution, in the thread that runs it.
+ *
+ * Each call to {@link #lap(Phase)} accounts the time spent and the memory allocated since the previous one (or since
+ * construction) to the given phase, and emits the corresponding {@link PhaseEvent} to the Flight Recorder.
+ *
+ * Instances of this class are not thread-safe, and must be used in a single thread.
+ */
+final class PhaseTimer {
+
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = getThreadMXBean();
+
+	private final PhaseTimings timings;
+	private final String testSuiteName;
+	private final String testCaseName;
+	private long startNanos;
+	private long startAllocatedBytes;
+	private PhaseEvent event;
+
+
+	/**
+	 * Construct a timer that records the phases in the given timings, and start it.
+	 *
+	 * @param timings       The timings to complete
+	 * @param testSuiteName The name of the measured test suite
+	 * @param testCaseName  The name of the measured test case, or {@code null} for the phases of the suite itself
+	 */
+	PhaseTimer(PhaseTimings timings, String testSuiteName, String testCaseName) {
+		this.timings = timings;
+		this.testSuiteName = testSuiteName;
+		this.testCaseName = testCaseName;
+		start();
+	}
+
+	/**
+	 * End the current phase, and start the next one.
+	 *
+	 * @param phase The phase that just ended
+	 */
+	void lap(Phase phase) {
+		long duration = System.nanoTime() - startNanos;
+		long allocatedBytes = currentThreadAllocatedBytes() - startAllocatedBytes;
+		timings.add(phase, duration, allocatedBytes);
+		event.end();
+		if (event.shouldCommit()) {
+			event.testSuite = testSuiteName;
+			event.testCase = testCaseName;
+			event.phase = phase.name();
+			event.allocatedBytes = allocatedBytes;
+			event.commit();
+		}
+		start();
+	}
+
+	/**
+	 * Start a new phase, discarding the measures of the current one.
+	 */
+	void start() {
+		event = new PhaseEvent();
+		event.begin();
+		startAllocatedBytes = currentThreadAllocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	private static long currentThreadAllocatedBytes() {
+		return THREAD_MX_BEAN == null ? 0 : THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+			if (allocationMXBean.isThreadAllocatedMemorySupported()) {
+				allocationMXBean.setThreadAllocatedMemoryEnabled(true);
+				return allocationMXBean;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,96 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+/**
+ * This class holds the time spent and the memory allocated in each phase of the execution of a test.
+ *
+ * The allocated memory is measured through the {@link com.sun.management.ThreadMXBean} of the JVM; it is zero when the
+ * JVM does not support this measure.
+ */
+public class PhaseTimings {
+
+	private static final Phase[] PHASES = Phase.values();
+
+	private final long[] durations = new long[PHASES.length];
+	private final long[] allocatedBytes = new long[PHASES.length];
+
+
+	/**
+	 * Construct empty timings.
+	 */
+	public PhaseTimings() {
+		/* Nothing to initialize */
+	}
+
+	/**
+	 * Construct a copy of the given timings.
+	 *
+	 * @param timings The timings to copy
+	 */
+	public PhaseTimings(PhaseTimings timings) {
+		add(timings);
+	}
+
+	/* Account the given measures to the given phase */
+	void add(Phase phase, long duration, long allocatedBytes) {
+		durations[phase.ordinal()] += duration;
+		this.allocatedBytes[phase.ordinal()] += allocatedBytes;
+	}
+
+	/* Account the measures of the given timings to the same phases */
+	void add(PhaseTimings timings) {
+		for (int i = 0; i < PHASES.length; ++i) {
+			durations[i] += timings.durations[i];
+			allocatedBytes[i] += timings.allocatedBytes[i];
+		}
+	}
+
+	/**
+	 * Retrieve the time spent in the given phase.
+	 *
+	 * @param phase The execution phase
+	 *
+	 * @return The duration of the phase, in nanoseconds
+	 */
+	public long getDuration(Phase phase) {
+		return durations[phase.ordinal()];
+	}
+
+	/**
+	 * Retrieve the memory allocated during the given phase.
+	 *
+	 * @param phase The execution phase
+	 *
+	 * @return The number of bytes allocated by the phase
+	 */
+	public long getAllocatedBytes(Phase phase) {
+		return allocatedBytes[phase.ordinal()];
+	}
+
+	/**
+	 * Retrieve the time spent in all the phases.
+	 *
+	 * @return The sum of the durations of the phases, in nanoseconds
+	 */
+	public long getTotalDuration() {
+		long total = 0;
+		for (long duration : durations) {
+			total += duration;
+		}
+		return total;
+	}
+
+	/**
+	 * Retrieve the memory allocated during all the phases.
+	 *
+	 * @return The sum of the numbers of bytes allocated by the phases
+	 */
+	public long getTotalAllocatedBytes() {
+		long total = 0;
+		for (long bytes : allocatedBytes) {
+			total += bytes;
+		}
+		return total;
+	}
+}
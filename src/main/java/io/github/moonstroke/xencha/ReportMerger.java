@@ -0,0 +1,134 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * This class merges the reports written by the shards of a run into the report of the whole run.
+ *
+ * @see JUnitXmlReporter
+ * @see JsonLinesReporter
+ */
+public final class ReportMerger {
+
+	private ReportMerger() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Merge JUnit XML reports: the suites of all the reports are gathered under a single root.
+	 *
+	 * @param output The path to the merged report, overwritten if it exists
+	 * @param inputs The paths to the reports to merge
+	 *
+	 * @throws IOException if a report cannot be read or written, or if an input is not a complete JUnit XML report
+	 */
+	public static void mergeJUnitXml(Path output, Collection<Path> inputs) throws IOException {
+		XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XMLEventFactory eventFactory = XMLEventFactory.newFactory();
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			XMLEventWriter eventWriter = XMLOutputFactory.newFactory().createXMLEventWriter(writer);
+			eventWriter.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+			eventWriter.add(eventFactory.createCharacters("\n"));
+			/* The line breaks between the suites are copied from the reports */
+			eventWriter.add(eventFactory.createStartElement("", "", "testsuites"));
+			for (Path input : inputs) {
+				try (Reader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+					copySuites(inputFactory.createXMLEventReader(reader), eventWriter, input);
+				} catch (XMLStreamException e) {
+					throw new IOException("Invalid JUnit XML report " + input + ": " + e.getMessage(), e);
+				}
+			}
+			eventWriter.add(eventFactory.createEndElement("", "", "testsuites"));
+			eventWriter.add(eventFactory.createCharacters("\n"));
+			eventWriter.add(eventFactory.createEndDocument());
+			eventWriter.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot write the JUnit report " + output, e);
+		}
+	}
+
+	/* Copy the content of the root of a report, which is written in between the suites of the previous reports */
+	private static void copySuites(XMLEventReader eventReader, XMLEventWriter eventWriter, Path input)
+			throws IOException, XMLStreamException {
+		int depth = 0;
+		while (eventReader.hasNext()) {
+			XMLEvent event = eventReader.nextEvent();
+			if (event.isStartElement()) {
+				if (depth++ == 0) {
+					String rootName = ((StartElement) event).getName().getLocalPart();
+					if (!"testsuites".equals(rootName)) {
+						throw new IOException("Invalid JUnit XML report " + input + ": unexpected root " + rootName);
+					}
+					continue;
+				}
+			} else if (event.isEndElement() && --depth == 0) {
+				continue;
+			}
+			if (depth > 0) {
+				eventWriter.add(event);
+			}
+		}
+		eventReader.close();
+	}
+
+	/**
+	 * Merge JSON Lines reports: the events of all the reports are concatenated, between a single pair of run events.
+	 *
+	 * @param output The path to the merged report, overwritten if it exists
+	 * @param inputs The paths to the reports to merge
+	 *
+	 * @throws IOException if a report cannot be read or written
+	 */
+	public static void mergeJsonLines(Path output, Collection<Path> inputs) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			writer.write(JsonLinesReporter.RUN_STARTED_LINE + "\n");
+			for (Path input : inputs) {
+				try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+						if (!line.equals(JsonLinesReporter.RUN_STARTED_LINE)
+						    && !line.equals(JsonLinesReporter.RUN_FINISHED_LINE)) {
+							writer.write(line + "\n");
+						}
+					}
+				}
+			}
+			writer.write(JsonLinesReporter.RUN_FINISHED_LINE + "\n");
+		}
+	}
+
+	/**
+	 * Merge timings files: the durations of all the files are gathered, those of the last files taking precedence.
+	 *
+	 * @param output The path to the merged timings file; if it exists, its durations are kept for the suites absent
+	 *               from the inputs
+	 * @param inputs The paths to the timings files to merge
+	 *
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void mergeTimings(Path output, Collection<Path> inputs) throws IOException {
+		SuiteTimings timings = SuiteTimings.read(output);
+		for (Path input : inputs) {
+			timings.merge(SuiteTimings.read(input));
+		}
+		timings.write();
+	}
+}
@@ -0,0 +1,132 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class stores on disk the test cases known to succeed, so that subsequent runs can skip them.
+ *
+ * Entries are addressed by a digest of everything the outcome of a case depends on: the stylesheet and its modules,
+ * the input and expected output of the case, the Saxon version and the settings of the run. A changed case thus gets a
+ * new key, and is run again. Only successes are stored: failing cases are always run.
+ *
+ * Instances of this class are thread-safe, and multiple processes can share a same cache directory.
+ */
+public class ResultCache {
+
+	/**
+	 * The default location of the result cache, relative to the working directory.
+	 */
+	public static final Path DEFAULT_DIRECTORY = Path.of(".xencha-cache");
+
+	/* Entries of other kinds are stored in subdirectories whose names cannot be those of the results */
+	private static final Path DIGEST_DIRECTORY = Path.of("digests");
+
+	private final Path directory;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+
+	/**
+	 * Construct a result cache stored in the given directory.
+	 *
+	 * The directory is created on the first store, if it does not exist.
+	 *
+	 * @param directory The location of the cache entries
+	 */
+	public ResultCache(Path directory) {
+		this.directory = directory;
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	/* The directory where to store the digests of the expected outputs, that are valid as long as the results */
+	Path getDigestDirectory() {
+		return directory.resolve(DIGEST_DIRECTORY);
+	}
+
+	/**
+	 * Retrieve the result of a test case from the cache.
+	 *
+	 * @param caseName The name of the test case
+	 * @param key      The digest of the case and of its dependencies
+	 *
+	 * @return The cached result of the case, without timings nor diagnostics, or {@code null} if the cache holds no
+	 *         result for the given key
+	 */
+	public TestResult get(String caseName, byte[] key) {
+		Path entry = entryPath(directory, key);
+		try {
+			TestStatus status = TestStatus.valueOf(Files.readString(entry, StandardCharsets.US_ASCII).strip());
+			hitCount.incrementAndGet();
+			return TestResult.fromCache(caseName, status);
+		} catch (NoSuchFileException e) {
+			/* Not cached */
+		} catch (IOException | IllegalArgumentException e) {
+			/* Unreadable entry: consider it missing, it will be overwritten */
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Store the result of a test case in the cache, if it is a success.
+	 *
+	 * @param key    The digest of the case and of its dependencies
+	 * @param result The result of the execution of the case
+	 */
+	public void put(byte[] key, TestResult result) {
+		if (result.getStatus() != TestStatus.SUCCESS) {
+			return;
+		}
+		try {
+			writeEntry(entryPath(directory, key), result.getStatus().name().getBytes(StandardCharsets.US_ASCII));
+		} catch (IOException e) {
+			/* The cache is only an optimization: the case will be run again next time */
+		}
+	}
+
+	/**
+	 * Retrieve the number of test results found in the cache.
+	 *
+	 * @return The number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Retrieve the number of test results not found in the cache.
+	 *
+	 * @return The number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/* Entries are spread in subdirectories named after the first byte of their key */
+	static Path entryPath(Path directory, byte[] key) {
+		StringBuilder hex = new StringBuilder(2 * key.length);
+		for (byte b : key) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return directory.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+	}
+
+	/* Write then rename, so that concurrent readers never see a partial entry */
+	static void writeEntry(Path entry, byte[] content) throws IOException {
+		Files.createDirectories(entry.getParent());
+		Path temporaryEntry = Files.createTempFile(entry.getParent(), null, ".tmp");
+		Files.write(temporaryEntry, content);
+		Files.move(temporaryEntry, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,366 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class compares output trees as streams of events, without building them in memory.
+ *
+ * The expected output is pulled from a StAX event reader, in lockstep with the SAX events of the obtained output
+ * pushed to a {@link Comparison}. The comparison stops at the first difference. Only the names of the open elements
+ * are retained, so the memory used does not depend on the size of the outputs.
+ *
+ * The comparison follows the same rules as {@link OutputComparator}, except that namespace declarations are not
+ * compared as attributes: only the namespaces of the element and attribute names are.
+ */
+public class StreamingOutputComparator {
+
+	/* Only used to create standalone text events, which is thread-safe */
+	private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+	private final boolean ignoreWhitespaceNodes;
+	private final boolean ignoreDifferingNsPrefixes;
+
+
+	/**
+	 * Construct a new streaming output comparator.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 */
+	public StreamingOutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes) {
+		this.ignoreWhitespaceNodes = ignoreWhitespaceNodes;
+		this.ignoreDifferingNsPrefixes = ignoreDifferingNsPrefixes;
+	}
+
+	/**
+	 * Start the comparison of an output against the given expected output.
+	 *
+	 * @param expectedOutput The reader of the expected output events. It is consumed by the comparison, but not closed
+	 *
+	 * @return A handler to which to send the events of the obtained output
+	 */
+	public Comparison compareTo(XMLEventReader expectedOutput) {
+		return new Comparison(expectedOutput);
+	}
+
+
+	/**
+	 * This class is the receiving end of a streaming comparison.
+	 *
+	 * The events of the obtained output must be sent to it, e.g. through a {@link javax.xml.transform.sax.SAXResult};
+	 * it also needs to be registered as lexical handler for the comments to be compared. At the first difference
+	 * found, it throws a {@link MismatchException}.
+	 */
+	public class Comparison extends DefaultHandler implements LexicalHandler {
+
+		private final XMLEventReader expectedOutput;
+		private final StringBuilder obtainedText = new StringBuilder();
+		private final Deque<Map<String, Integer>> elementCounts = new ArrayDeque<>();
+		private final Deque<String> elementPath = new ArrayDeque<>();
+		private XMLEvent pendingExpectedEvent;
+		private String mismatch;
+		private boolean complete;
+
+
+		Comparison(XMLEventReader expectedOutput) {
+			this.expectedOutput = expectedOutput;
+			elementCounts.push(new HashMap<>());
+		}
+
+		/**
+		 * Retrieve the outcome of the comparison.
+		 *
+		 * @return {@code true} if, and only if, all the events of both outputs were consumed without difference
+		 */
+		public boolean areEqual() {
+			return complete && mismatch == null;
+		}
+
+		/**
+		 * Retrieve the description of the first difference found.
+		 *
+		 * @return the description of the difference, or {@code null} if none was found
+		 */
+		public String getMismatch() {
+			return mismatch;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+				throws SAXException {
+			flushText();
+			String prefix = prefixOf(qName);
+			enterElement(prefix.isEmpty() ? localName : prefix + ':' + localName);
+			XMLEvent expected = nextExpectedEvent();
+			if (!expected.isStartElement()) {
+				fail("expected " + describe(expected) + ", got element " + qName);
+			}
+			StartElement expectedElement = expected.asStartElement();
+			QName expectedName = expectedElement.getName();
+			if (!uri.equals(expectedName.getNamespaceURI()) || !localName.equals(expectedName.getLocalPart())
+			    || !ignoreDifferingNsPrefixes && !prefix.equals(expectedName.getPrefix())) {
+				fail("expected " + describe(expected) + ", got element " + qName);
+			}
+			int expectedAttributeCount = 0;
+			for (Iterator<Attribute> it = expectedElement.getAttributes(); it.hasNext(); it.next()) {
+				++expectedAttributeCount;
+			}
+			int attributeCount = 0;
+			for (int i = 0; i < attributes.getLength(); ++i) {
+				String attributeQName = attributes.getQName(i);
+				if (attributeQName.equals("xmlns") || attributeQName.startsWith("xmlns:")) {
+					continue;
+				}
+				++attributeCount;
+				Attribute expectedAttribute = expectedElement.getAttributeByName(new QName(attributes.getURI(i),
+				                                                                           attributes.getLocalName(i)));
+				if (expectedAttribute == null) {
+					fail("unexpected attribute " + attributeQName);
+				}
+				if (!ignoreDifferingNsPrefixes
+				    && !prefixOf(attributeQName).equals(expectedAttribute.getName().getPrefix())) {
+					fail("expected attribute " + displayName(expectedAttribute.getName()) + ", got " + attributeQName);
+				}
+				if (!expectedAttribute.getValue().equals(attributes.getValue(i))) {
+					fail("expected value \"" + expectedAttribute.getValue() + "\" for attribute " + attributeQName
+					     + ", got \"" + attributes.getValue(i) + '"');
+				}
+			}
+			if (attributeCount != expectedAttributeCount) {
+				fail("expected " + expectedAttributeCount + " attribute(s), got " + attributeCount);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			flushText();
+			XMLEvent expected = nextExpectedEvent();
+			if (!expected.isEndElement()) {
+				fail("expected " + describe(expected) + ", got end of element " + qName);
+			}
+			elementPath.pop();
+			elementCounts.pop();
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			obtainedText.append(ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+			obtainedText.append(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			flushText();
+			XMLEvent expected = nextExpectedEvent();
+			if (!expected.isProcessingInstruction()) {
+				fail("expected " + describe(expected) + ", got processing instruction " + target);
+			}
+			ProcessingInstruction expectedPI = (ProcessingInstruction) expected;
+			if (!target.equals(expectedPI.getTarget()) || !data.equals(nullToEmpty(expectedPI.getData()))) {
+				fail("expected " + describe(expected) + ", got processing instruction " + target + " " + data);
+			}
+		}
+
+		@Override
+		public void comment(char[] ch, int start, int length) throws SAXException {
+			flushText();
+			XMLEvent expected = nextExpectedEvent();
+			String text = new String(ch, start, length);
+			if (expected.getEventType() != XMLEvent.COMMENT || !((Comment) expected).getText().equals(text)) {
+				fail("expected " + describe(expected) + ", got comment \"" + text + '"');
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			flushText();
+			XMLEvent expected = nextExpectedEvent();
+			if (!expected.isEndDocument()) {
+				fail("expected " + describe(expected) + ", got end of document");
+			}
+			complete = true;
+		}
+
+		@Override
+		public void startDTD(String name, String publicId, String systemId) {
+			/* Not compared */
+		}
+
+		@Override
+		public void endDTD() {
+			/* Not compared */
+		}
+
+		@Override
+		public void startEntity(String name) {
+			/* Not compared */
+		}
+
+		@Override
+		public void endEntity(String name) {
+			/* Not compared */
+		}
+
+		@Override
+		public void startCDATA() {
+			/* CDATA sections are compared as text */
+		}
+
+		@Override
+		public void endCDATA() {
+			/* CDATA sections are compared as text */
+		}
+
+		private void flushText() throws SAXException {
+			if (obtainedText.length() == 0) {
+				return;
+			}
+			String text = obtainedText.toString();
+			obtainedText.setLength(0);
+			if (ignoreWhitespaceNodes && text.isBlank()) {
+				return;
+			}
+			XMLEvent expected = nextExpectedEvent();
+			if (!expected.isCharacters() || !text.equals(expected.asCharacters().getData())) {
+				fail("expected " + describe(expected) + ", got text \"" + text + '"');
+			}
+		}
+
+		/* Pull the next event to compare from the expected output, merging adjacent text events and skipping the
+		 * events that are not compared */
+		private XMLEvent nextExpectedEvent() throws SAXException {
+			try {
+				while (true) {
+					XMLEvent event = pendingExpectedEvent == null ? expectedOutput.nextEvent() : pendingExpectedEvent;
+					pendingExpectedEvent = null;
+					switch (event.getEventType()) {
+					case XMLEvent.START_DOCUMENT:
+					case XMLEvent.DTD:
+					case XMLEvent.ENTITY_DECLARATION:
+					case XMLEvent.NOTATION_DECLARATION:
+						continue;
+					case XMLEvent.CHARACTERS:
+					case XMLEvent.CDATA:
+					case XMLEvent.SPACE:
+						Characters text = mergeExpectedText(event.asCharacters());
+						if (ignoreWhitespaceNodes && text.getData().isBlank()) {
+							continue;
+						}
+						return text;
+					default:
+						return event;
+					}
+				}
+			} catch (XMLStreamException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		private Characters mergeExpectedText(Characters first) throws XMLStreamException {
+			StringBuilder text = null;
+			while (expectedOutput.hasNext()) {
+				XMLEvent next = expectedOutput.nextEvent();
+				if (!next.isCharacters()) {
+					pendingExpectedEvent = next;
+					break;
+				}
+				if (text == null) {
+					text = new StringBuilder(first.getData());
+				}
+				text.append(next.asCharacters().getData());
+			}
+			return text == null ? first : EVENT_FACTORY.createCharacters(text.toString());
+		}
+
+		private void enterElement(String name) {
+			int position = elementCounts.peek().merge(name, 1, Integer::sum);
+			elementPath.push(name + '[' + position + ']');
+			elementCounts.push(new HashMap<>());
+		}
+
+		private void fail(String message) throws MismatchException {
+			StringBuilder path = new StringBuilder();
+			for (Iterator<String> it = elementPath.descendingIterator(); it.hasNext();) {
+				path.append('/').append(it.next());
+			}
+			mismatch = (path.length() == 0 ? "/" : path) + ": " + message;
+			throw new MismatchException(mismatch);
+		}
+	}
+
+
+	/**
+	 * This exception is thrown by a {@link Comparison} to abort the production of the obtained output as soon as it
+	 * differs from the expected output.
+	 */
+	public static class MismatchException extends SAXException {
+
+		private static final long serialVersionUID = 1L;
+
+
+		MismatchException(String message) {
+			super(message);
+		}
+	}
+
+
+	private static String prefixOf(String qName) {
+		int colonIndex = qName.indexOf(':');
+		return colonIndex < 0 ? "" : qName.substring(0, colonIndex);
+	}
+
+	private static String nullToEmpty(String str) {
+		return str == null ? "" : str;
+	}
+
+	private static String displayName(QName name) {
+		return name.getPrefix().isEmpty() ? name.getLocalPart() : name.getPrefix() + ':' + name.getLocalPart();
+	}
+
+	private static String describe(XMLEvent event) {
+		switch (event.getEventType()) {
+		case XMLEvent.START_ELEMENT:
+			return "element " + displayName(event.asStartElement().getName());
+		case XMLEvent.END_ELEMENT:
+			return "end of element " + displayName(event.asEndElement().getName());
+		case XMLEvent.CHARACTERS:
+		case XMLEvent.CDATA:
+		case XMLEvent.SPACE:
+			return "text \"" + event.asCharacters().getData() + '"';
+		case XMLEvent.COMMENT:
+			return "comment \"" + ((Comment) event).getText() + '"';
+		case XMLEvent.PROCESSING_INSTRUCTION:
+			return "processing instruction " + ((ProcessingInstruction) event).getTarget();
+		case XMLEvent.END_DOCUMENT:
+			return "end of document";
+		default:
+			return event.toString();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * This class holds the stylesheets compiled during a run, so that suites sharing a stylesheet only compile it once.
+ *
+ * Entries are keyed by the real path of the stylesheet file and the hash of its contents and of the contents of the
+ * modules it includes or imports, so that a stylesheet modified during the run is recompiled. The cache holds a
+ * bounded number of entries, and evicts the least recently used one when full.
+ *
+ * Instances of this class are thread-safe; concurrent requests for the same stylesheet compile it only once.
+ */
+public class StylesheetCache {
+
+	/**
+	 * The default maximum number of stylesheets held in a cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final TransformerFactory transformerFactory;
+	private final Map<Key, CompletableFuture<Templates>> entries;
+	private long hitCount;
+	private long missCount;
+
+
+	/**
+	 * Construct an empty stylesheet cache.
+	 *
+	 * @param transformerFactory The factory used to compile the stylesheets
+	 * @param capacity           The maximum number of compiled stylesheets to retain
+	 */
+	public StylesheetCache(TransformerFactory transformerFactory, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+		}
+		this.transformerFactory = transformerFactory;
+		this.entries = new LinkedHashMap<Key, CompletableFuture<Templates>>(16, 0.75f, /* accessOrder: */ true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<Templates>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Retrieve the compiled form of the stylesheet at the given path, compiling it if it is not in the cache.
+	 *
+	 * @param path The path to the stylesheet file
+	 *
+	 * @return The compiled stylesheet
+	 *
+	 * @throws IOException                       if the stylesheet file cannot be read
+	 * @throws TransformerConfigurationException if the stylesheet cannot be compiled
+	 */
+	public Templates getTemplates(Path path) throws IOException, TransformerConfigurationException {
+		Path realPath = path.toRealPath();
+		byte[] content = Files.readAllBytes(realPath);
+		Key key = new Key(realPath, digest(content, TestSuiteDependencies.ofStylesheet(realPath)));
+		CompletableFuture<Templates> entry;
+		boolean compile = false;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new CompletableFuture<>();
+				entries.put(key, entry);
+				compile = true;
+				++missCount;
+			} else {
+				++hitCount;
+			}
+		}
+		if (compile) {
+			/* Compile outside of the lock, other threads requesting the same stylesheet wait on the future */
+			try {
+				StreamSource source = new StreamSource(new ByteArrayInputStream(content), realPath.toUri().toString());
+				entry.complete(transformerFactory.newTemplates(source));
+			} catch (TransformerConfigurationException | RuntimeException e) {
+				synchronized (entries) {
+					entries.remove(key, entry);
+				}
+				entry.completeExceptionally(e);
+				throw e;
+			}
+		}
+		return await(entry);
+	}
+
+	/* The factory that compiles the stylesheets, to compile the inline ones likewise */
+	TransformerFactory getTransformerFactory() {
+		return transformerFactory;
+	}
+
+	private static Templates await(CompletableFuture<Templates> entry) throws TransformerConfigurationException {
+		try {
+			return entry.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransformerConfigurationException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TransformerConfigurationException) {
+				throw (TransformerConfigurationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new TransformerConfigurationException(cause);
+		}
+	}
+
+	/**
+	 * Retrieve the number of requests served from the cache.
+	 *
+	 * @return The number of cache hits
+	 */
+	public long getHitCount() {
+		synchronized (entries) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Retrieve the number of requests that required compiling a stylesheet.
+	 *
+	 * @return The number of cache misses
+	 */
+	public long getMissCount() {
+		synchronized (entries) {
+			return missCount;
+		}
+	}
+
+	/* The SHA-256 hash of the given contents of the principal stylesheet module, followed by the contents of its other
+	 * modules */
+	private static byte[] digest(byte[] content, Collection<Path> modules) {
+		MessageDigest digest = newDigest();
+		digest.update(content);
+		boolean principalModule = true;
+		for (Path module : modules) {
+			if (principalModule) {
+				principalModule = false;
+				continue;
+			}
+			digest.update(module.toString().getBytes(StandardCharsets.UTF_8));
+			try {
+				digest.update(Files.readAllBytes(module));
+			} catch (IOException e) {
+				/* The missing module will be reported by the compilation */
+			}
+		}
+		return digest.digest();
+	}
+
+	/* A new SHA-256 digest */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			/* Every Java platform is required to support SHA-256 */
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	private static class Key {
+
+		private final Path path;
+		private final byte[] contentHash;
+
+
+		Key(Path path, byte[] contentHash) {
+			this.path = path;
+			this.contentHash = contentHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return path.equals(other.path) && Arrays.equals(contentHash, other.contentHash);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * path.hashCode() + Arrays.hashCode(contentHash);
+		}
+	}
+}
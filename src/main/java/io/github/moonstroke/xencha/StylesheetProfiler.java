@@ -0,0 +1,428 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.expr.instruct.NamedTemplate;
+import net.sf.saxon.expr.instruct.TemplateRule;
+import net.sf.saxon.expr.instruct.UserFunction;
+import net.sf.saxon.jaxp.SaxonTransformerFactory;
+import net.sf.saxon.lib.TraceListener;
+import net.sf.saxon.om.StructuredQName;
+import net.sf.saxon.trace.TimingCodeInjector;
+import net.sf.saxon.trace.Traceable;
+import net.sf.saxon.trace.TraceableComponent;
+import net.sf.saxon.trans.CompilerInfo;
+import net.sf.saxon.trans.Mode;
+
+/**
+ * This class profiles the transformations of the test stylesheets: it counts the calls of their templates and
+ * functions, and measures the time spent in each of them, and in the template rules of each mode.
+ *
+ * The stylesheets are compiled with instrumentation, by a stylesheet cache created for profiling, and each of their
+ * transformations is followed by a trace listener. The listener accumulates the measures of its transformation, and
+ * adds them to those of the profiler once it ends, so that concurrent transformations do not contend on them.
+ * Instances of this class are thread-safe.
+ *
+ * The measures are reported for each stylesheet module, as a list of hot spots, and as collapsed stacks that flame
+ * graph tools render.
+ *
+ * @see TestSuiteRunner#newStylesheetCache(int, boolean)
+ */
+public class StylesheetProfiler {
+
+	/* The measures of each template and function, and of the template rules of each mode */
+	private final Map<Key, Measures> components = new ConcurrentHashMap<>();
+	private final Map<Key, Measures> modes = new ConcurrentHashMap<>();
+	/* The self time of each stack of components, in nanoseconds, by collapsed stack */
+	private final Map<String, LongAdder> stacks = new ConcurrentHashMap<>();
+
+
+	/* Create a factory that compiles the stylesheets with the instrumentation that traces their components */
+	static TransformerFactory newInstrumentingTransformerFactory(Configuration configuration) {
+		CompilerInfo compilerInfo = new CompilerInfo(configuration.getDefaultXsltCompilerInfo());
+		/* Only the templates and functions are traced, rather than each instruction, to keep the overhead low */
+		compilerInfo.setCodeInjector(new TimingCodeInjector());
+		return new SaxonTransformerFactory(configuration) {
+
+			@Override
+			public synchronized Templates newTemplates(Source source) throws TransformerConfigurationException {
+				return newTemplates(source, compilerInfo);
+			}
+		};
+	}
+
+	/* Create a listener for the transformations of a transformer, which it is no more thread-safe than */
+	TraceListener newTraceListener() {
+		return new ProfilingTraceListener();
+	}
+
+	/**
+	 * Tell whether no component was profiled.
+	 *
+	 * @return {@code true} if no template or function of the instrumented stylesheets was called
+	 */
+	public boolean isEmpty() {
+		return components.isEmpty();
+	}
+
+	/**
+	 * Print, for each stylesheet module, the components in which the most time was spent, and the time spent in the
+	 * template rules of each mode.
+	 *
+	 * @param out   The stream to print the report to
+	 * @param count The maximum number of components to print per module
+	 */
+	public void logHotSpots(PrintStream out, int count) {
+		for (Map.Entry<String, List<Map.Entry<Key, Measures>>> module : byModule(components).entrySet()) {
+			out.println("Profile of " + module.getKey() + ':');
+			List<Map.Entry<Key, Measures>> hotSpots = module.getValue();
+			hotSpots.sort(Comparator.comparingLong((Map.Entry<Key, Measures> entry) -> entry.getValue().selfTime.sum())
+			                        .reversed());
+			printMeasuresHeader(out, "component");
+			for (Map.Entry<Key, Measures> entry : hotSpots.subList(0, Math.min(count, hotSpots.size()))) {
+				printMeasures(out, entry.getValue(), entry.getKey().toLabel());
+			}
+			List<Map.Entry<Key, Measures>> moduleModes = byModule(modes).get(module.getKey());
+			if (moduleModes != null) {
+				printMeasuresHeader(out, "mode");
+				for (Map.Entry<Key, Measures> entry : moduleModes) {
+					printMeasures(out, entry.getValue(), entry.getKey().name);
+				}
+			}
+		}
+	}
+
+	/* The measures of each module, sorted by name */
+	private static Map<String, List<Map.Entry<Key, Measures>>> byModule(Map<Key, Measures> measures) {
+		Map<String, List<Map.Entry<Key, Measures>>> modules = new TreeMap<>();
+		for (Map.Entry<Key, Measures> entry : measures.entrySet()) {
+			modules.computeIfAbsent(entry.getKey().module, k -> new ArrayList<>()).add(entry);
+		}
+		for (List<Map.Entry<Key, Measures>> moduleMeasures : modules.values()) {
+			moduleMeasures.sort(Comparator.comparing((Map.Entry<Key, Measures> entry) -> entry.getKey().name));
+		}
+		return modules;
+	}
+
+	private static void printMeasuresHeader(PrintStream out, String nameHeader) {
+		out.printf("%10s %12s %12s  %s%n", "calls", "total (ms)", "self (ms)", nameHeader);
+	}
+
+	private static void printMeasures(PrintStream out, Measures measures, String name) {
+		out.printf(Locale.ROOT, "%10d %12.3f %12.3f  %s%n", measures.calls.sum(), measures.totalTime.sum() / 1e6,
+		           measures.selfTime.sum() / 1e6, name);
+	}
+
+	/**
+	 * Write the stacks of components in which time was spent, in the collapsed format of flame graph tools: one line
+	 * per stack, listing its frames from the outermost one separated by semicolons, then the time spent in its
+	 * innermost frame, in microseconds.
+	 *
+	 * @param path The path to the file to write
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeCollapsedStacks(Path path) throws IOException {
+		Map<String, Long> sortedStacks = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> entry : stacks.entrySet()) {
+			long micros = entry.getValue().sum() / 1000;
+			if (micros > 0) {
+				sortedStacks.put(entry.getKey(), micros);
+			}
+		}
+		try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Long> entry : sortedStacks.entrySet()) {
+				writer.write(entry.getKey() + ' ' + entry.getValue() + '\n');
+			}
+		}
+	}
+
+	/* The label of the given component in the reports */
+	private static String describe(Traceable component) {
+		if (component instanceof TemplateRule) {
+			TemplateRule rule = (TemplateRule) component;
+			String description = "template match=\"" + rule.getMatchPattern().toShortString() + '"';
+			Mode mode = rule.getMode();
+			if (mode != null && !mode.isUnnamedMode()) {
+				description += " mode=\"" + mode.getModeName().getDisplayName() + '"';
+			}
+			return description;
+		}
+		if (component instanceof NamedTemplate) {
+			return "template name=\"" + ((NamedTemplate) component).getTemplateName().getDisplayName() + '"';
+		}
+		if (component instanceof UserFunction) {
+			UserFunction function = (UserFunction) component;
+			return "function " + function.getFunctionName().getDisplayName() + '#' + function.getArity();
+		}
+		String tag = component instanceof TraceableComponent ? ((TraceableComponent) component).getTracingTag()
+		                                                     : component.getClass().getSimpleName();
+		StructuredQName name = component.getObjectName();
+		return name == null ? tag : tag + ' ' + name.getDisplayName();
+	}
+
+	private static String getModule(Traceable component) {
+		String systemId = component.getLocation().getSystemId();
+		return systemId == null || systemId.isEmpty() ? "inline stylesheet" : systemId;
+	}
+
+
+	/* Identifies a component, or a mode, across the transformations */
+	private static class Key {
+
+		private final String module;
+		private final int line;
+		private final String name;
+
+
+		Key(String module, int line, String name) {
+			this.module = module;
+			this.line = line;
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return module.equals(other.module) && line == other.line && name.equals(other.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(module, line, name);
+		}
+
+		/* The label of the component in the hot spots of its module */
+		String toLabel() {
+			/* The lines of the inline stylesheets are unknown */
+			return line > 0 ? name + " (line " + line + ')' : name;
+		}
+
+		/* The frame of the component in the collapsed stacks, where semicolons separate the frames */
+		String toFrame() {
+			String location = module.substring(module.lastIndexOf('/') + 1);
+			if (line > 0) {
+				location += ":" + line;
+			}
+			return (name + " (" + location + ')').replace(';', ',').replace('\n', ' ');
+		}
+	}
+
+
+	/* The measures of the transformations that ended, in nanoseconds; the total time of the recursive calls only
+	 * counts the outermost ones */
+	private static class Measures {
+
+		final LongAdder calls = new LongAdder();
+		final LongAdder totalTime = new LongAdder();
+		final LongAdder selfTime = new LongAdder();
+
+
+		void add(LocalMeasures measures) {
+			calls.add(measures.calls);
+			totalTime.add(measures.totalTime);
+			selfTime.add(measures.selfTime);
+		}
+	}
+
+
+	/* The measures of a component, or a mode, in the current transformation of a listener */
+	private static class LocalMeasures {
+
+		final Key key;
+		/* The measures of the mode of the template rule, if this is one */
+		final LocalMeasures mode;
+		long calls;
+		long totalTime;
+		long selfTime;
+		/* The number of calls in progress, to count the total time of the outermost ones only */
+		int depth;
+
+
+		LocalMeasures(Key key, LocalMeasures mode) {
+			this.key = key;
+			this.mode = mode;
+		}
+
+		void enter() {
+			++calls;
+			++depth;
+		}
+
+		void leave(long time, long ownTime) {
+			if (--depth == 0) {
+				totalTime += time;
+			}
+			selfTime += ownTime;
+		}
+	}
+
+
+	/* A component called in a stack, and the time spent in it with this stack */
+	private static class CallNode {
+
+		final LocalMeasures component;
+		final Map<LocalMeasures, CallNode> children = new IdentityHashMap<>();
+		long selfTime;
+
+
+		CallNode(LocalMeasures component) {
+			this.component = component;
+		}
+
+		CallNode getChild(LocalMeasures childComponent) {
+			return children.computeIfAbsent(childComponent, CallNode::new);
+		}
+	}
+
+
+	/* A call in progress */
+	private static class Frame {
+
+		final LocalMeasures component;
+		final CallNode node;
+		final long start;
+		/* The time spent in the calls made by this one */
+		long childTime;
+
+
+		Frame(LocalMeasures component, CallNode node, long start) {
+			this.component = component;
+			this.node = node;
+			this.start = start;
+		}
+	}
+
+
+	/* Measures the transformations of a transformer, and adds their measures to those of the profiler as each one
+	 * ends */
+	private class ProfilingTraceListener implements TraceListener {
+
+		private final Map<Traceable, LocalMeasures> componentMeasures = new IdentityHashMap<>();
+		private final Map<Key, LocalMeasures> modeMeasures = new HashMap<>();
+		private final Deque<Frame> frames = new ArrayDeque<>();
+		private CallNode root = new CallNode(null);
+
+
+		@Override
+		public void open(Controller controller) {
+			/* Those left by a transformation that failed before its end are discarded */
+			componentMeasures.clear();
+			modeMeasures.clear();
+			frames.clear();
+			root = new CallNode(null);
+		}
+
+		@Override
+		public void enter(Traceable component, Map<String, Object> properties, XPathContext context) {
+			LocalMeasures measures = componentMeasures.get(component);
+			if (measures == null) {
+				measures = new LocalMeasures(new Key(getModule(component), component.getLocation().getLineNumber(),
+				                                     describe(component)),
+				                             getModeMeasures(component));
+				componentMeasures.put(component, measures);
+			}
+			measures.enter();
+			if (measures.mode != null) {
+				measures.mode.enter();
+			}
+			Frame caller = frames.peek();
+			frames.push(new Frame(measures, (caller == null ? root : caller.node).getChild(measures),
+			                      System.nanoTime()));
+		}
+
+		private LocalMeasures getModeMeasures(Traceable component) {
+			if (!(component instanceof TemplateRule)) {
+				return null;
+			}
+			Mode mode = ((TemplateRule) component).getMode();
+			String modeName = mode == null || mode.isUnnamedMode() ? "#unnamed" : mode.getModeName().getDisplayName();
+			Key key = new Key(getModule(component), 0, modeName);
+			return modeMeasures.computeIfAbsent(key, k -> new LocalMeasures(k, null));
+		}
+
+		@Override
+		public void leave(Traceable component) {
+			Frame frame = frames.poll();
+			if (frame == null) {
+				/* Entered before the transformation was opened */
+				return;
+			}
+			long time = System.nanoTime() - frame.start;
+			long ownTime = time - frame.childTime;
+			frame.component.leave(time, ownTime);
+			if (frame.component.mode != null) {
+				frame.component.mode.leave(time, ownTime);
+			}
+			frame.node.selfTime += ownTime;
+			Frame caller = frames.peek();
+			if (caller != null) {
+				caller.childTime += time;
+			}
+		}
+
+		@Override
+		public void close() {
+			for (LocalMeasures measures : componentMeasures.values()) {
+				components.computeIfAbsent(measures.key, k -> new Measures()).add(measures);
+			}
+			for (LocalMeasures measures : modeMeasures.values()) {
+				modes.computeIfAbsent(measures.key, k -> new Measures()).add(measures);
+			}
+			addStacks();
+		}
+
+		/* Add the self time of each stack of the call tree to that of the profiler, iteratively as recursive
+		 * functions make deep trees */
+		private void addStacks() {
+			Deque<CallNode> nodes = new ArrayDeque<>();
+			Deque<String> nodeStacks = new ArrayDeque<>();
+			for (CallNode child : root.children.values()) {
+				nodes.push(child);
+				nodeStacks.push(child.component.key.toFrame());
+			}
+			while (!nodes.isEmpty()) {
+				CallNode node = nodes.pop();
+				String stack = nodeStacks.pop();
+				if (node.selfTime > 0) {
+					stacks.computeIfAbsent(stack, k -> new LongAdder()).add(node.selfTime);
+				}
+				for (CallNode child : node.children.values()) {
+					nodes.push(child);
+					nodeStacks.push(stack + ';' + child.component.key.toFrame());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,376 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathSelector;
+import net.sf.saxon.s9api.XdmArray;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmMap;
+import net.sf.saxon.s9api.XdmValue;
+
+/**
+ * This class holds the history of previous runs: the last duration and status of each test suite and of each of its
+ * cases. It is used to balance the suites across shards, and to schedule them.
+ *
+ * Timings are stored as JSON files, that list the duration and status of each suite along with the path to its
+ * descriptor, and those of its named cases. The paths are relative to the directory of the file, so that a same file
+ * can be used by machines that check the suites out to different locations.
+ *
+ * As a listener of a runner, the timings record the suites of its run as they finish.
+ */
+public class SuiteTimings implements TestListener {
+
+	/**
+	 * The default location of the timings file, relative to the working directory.
+	 */
+	public static final Path DEFAULT_PATH = Path.of(".xencha-timings.json");
+
+	private static final QName JSON_VARIABLE = new QName("json");
+
+	private final Path path;
+	/* The last run of each suite, indexed by the absolute path to its descriptor */
+	private final Map<Path, Run> suites = new TreeMap<>();
+	/* The last run of each named case of the suites, by name in the order of the suite */
+	private final Map<Path, Map<String, Run>> cases = new TreeMap<>();
+	/* The suites recorded since the timings were read */
+	private final Set<Path> updatedSuites = new HashSet<>();
+
+
+	private SuiteTimings(Path path) {
+		this.path = path.toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Load the timings stored in the given file.
+	 *
+	 * @param path The path to the timings file
+	 *
+	 * @return The timings, empty if the file does not exist
+	 *
+	 * @throws IOException if the file cannot be read, or is not a valid timings file
+	 */
+	public static SuiteTimings read(Path path) throws IOException {
+		SuiteTimings timings = new SuiteTimings(path);
+		if (!Files.exists(path)) {
+			return timings;
+		}
+		String json = Files.readString(path, StandardCharsets.UTF_8);
+		try {
+			XPathCompiler compiler = new Processor(false).newXPathCompiler();
+			compiler.declareVariable(JSON_VARIABLE);
+			XPathSelector selector = compiler.compile("parse-json($json)?suites?*").load();
+			selector.setVariable(JSON_VARIABLE, new XdmAtomicValue(json));
+			for (XdmItem item : selector) {
+				XdmMap entry = (XdmMap) item;
+				Path suitePath = timings.path.resolveSibling(getItem(entry, "path").getStringValue()).normalize();
+				timings.suites.put(suitePath, readRun(entry));
+				XdmValue caseEntries = entry.get("cases");
+				if (caseEntries != null && caseEntries.size() == 1) {
+					Map<String, Run> suiteCases = new LinkedHashMap<>();
+					for (XdmValue caseEntry : ((XdmArray) caseEntries.itemAt(0)).asList()) {
+						XdmMap caseMap = (XdmMap) caseEntry.itemAt(0);
+						suiteCases.put(getItem(caseMap, "name").getStringValue(), readRun(caseMap));
+					}
+					timings.cases.put(suitePath, suiteCases);
+				}
+			}
+		} catch (SaxonApiException | ClassCastException | IllegalArgumentException e) {
+			throw new IOException("Invalid timings file " + path + ": " + e.getMessage(), e);
+		}
+		return timings;
+	}
+
+	/* The status is absent from the files written before it was recorded */
+	private static Run readRun(XdmMap entry) throws IOException, SaxonApiException {
+		long duration = ((XdmAtomicValue) getItem(entry, "duration")).getLongValue();
+		XdmValue status = entry.get("status");
+		if (status == null || status.size() == 0) {
+			return new Run(duration, null);
+		}
+		return new Run(duration, TestStatus.valueOf(status.itemAt(0).getStringValue()));
+	}
+
+	private static XdmItem getItem(XdmMap entry, String key) throws IOException {
+		XdmValue value = entry.get(key);
+		if (value == null || value.size() != 1) {
+			throw new IOException("Invalid timings entry: no single value for \"" + key + "\"");
+		}
+		return value.itemAt(0);
+	}
+
+	/**
+	 * Store the timings in the file they were read from.
+	 *
+	 * The file is replaced atomically, so that concurrent runs never read a partial file.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void write() throws IOException {
+		Path temporaryFile = Files.createTempFile(path.getParent(), null, ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+			writer.write("{\n\t\"suites\": [");
+			String separator = "\n";
+			for (Map.Entry<Path, Run> entry : suites.entrySet()) {
+				writer.write(separator);
+				separator = ",\n";
+				writer.write("\t\t{\"path\": " + Json.toJson(relativePath(entry.getKey())) + ", "
+				             + toJson(entry.getValue()));
+				Map<String, Run> suiteCases = cases.get(entry.getKey());
+				if (suiteCases != null && !suiteCases.isEmpty()) {
+					writer.write(", \"cases\": [");
+					String caseSeparator = "\n";
+					for (Map.Entry<String, Run> caseEntry : suiteCases.entrySet()) {
+						writer.write(caseSeparator);
+						caseSeparator = ",\n";
+						writer.write("\t\t\t{\"name\": " + Json.toJson(caseEntry.getKey()) + ", "
+						             + toJson(caseEntry.getValue()) + "}");
+					}
+					writer.write("\n\t\t]");
+				}
+				writer.write("}");
+			}
+			writer.write("\n\t]\n}\n");
+		}
+		Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static String toJson(Run run) {
+		String json = "\"duration\": " + run.duration;
+		if (run.status != null) {
+			json += ", \"status\": " + Json.toJson(run.status.name());
+		}
+		return json;
+	}
+
+	/* The path to a descriptor relative to the directory of the timings file, with portable separators */
+	private String relativePath(Path suitePath) {
+		return path.getParent().relativize(suitePath.toAbsolutePath().normalize()).toString()
+		           .replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Tell whether these timings record no suite.
+	 *
+	 * @return {@code true} if no suite was recorded
+	 */
+	public boolean isEmpty() {
+		return suites.isEmpty();
+	}
+
+	/**
+	 * Record the durations and statuses of the suites of a run and of their cases, keeping those of the other suites.
+	 *
+	 * @param results The results of the suites; those without a descriptor path are ignored
+	 */
+	public void update(Collection<TestSuiteResult> results) {
+		for (TestSuiteResult result : results) {
+			update(result);
+		}
+	}
+
+	/**
+	 * Record the duration and status of a suite and of its cases, replacing those of its previous run.
+	 *
+	 * The cases taken from the result cache were not run: they keep the duration of their previous run, which is
+	 * counted in that of the suite, or are not recorded if they have none.
+	 *
+	 * @param result The result of the suite; ignored if it has no descriptor path
+	 */
+	public synchronized void update(TestSuiteResult result) {
+		if (result.getPath() == null) {
+			return;
+		}
+		Path suitePath = result.getPath().toAbsolutePath().normalize();
+		Map<String, Run> previousCases = cases.getOrDefault(suitePath, Collections.emptyMap());
+		long duration = result.getTimings().getTotalDuration();
+		Map<String, Run> suiteCases = new LinkedHashMap<>();
+		for (TestResult testResult : result.getTestResults()) {
+			if (testResult.getName() == null) {
+				continue;
+			}
+			if (testResult.isCached()) {
+				Run previousRun = previousCases.get(testResult.getName());
+				if (previousRun != null) {
+					suiteCases.put(testResult.getName(), previousRun);
+					duration += previousRun.duration;
+				}
+			} else {
+				suiteCases.put(testResult.getName(), new Run(testResult.getTimings().getTotalDuration(),
+				                                             testResult.getStatus()));
+			}
+		}
+		suites.put(suitePath, new Run(duration, result.getStatus()));
+		cases.put(suitePath, suiteCases);
+		updatedSuites.add(suitePath);
+	}
+
+	@Override
+	public void testSuiteFinished(TestSuiteResult result) {
+		update(result);
+	}
+
+	/**
+	 * Store the suites recorded since these timings were read in the file they were read from.
+	 *
+	 * The file is read again, so that the records of the other suites written meanwhile by concurrent runs are kept.
+	 *
+	 * @throws IOException if the file cannot be read or written
+	 */
+	public synchronized void save() throws IOException {
+		SuiteTimings latest = read(path);
+		for (Path suitePath : updatedSuites) {
+			latest.suites.put(suitePath, suites.get(suitePath));
+			latest.cases.put(suitePath, cases.get(suitePath));
+		}
+		latest.write();
+	}
+
+	/**
+	 * Add the records of other timings to these ones, replacing those of the suites they have in common.
+	 *
+	 * @param other The timings to merge into these ones
+	 */
+	public void merge(SuiteTimings other) {
+		suites.putAll(other.suites);
+		for (Path suitePath : other.suites.keySet()) {
+			cases.remove(suitePath);
+		}
+		cases.putAll(other.cases);
+	}
+
+	/* The duration of each of the given suites, those that were never run being deemed to last the mean duration of
+	 * the others */
+	private Map<Path, Long> estimateDurations(Collection<Path> paths) {
+		long knownDuration = 0;
+		int knownCount = 0;
+		for (Path suitePath : paths) {
+			Run run = suites.get(suitePath.toAbsolutePath().normalize());
+			if (run != null) {
+				knownDuration += run.duration;
+				++knownCount;
+			}
+		}
+		long defaultDuration = knownCount == 0 ? 1 : Math.max(1, knownDuration / knownCount);
+		Map<Path, Long> estimates = new TreeMap<>();
+		for (Path suitePath : paths) {
+			Run run = suites.get(suitePath.toAbsolutePath().normalize());
+			estimates.put(suitePath, run == null ? defaultDuration : run.duration);
+		}
+		return estimates;
+	}
+
+	/* Longest first; ties are broken by path, so that the order depends neither on that of the arguments nor on the
+	 * location of the checkout */
+	private Comparator<Path> longestFirst(Map<Path, Long> estimates) {
+		return Comparator.comparingLong((Path suitePath) -> estimates.get(suitePath)).reversed()
+		                 .thenComparing(this::relativePath);
+	}
+
+	/**
+	 * Order the given suites so that the first failures show up early and the suites are packed well by a pool of
+	 * threads: the suites whose last run failed come first, then the others, each from the longest to the shortest.
+	 * The suites without a recorded duration are deemed to last the mean duration of the others.
+	 *
+	 * @param paths The paths to the descriptors of the suites
+	 *
+	 * @return The paths, in the order in which to run the suites
+	 */
+	public List<Path> schedule(Collection<Path> paths) {
+		Map<Path, Long> estimates = estimateDurations(paths);
+		List<Path> scheduledPaths = new ArrayList<>(paths);
+		scheduledPaths.sort(Comparator.comparing((Path suitePath) -> !hasFailed(suitePath))
+		                              .thenComparing(longestFirst(estimates)));
+		return scheduledPaths;
+	}
+
+	private boolean hasFailed(Path suitePath) {
+		Run run = suites.get(suitePath.toAbsolutePath().normalize());
+		return run != null && run.status != null && run.status != TestStatus.SUCCESS;
+	}
+
+	/**
+	 * Partition the given suites into shards of balanced durations.
+	 *
+	 * The suites are assigned from the longest to the shortest, each to the shard with the lowest total duration so
+	 * far. The suites without a recorded duration are deemed to last the mean duration of the others, so that they are
+	 * spread evenly. The partition only depends on the given paths and on the timings, so that all the shards of a run
+	 * compute the same one.
+	 *
+	 * @param paths The paths to the descriptors of the suites
+	 * @param count The number of shards
+	 *
+	 * @return The suites of each shard, in the order of the given paths
+	 *
+	 * @throws IllegalArgumentException if the given count is not strictly positive
+	 */
+	public List<List<Path>> partition(Collection<Path> paths, int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Invalid number of shards: " + count);
+		}
+		Map<Path, Long> estimates = estimateDurations(paths);
+		List<Path> sortedPaths = new ArrayList<>(estimates.keySet());
+		sortedPaths.sort(longestFirst(estimates));
+		long[] loads = new long[count];
+		Map<Path, Integer> shards = new TreeMap<>();
+		for (Path suitePath : sortedPaths) {
+			int shard = 0;
+			for (int i = 1; i < count; ++i) {
+				if (loads[i] < loads[shard]) {
+					shard = i;
+				}
+			}
+			loads[shard] += estimates.get(suitePath);
+			shards.put(suitePath, shard);
+		}
+		List<List<Path>> partition = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			partition.add(new ArrayList<>());
+		}
+		for (Path suitePath : paths) {
+			/* A path given twice is only run once */
+			Integer shard = shards.remove(suitePath);
+			if (shard != null) {
+				partition.get(shard).add(suitePath);
+			}
+		}
+		return partition;
+	}
+
+
+	/* The duration, in nanoseconds, and the status of the last run of a suite or of a case */
+	private static class Run {
+
+		private final long duration;
+		/* Null if unknown */
+		private final TestStatus status;
+
+
+		Run(long duration, TestStatus status) {
+			this.duration = duration;
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * This class submits a command line to a server, and prints back its output.
+ *
+ * The client only depends on the base modules of the JDK, so that it starts quickly: the options and descriptors are
+ * parsed by the server.
+ *
+ * @see TestServer
+ */
+public final class TestClient {
+
+	private TestClient() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Run the tests of the given command line on a server, printing its output to the standard streams.
+	 *
+	 * Relative paths are resolved against the working directory of the client.
+	 *
+	 * @param socketPath The path of the socket file of the server
+	 * @param args       The options and descriptors of the command line
+	 *
+	 * @return The exit status of the run
+	 *
+	 * @throws IOException              if the server cannot be reached, or closes the connection before the end of the
+	 *                                  run
+	 * @throws IllegalArgumentException if one of the arguments spans multiple lines
+	 */
+	public static int run(Path socketPath, String... args) throws IOException {
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+			writer.write(Path.of("").toAbsolutePath() + "\n" + args.length + "\n");
+			for (String arg : args) {
+				if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+					throw new IllegalArgumentException("Multi-line argument: " + arg);
+				}
+				writer.write(arg + "\n");
+			}
+			writer.flush();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+			                                                                 StandardCharsets.UTF_8));
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				switch (line.charAt(0)) {
+				case TestServer.OUTPUT_PREFIX:
+					System.out.println(line.substring(1));
+					break;
+				case TestServer.ERROR_PREFIX:
+					System.err.println(line.substring(1));
+					break;
+				case TestServer.STATUS_PREFIX:
+					return Integer.parseInt(line.substring(1));
+				default:
+					throw new IOException("Malformed response line: " + line);
+				}
+			}
+			throw new EOFException("The server closed the connection before the end of the run");
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.nio.file.Path;
+
+/**
+ * This interface receives the results of a run as they are produced.
+ *
+ * When suites or cases are run concurrently, the methods of a listener are called from multiple threads: the
+ * implementations must be thread-safe. The events of a same suite are received in order: started, then the cases in
+ * the order of their completion, then finished.
+ *
+ * @see TestRunner#addListener(TestListener)
+ * @see TestSuiteRunner#addListener(TestListener)
+ */
+public interface TestListener {
+
+	/**
+	 * Receive the notification of the start of a run.
+	 */
+	default void testRunStarted() {
+		/* Nothing to do */
+	}
+
+	/**
+	 * Receive the notification of the start of a test suite.
+	 *
+	 * @param testSuitePath The path to the descriptor of the suite
+	 */
+	default void testSuiteStarted(Path testSuitePath) {
+		/* Nothing to do */
+	}
+
+	/**
+	 * Receive the result of a test case.
+	 *
+	 * @param testSuiteName The name of the suite of the case
+	 * @param result        The result of the case
+	 */
+	default void testCaseFinished(String testSuiteName, TestResult result) {
+		/* Nothing to do */
+	}
+
+	/**
+	 * Receive the result of a test suite.
+	 *
+	 * @param result The result of the suite, including those of its cases
+	 */
+	default void testSuiteFinished(TestSuiteResult result) {
+		/* Nothing to do */
+	}
+
+	/**
+	 * Receive the notification of the end of a run.
+	 */
+	default void testRunFinished() {
+		/* Nothing to do */
+	}
+}
@@ -12,6 +12,10 @@ public class TestResult {
 	private final String name;
 	private final TestStatus status;
 	private final String details;
+	private final PhaseTimings timings;
+	private final BenchmarkStatistics benchmarkStatistics;
+	private final String diagnostics;
+	private final boolean cached;
 
 
 	/**
@@ -23,9 +27,81 @@ public class TestResult {
 	 *                successful; may be {@code null})
 	 */
 	public TestResult(String name, TestStatus status, String details) {
+		this(name, status, details, new PhaseTimings());
+	}
+
+	/**
+	 * Construct the result of the execution of a specified test, with the timings of its phases
+	 *
+	 * @param name    The name of the test that was executed
+	 * @param status  The status of the execution of the test
+	 * @param details A string providing details regarding the test status (only relevant when the test is not
+	 *                successful; may be {@code null})
+	 * @param timings The time spent and memory allocated in each phase of the execution of the test
+	 */
+	public TestResult(String name, TestStatus status, String details, PhaseTimings timings) {
+		this(name, status, details, timings, null);
+	}
+
+	/**
+	 * Construct the result of the benchmark of a specified test
+	 *
+	 * @param name                The name of the test that was executed
+	 * @param status              The status of the execution of the test
+	 * @param details             A string providing details regarding the test status (only relevant when the test is
+	 *                            not successful; may be {@code null})
+	 * @param timings             The time spent and memory allocated in each phase of the execution of the test
+	 * @param benchmarkStatistics The measures of the repeated runs of the transformation of the test (may be
+	 *                            {@code null})
+	 */
+	public TestResult(String name, TestStatus status, String details, PhaseTimings timings,
+	                  BenchmarkStatistics benchmarkStatistics) {
+		this(name, status, details, timings, benchmarkStatistics, null);
+	}
+
+	/**
+	 * Construct the result of the execution of a specified test, with diagnostics
+	 *
+	 * @param name                The name of the test that was executed
+	 * @param status              The status of the execution of the test
+	 * @param details             A string providing details regarding the test status (only relevant when the test is
+	 *                            not successful; may be {@code null})
+	 * @param timings             The time spent and memory allocated in each phase of the execution of the test
+	 * @param benchmarkStatistics The measures of the repeated runs of the transformation of the test (may be
+	 *                            {@code null})
+	 * @param diagnostics         A multi-line description of the output of the test (may be {@code null})
+	 */
+	public TestResult(String name, TestStatus status, String details, PhaseTimings timings,
+	                  BenchmarkStatistics benchmarkStatistics, String diagnostics) {
 		this.name = Objects.requireNonNull(name);
 		this.status = Objects.requireNonNull(status);
 		this.details = details;
+		this.timings = Objects.requireNonNull(timings);
+		this.benchmarkStatistics = benchmarkStatistics;
+		this.diagnostics = diagnostics;
+		this.cached = false;
+	}
+
+	private TestResult(String name, TestStatus status) {
+		this.name = Objects.requireNonNull(name);
+		this.status = Objects.requireNonNull(status);
+		this.details = null;
+		this.timings = new PhaseTimings();
+		this.benchmarkStatistics = null;
+		this.diagnostics = null;
+		this.cached = true;
+	}
+
+	/**
+	 * Construct the result of a specified test retrieved from the result cache, without executing the test
+	 *
+	 * @param name   The name of the test
+	 * @param status The status of the previous execution of the test
+	 *
+	 * @return The cached test result, with empty timings
+	 */
+	public static TestResult fromCache(String name, TestStatus status) {
+		return new TestResult(name, status);
 	}
 
 
@@ -56,4 +132,45 @@ public class TestResult {
 	public String getDetails() {
 		return details;
 	}
+
+	/**
+	 * Retrieve the time spent and memory allocated in each phase of this test execution.
+	 *
+	 * The timings are empty for the results {@link #isCached() retrieved from the result cache}.
+	 *
+	 * @return the test execution timings
+	 */
+	public PhaseTimings getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Retrieve the measures of the repeated runs of the transformation of the test, in benchmark mode.
+	 *
+	 * @return the benchmark statistics, or {@code null} if the test was not benchmarked
+	 */
+	public BenchmarkStatistics getBenchmarkStatistics() {
+		return benchmarkStatistics;
+	}
+
+	/**
+	 * Retrieve the diagnostics of this test execution.
+	 *
+	 * Depending on the {@link DiagnosticsLevel diagnostics level} of the run, this is a diff of the expected and
+	 * obtained outputs around their first difference, or the obtained output of a successful test.
+	 *
+	 * @return the test execution diagnostics, or {@code null} if there are none
+	 */
+	public String getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * Tell whether this result was retrieved from the {@link ResultCache result cache} rather than executed.
+	 *
+	 * @return {@code true} if the test was not executed
+	 */
+	public boolean isCached() {
+		return cached;
+	}
 }
@@ -2,57 +2,652 @@
  * SPDX-License-Identifier: MIT */
 package io.github.moonstroke.xencha;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileNotFoundException;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class handles the execution of tests described in XML files whose paths it is given.
  */
 public class TestRunner {
 
-	private final Collection<Path> paths;
+	private Collection<Path> paths;
+	/* The discovery of the given paths, whose failures are reported by the run; null if they are not discovered */
+	private final DescriptorDiscovery discovery;
+	private int jobs = 1;
+	private int caseJobs = 1;
+	private boolean streamingComparison;
+	private boolean parallelComparison;
+	private StylesheetProfiler profiler;
+	private Engine engine = Engine.JAXP;
+	private ResultCache resultCache;
+	private DigestOutputComparator digestOutputComparator;
+	private int benchmarkWarmUpIterations;
+	private int benchmarkIterations;
+	private DiagnosticsLevel diagnosticsLevel = DiagnosticsLevel.ON_FAILURE;
+	private boolean descriptorValidation = true;
+	private int stylesheetCacheCapacity = StylesheetCache.DEFAULT_CAPACITY;
+	private StylesheetCache stylesheetCache = TestSuiteRunner.newStylesheetCache(stylesheetCacheCapacity);
+	private long documentPoolBudget = DocumentPool.DEFAULT_BUDGET;
+	private DocumentPool documentPool = TestSuiteRunner.newDocumentPool(documentPoolBudget);
+	private int forkCount;
+	private List<String> forkJvmOptions = Collections.emptyList();
+	private int suitesPerFork;
+	private boolean failFast;
+	private final List<TestListener> listeners = new CopyOnWriteArrayList<>();
 
 
 	private TestRunner(Collection<Path> paths) {
 		this.paths = paths;
+		discovery = paths instanceof DescriptorDiscovery ? (DescriptorDiscovery) paths : null;
 	}
 
 	/**
 	 * Construct a test runner for the specified paths.
 	 *
-	 * @param rawPaths The paths to XML test suites
+	 * Besides the paths to XML test suites, directories and glob patterns (such as
+	 * <code>tests/**&#47;*.test.xml</code>) designate the descriptors they contain. These are discovered in parallel once
+	 * the run starts, and each suite is run as soon as it is found.
+	 *
+	 * @param rawPaths The paths to XML test suites or to directories, or glob patterns
 	 *
 	 * @return A test runner configured with the specified paths
 	 *
-	 * @throws FileNotFoundException if one of the given paths does not refer to an existing file
+	 * @throws FileNotFoundException if one of the given paths does not refer to an existing file or directory
+	 *
+	 * @see DescriptorDiscovery
 	 */
 	public static TestRunner forPaths(String... rawPaths) throws FileNotFoundException {
-		Collection<Path> paths = new ArrayList<Path>(rawPaths.length);
-		for (String rawPath : rawPaths) {
-			Path path = Path.of(rawPath);
-			if (!Files.isRegularFile(path)) {
-				throw new FileNotFoundException(rawPath);
-			}
-			paths.add(path);
+		return new TestRunner(DescriptorDiscovery.of(rawPaths));
+	}
+
+	/**
+	 * Restrict the suites to those whose descriptor path or name matches one of the included glob patterns, if any,
+	 * and none of the excluded ones.
+	 *
+	 * This must be set before the suites are run or sharded.
+	 *
+	 * @param includes The patterns of the suites to run
+	 * @param excludes The patterns of the suites to skip
+	 *
+	 * @throws IllegalStateException if the suites have already been discovered
+	 */
+	public void setSuiteFilters(Collection<String> includes, Collection<String> excludes) {
+		if (!(paths instanceof DescriptorDiscovery)) {
+			throw new IllegalStateException("The suites have already been discovered");
+		}
+		((DescriptorDiscovery) paths).setFilters(includes, excludes);
+	}
+
+	/**
+	 * Restrict the run to one shard of its suites, the suites being partitioned in shards of balanced durations.
+	 *
+	 * @param index   The index of the shard to run, from 1 to the number of shards
+	 * @param count   The number of shards
+	 * @param timings The durations of the suites in previous runs
+	 *
+	 * @throws IllegalArgumentException if the given index is not in the range of the shards
+	 *
+	 * @see SuiteTimings#partition(Collection, int)
+	 */
+	public void setShard(int index, int count, SuiteTimings timings) {
+		if (index < 1 || index > count) {
+			throw new IllegalArgumentException("Invalid shard: " + index + "/" + count);
+		}
+		paths = timings.partition(paths, count).get(index - 1);
+	}
+
+	/**
+	 * Order the suites after the history of the previous runs: the suites that failed last come first, so that the
+	 * failures show up early, then the others from the longest to the shortest, so that they are packed well by the
+	 * jobs.
+	 *
+	 * The suites are kept in the given order if the history is empty, so that the discovered suites still run as soon
+	 * as they are found; otherwise, they all have to be discovered first. If the run is sharded, this must be set after
+	 * the shard.
+	 *
+	 * @param timings The history of the previous runs
+	 *
+	 * @see SuiteTimings#schedule(Collection)
+	 */
+	public void setSchedule(SuiteTimings timings) {
+		if (!timings.isEmpty()) {
+			paths = timings.schedule(paths);
+		}
+	}
+
+	/**
+	 * Set the number of test suites to run concurrently.
+	 *
+	 * @param jobs The maximum number of suites to execute in parallel (1, the default, runs them sequentially)
+	 *
+	 * @throws IllegalArgumentException if the given number is not strictly positive
+	 */
+	public void setJobs(int jobs) {
+		if (jobs < 1) {
+			throw new IllegalArgumentException("Invalid number of jobs: " + jobs);
+		}
+		this.jobs = jobs;
+	}
+
+	/**
+	 * Set the number of test cases of a same suite to run concurrently.
+	 *
+	 * This is independent from the number of suites run concurrently: the cases of all the suites share a pool of the
+	 * given number of threads.
+	 *
+	 * @param caseJobs The maximum number of cases to execute in parallel (1, the default, runs them sequentially)
+	 *
+	 * @throws IllegalArgumentException if the given number is not strictly positive
+	 */
+	public void setCaseJobs(int caseJobs) {
+		if (caseJobs < 1) {
+			throw new IllegalArgumentException("Invalid number of case jobs: " + caseJobs);
+		}
+		this.caseJobs = caseJobs;
+	}
+
+	/**
+	 * Set whether to compare the outputs of the tests as streams of events rather than as trees.
+	 *
+	 * @param streamingComparison {@code true} to compare the outputs in streaming mode
+	 *
+	 * @see TestSuiteRunner#setStreamingComparison(boolean)
+	 */
+	public void setStreamingComparison(boolean streamingComparison) {
+		this.streamingComparison = streamingComparison;
+	}
+
+	/**
+	 * Set whether to compare the large output trees of the tests in parallel.
+	 *
+	 * @param parallelComparison {@code true} to compare the children of the elements that have many in parallel
+	 *
+	 * @see TestSuiteRunner#setParallelComparison(boolean)
+	 */
+	public void setParallelComparison(boolean parallelComparison) {
+		this.parallelComparison = parallelComparison;
+	}
+
+	/**
+	 * Set the engine used to execute the test cases.
+	 *
+	 * @param engine The test case execution engine
+	 *
+	 * @see TestSuiteRunner#setEngine(Engine)
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = Objects.requireNonNull(engine);
+	}
+
+	/**
+	 * Set the cache in which to look up the results of the test cases before running them.
+	 *
+	 * @param resultCache The persistent cache of test results, or {@code null} to run every case (the default)
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+		if (digestOutputComparator != null) {
+			/* Store the digests with the results */
+			digestOutputComparator = newDigestOutputComparator();
+		}
+	}
+
+	/**
+	 * Retrieve the cache of test results used by this runner.
+	 *
+	 * @return The result cache, or {@code null} if there is none
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Set whether to compare the outputs of the tests through their structural digests.
+	 *
+	 * The digests of the expected outputs are retained for the lifetime of this runner, and stored in the directory
+	 * of the result cache if it has one.
+	 *
+	 * @param digestComparison {@code true} to compare the digests of the outputs before comparing them in detail
+	 *
+	 * @see TestSuiteRunner#setDigestOutputComparator(DigestOutputComparator)
+	 */
+	public void setDigestComparison(boolean digestComparison) {
+		if (!digestComparison) {
+			digestOutputComparator = null;
+		} else if (digestOutputComparator == null) {
+			digestOutputComparator = newDigestOutputComparator();
 		}
-		return new TestRunner(paths);
+	}
+
+	private DigestOutputComparator newDigestOutputComparator() {
+		return new DigestOutputComparator(/* ignoreWhitespaceNodes: */ false, /* ignoreDifferingNsPrefixes: */ false,
+		                                  resultCache == null ? null : resultCache.getDigestDirectory());
+	}
+
+	/**
+	 * Set the numbers of runs of the transformations of the cases in benchmark mode.
+	 *
+	 * @param warmUpIterations The number of unmeasured runs, that precede the measured ones
+	 * @param iterations       The number of measured runs, or 0 to disable the benchmark mode (the default)
+	 *
+	 * @throws IllegalArgumentException if a given number is negative
+	 *
+	 * @see TestSuiteRunner#setBenchmarkIterations(int, int)
+	 */
+	public void setBenchmarkIterations(int warmUpIterations, int iterations) {
+		if (warmUpIterations < 0 || iterations < 0) {
+			throw new IllegalArgumentException("Invalid number of iterations: " + warmUpIterations + ", "
+			                                   + iterations);
+		}
+		this.benchmarkWarmUpIterations = warmUpIterations;
+		this.benchmarkIterations = iterations;
+	}
+
+	/**
+	 * Set the level of the diagnostics attached to the results of the test cases.
+	 *
+	 * @param diagnosticsLevel The diagnostics level
+	 *
+	 * @see TestSuiteRunner#setDiagnosticsLevel(DiagnosticsLevel)
+	 */
+	public void setDiagnosticsLevel(DiagnosticsLevel diagnosticsLevel) {
+		this.diagnosticsLevel = Objects.requireNonNull(diagnosticsLevel);
+	}
+
+	/**
+	 * Enable or disable the validation of the test suite descriptors against their schema.
+	 *
+	 * @param descriptorValidation {@code false} to skip the validation, {@code true} (the default) to validate the
+	 *                             descriptors
+	 *
+	 * @see TestSuiteRunner#setDescriptorValidation(boolean)
+	 */
+	public void setDescriptorValidation(boolean descriptorValidation) {
+		this.descriptorValidation = descriptorValidation;
+	}
+
+	/**
+	 * Set the maximum number of compiled stylesheets retained across the suites of the run.
+	 *
+	 * This discards the stylesheets compiled so far.
+	 *
+	 * @param capacity The capacity of the stylesheet cache
+	 *
+	 * @throws IllegalArgumentException if the given capacity is not strictly positive
+	 */
+	public void setStylesheetCacheCapacity(int capacity) {
+		stylesheetCache = TestSuiteRunner.newStylesheetCache(capacity, profiler != null);
+		stylesheetCacheCapacity = capacity;
+	}
+
+	/* Share a stylesheet cache created for another runner, to keep the compiled stylesheets across runs */
+	void setStylesheetCache(StylesheetCache stylesheetCache) {
+		this.stylesheetCache = Objects.requireNonNull(stylesheetCache);
+	}
+
+	/**
+	 * Set the profiler that measures the transformations of the tests.
+	 *
+	 * This discards the stylesheets compiled so far, as the profiled ones are compiled with instrumentation. Profiling
+	 * is not supported in forked runs.
+	 *
+	 * @param profiler The profiler, or {@code null} not to profile the transformations (the default)
+	 *
+	 * @see TestSuiteRunner#setProfiler(StylesheetProfiler)
+	 */
+	public void setProfiler(StylesheetProfiler profiler) {
+		this.profiler = profiler;
+		stylesheetCache = TestSuiteRunner.newStylesheetCache(stylesheetCacheCapacity, profiler != null);
+	}
+
+	/**
+	 * Retrieve the cache of the stylesheets compiled by this runner.
+	 *
+	 * @return The stylesheet cache, shared by all the suites of the run
+	 */
+	public StylesheetCache getStylesheetCache() {
+		return stylesheetCache;
+	}
+
+	/**
+	 * Set the maximum estimated size in memory of the parsed documents retained across the suites of the run.
+	 *
+	 * This discards the documents parsed so far.
+	 *
+	 * @param budget The budget of the document pool, in bytes
+	 *
+	 * @throws IllegalArgumentException if the given budget is negative
+	 */
+	public void setDocumentPoolBudget(long budget) {
+		documentPool = TestSuiteRunner.newDocumentPool(budget);
+		documentPoolBudget = budget;
+	}
+
+	/* Share a document pool created for another runner, to keep the parsed documents across runs */
+	void setDocumentPool(DocumentPool documentPool) {
+		this.documentPool = Objects.requireNonNull(documentPool);
+	}
+
+	/**
+	 * Retrieve the pool of the documents parsed by this runner.
+	 *
+	 * @return The document pool, shared by all the suites of the run
+	 */
+	public DocumentPool getDocumentPool() {
+		return documentPool;
+	}
+
+	/**
+	 * Run the suites in child JVMs rather than in this one.
+	 *
+	 * Each worker process runs one suite at a time, with the configuration of this runner, and is replaced after a
+	 * given number of suites, or when it dies: a suite that exhausts the memory of its worker is reported as an error,
+	 * without affecting the others. The stylesheets and documents are cached by each worker, and the caches of this
+	 * runner are not used. The number of jobs is ignored: the suites are run concurrently by the workers.
+	 *
+	 * @param workerCount     The number of worker processes, or 0 to run the suites in this JVM (the default)
+	 * @param jvmOptions      The options of the worker JVMs, such as their heap size
+	 * @param suitesPerWorker The number of suites after which a worker is replaced, or 0 to never replace it
+	 *
+	 * @throws IllegalArgumentException if a given number is negative
+	 */
+	public void setFork(int workerCount, List<String> jvmOptions, int suitesPerWorker) {
+		if (workerCount < 0 || suitesPerWorker < 0) {
+			throw new IllegalArgumentException("Invalid fork settings: " + workerCount + ", " + suitesPerWorker);
+		}
+		forkCount = workerCount;
+		forkJvmOptions = new ArrayList<>(jvmOptions);
+		suitesPerFork = suitesPerWorker;
+	}
+
+	/**
+	 * Set whether to stop the run at the first failure or error.
+	 *
+	 * The suites and cases that are running when the first failure occurs are finished, but no other is started: the
+	 * run only returns the results of the suites that were started.
+	 *
+	 * @param failFast {@code true} to stop at the first failure, {@code false} (the default) to run all the suites
+	 */
+	public void setFailFast(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Register a listener to notify of the results of the run as they are produced.
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addListener(TestListener listener) {
+		listeners.add(Objects.requireNonNull(listener));
 	}
 
 	/**
 	 * Run the tests for which this runner was configured.
 	 *
+	 * The results are returned in the order of the paths given to the runner, regardless of the number of jobs. In
+	 * fail-fast mode, the suites not started before the first failure have no result. All the results are kept until
+	 * the end of the run: to only report them to the listeners, use {@link #run()}.
+	 *
 	 * @return The results of the execution of the tests
 	 */
 	public Collection<TestSuiteResult> runTests() {
-		Collection<TestSuiteResult> testSuiteResults = new ArrayList<>(paths.size());
-		TestSuiteRunner runner = new TestSuiteRunner();
-		for (Path path : paths) {
-			TestSuiteResult result = runner.runSuite(path);
-			testSuiteResults.add(result);
+		return runTests(paths);
+	}
+
+	/**
+	 * Run the tests for which this runner was configured, only reporting their results to the listeners.
+	 *
+	 * The result of each suite is dropped once reported, so that the memory used by the run does not grow with its
+	 * number of suites.
+	 *
+	 * @return The number of suites that were run. In fail-fast mode, those not started before the first failure are
+	 *         not counted
+	 */
+	public int run() {
+		return runTests(paths, null);
+	}
+
+	/**
+	 * Retrieve the paths of the test suites for which this runner was configured.
+	 *
+	 * @return The paths to the XML test suites
+	 */
+	public Collection<Path> getPaths() {
+		return Collections.unmodifiableCollection(paths);
+	}
+
+	/* Run the test suites of given paths, with the configuration of this runner */
+	Collection<TestSuiteResult> runTests(Collection<Path> paths) {
+		List<TestSuiteResult> results = new ArrayList<>();
+		runTests(paths, results);
+		return results;
+	}
+
+	/* Run the test suites of given paths, and add their results to the given list in the same order, unless it is
+	 * null. Return the number of suites run */
+	int runTests(Collection<Path> paths, List<TestSuiteResult> results) {
+		/* The end of the run is notified even if it fails, so that the reports written so far are complete */
+		try {
+			for (TestListener listener : listeners) {
+				listener.testRunStarted();
+			}
+			int suiteCount;
+			if (forkCount > 0) {
+				if (profiler != null) {
+					throw new IllegalStateException("The transformations of forked runs cannot be profiled");
+				}
+				suiteCount = new WorkerPool(this, forkCount, forkJvmOptions, suitesPerFork, failFast, listeners)
+						.runTests(paths, results);
+			} else {
+				ExecutorService caseExecutor = newCaseExecutor();
+				try {
+					TestSuiteRunner runner = newTestSuiteRunner(caseExecutor);
+					for (TestListener listener : listeners) {
+						runner.addListener(listener);
+					}
+					suiteCount = runTests(runner, paths, results);
+				} finally {
+					if (caseExecutor != null) {
+						caseExecutor.shutdownNow();
+					}
+				}
+			}
+			if (discovery != null) {
+				for (Map.Entry<Path, IOException> failure : discovery.takeFailures().entrySet()) {
+					reportWalkFailure(failure.getKey(), failure.getValue(), results);
+				}
+			}
+			return suiteCount;
+		} finally {
+			finishRun();
+		}
+	}
+
+	/* Report a directory that could not be walked as a suite in error, which is not counted as run */
+	private void reportWalkFailure(Path directory, IOException e, List<TestSuiteResult> results) {
+		TestSuiteResult result = new TestSuiteResult(directory.toString());
+		result.setStatus(TestStatus.ERROR);
+		result.setDetails("Cannot list the directory: " + e);
+		for (TestListener listener : listeners) {
+			listener.testSuiteStarted(directory);
+		}
+		for (TestListener listener : listeners) {
+			listener.testSuiteFinished(result);
+		}
+		if (results != null) {
+			results.add(result);
+		}
+	}
+
+	/* Notify all the listeners of the end of the run, even if some of them fail: the first failure is thrown last */
+	private void finishRun() {
+		RuntimeException failure = null;
+		for (TestListener listener : listeners) {
+			try {
+				listener.testRunFinished();
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/* The pool shared by the cases of all the suites, or null if they are run sequentially */
+	ExecutorService newCaseExecutor() {
+		return caseJobs == 1 ? null : Executors.newWorkStealingPool(caseJobs);
+	}
+
+	/* Create a suite runner with the configuration of this runner, without its listeners */
+	TestSuiteRunner newTestSuiteRunner(ExecutorService caseExecutor) {
+		TestSuiteRunner runner = new TestSuiteRunner(stylesheetCache);
+		runner.setCaseExecutor(caseExecutor);
+		runner.setStreamingComparison(streamingComparison);
+		runner.setParallelComparison(parallelComparison);
+		runner.setEngine(engine);
+		runner.setResultCache(resultCache);
+		runner.setDocumentPool(documentPool);
+		runner.setDigestOutputComparator(digestOutputComparator);
+		runner.setBenchmarkIterations(benchmarkWarmUpIterations, benchmarkIterations);
+		runner.setDiagnosticsLevel(diagnosticsLevel);
+		runner.setDescriptorValidation(descriptorValidation);
+		runner.setFailFast(failFast);
+		runner.setProfiler(profiler);
+		return runner;
+	}
+
+	/* Send the configuration of this runner to a worker process */
+	void writeConfiguration(DataOutput output) throws IOException {
+		output.writeInt(caseJobs);
+		output.writeBoolean(streamingComparison);
+		output.writeBoolean(parallelComparison);
+		output.writeUTF(engine.name());
+		Path resultCacheDirectory = resultCache == null ? null : resultCache.getDirectory().toAbsolutePath();
+		WorkerProtocol.writeString(output, resultCacheDirectory == null ? null : resultCacheDirectory.toString());
+		output.writeBoolean(digestOutputComparator != null);
+		output.writeInt(benchmarkWarmUpIterations);
+		output.writeInt(benchmarkIterations);
+		output.writeUTF(diagnosticsLevel.name());
+		output.writeBoolean(descriptorValidation);
+		output.writeInt(stylesheetCacheCapacity);
+		output.writeLong(documentPoolBudget);
+		output.writeBoolean(failFast);
+	}
+
+	/* Create a runner with the configuration sent by the parent of a worker process */
+	static TestRunner readConfiguration(DataInput input) throws IOException {
+		TestRunner testRunner = new TestRunner(Collections.emptyList());
+		testRunner.setCaseJobs(input.readInt());
+		testRunner.setStreamingComparison(input.readBoolean());
+		testRunner.setParallelComparison(input.readBoolean());
+		testRunner.setEngine(Engine.valueOf(input.readUTF()));
+		String resultCacheDirectory = WorkerProtocol.readString(input);
+		if (resultCacheDirectory != null) {
+			testRunner.setResultCache(new ResultCache(Path.of(resultCacheDirectory)));
+		}
+		testRunner.setDigestComparison(input.readBoolean());
+		testRunner.setBenchmarkIterations(input.readInt(), input.readInt());
+		testRunner.setDiagnosticsLevel(DiagnosticsLevel.valueOf(input.readUTF()));
+		testRunner.setDescriptorValidation(input.readBoolean());
+		testRunner.setStylesheetCacheCapacity(input.readInt());
+		testRunner.setDocumentPoolBudget(input.readLong());
+		testRunner.setFailFast(input.readBoolean());
+		return testRunner;
+	}
+
+	private int runTests(TestSuiteRunner runner, Collection<Path> paths, List<TestSuiteResult> results) {
+		if (jobs == 1) {
+			int suiteCount = 0;
+			for (Path path : paths) {
+				if (runner.isStopped()) {
+					break;
+				}
+				TestSuiteResult result = runner.runSuite(path);
+				++suiteCount;
+				if (results != null) {
+					results.add(result);
+				}
+			}
+			return suiteCount;
+		}
+		ExecutorService executor = Executors.newWorkStealingPool(jobs);
+		try {
+			AtomicInteger suiteCount = new AtomicInteger();
+			/* The paths may still be being discovered: the suites are submitted as they come */
+			Deque<Future<TestSuiteResult>> futures = new ArrayDeque<>();
+			for (Path path : paths) {
+				if (runner.isStopped()) {
+					break;
+				}
+				futures.add(executor.submit(() -> {
+					if (runner.isStopped()) {
+						/* The suites queued when the run is stopped are skipped, without a result */
+						return null;
+					}
+					TestSuiteResult result = runner.runSuite(path);
+					suiteCount.incrementAndGet();
+					return results == null ? null : result;
+				}));
+				/* Only the suites that are not finished yet are waited for */
+				while (!futures.isEmpty() && futures.peek().isDone()) {
+					addResult(results, futures.poll());
+				}
+			}
+			for (Future<TestSuiteResult> future : futures) {
+				addResult(results, future);
+			}
+			return suiteCount.get();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/* Wait for the result of a suite, and add it to the given list, if both are not null */
+	private static void addResult(List<TestSuiteResult> results, Future<TestSuiteResult> future) {
+		TestSuiteResult result = getResult(future);
+		if (results != null && result != null) {
+			results.add(result);
+		}
+	}
+
+	/* Wait for the given result, rethrowing as-is any unchecked exception thrown by the task */
+	static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the test results", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
 		}
-		return testSuiteResults;
 	}
 }
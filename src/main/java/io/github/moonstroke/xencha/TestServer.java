@@ -0,0 +1,200 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps a process listening on a Unix domain socket, and runs the tests requested by its clients.
+ *
+ * The compiled stylesheets and the parsed documents are shared by all the requests, so that only the first run pays
+ * for them (and for the start of the JVM). Requests are served concurrently, up to a given number.
+ *
+ * A request consists of UTF-8 lines: the working directory of the client, the number of its arguments, then each
+ * argument (the options and descriptors of the command line). The server answers with one line per line of output,
+ * prefixed with {@code o} for the standard output and with {@code e} for the standard error, and ends with a line
+ * holding {@code x} followed by the exit status of the run.
+ *
+ * @see TestClient
+ */
+public class TestServer {
+
+	static final char OUTPUT_PREFIX = 'o';
+	static final char ERROR_PREFIX = 'e';
+	static final char STATUS_PREFIX = 'x';
+
+	private final Path socketPath;
+	private final int concurrency;
+	private final StylesheetCache stylesheetCache;
+	private final DocumentPool documentPool;
+
+
+	/**
+	 * Construct a server listening on the given socket.
+	 *
+	 * @param socketPath              The path of the socket file
+	 * @param concurrency             The maximum number of requests served concurrently
+	 * @param stylesheetCacheCapacity The capacity of the stylesheet cache shared by the requests
+	 * @param documentPoolBudget      The budget of the document pool shared by the requests, in bytes
+	 *
+	 * @throws IllegalArgumentException if one of the given numbers is out of range
+	 */
+	public TestServer(Path socketPath, int concurrency, int stylesheetCacheCapacity, long documentPoolBudget) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Invalid number of concurrent requests: " + concurrency);
+		}
+		this.socketPath = socketPath;
+		this.concurrency = concurrency;
+		stylesheetCache = TestSuiteRunner.newStylesheetCache(stylesheetCacheCapacity);
+		documentPool = TestSuiteRunner.newDocumentPool(documentPoolBudget);
+	}
+
+	/**
+	 * Listen for requests and serve them.
+	 *
+	 * The socket file is created by this method, and deleted when the process exits. This method only returns if
+	 * the socket is closed.
+	 *
+	 * @throws IOException if the socket cannot be created, or if another server listens on it
+	 */
+	public void serve() throws IOException {
+		deleteStaleSocket();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try (ServerSocketChannel serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+			socketPath.toFile().deleteOnExit();
+			System.out.println("Listening on " + socketPath);
+			while (true) {
+				SocketChannel channel = serverChannel.accept();
+				executor.execute(() -> serve(channel));
+			}
+		} finally {
+			executor.shutdownNow();
+			Files.deleteIfExists(socketPath);
+		}
+	}
+
+	/* Remove the socket file left by a server that did not exit cleanly */
+	private void deleteStaleSocket() throws IOException {
+		if (!Files.exists(socketPath)) {
+			return;
+		}
+		boolean listening;
+		try {
+			SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+			listening = true;
+		} catch (IOException e) {
+			listening = false;
+		}
+		if (listening) {
+			throw new IOException("A server already listens on " + socketPath);
+		}
+		Files.delete(socketPath);
+	}
+
+	private void serve(SocketChannel acceptedChannel) {
+		try (SocketChannel channel = acceptedChannel) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+			                                                                 StandardCharsets.UTF_8));
+			Path workingDirectory = Path.of(readLine(reader));
+			String[] args = new String[Integer.parseInt(readLine(reader))];
+			for (int i = 0; i < args.length; ++i) {
+				args[i] = readLine(reader);
+			}
+			OutputStream output = Channels.newOutputStream(channel);
+			int status;
+			try (PrintStream out = new PrintStream(new FramedOutputStream(output, OUTPUT_PREFIX), true,
+			                                       StandardCharsets.UTF_8);
+			     PrintStream err = new PrintStream(new FramedOutputStream(output, ERROR_PREFIX), true,
+			                                       StandardCharsets.UTF_8)) {
+				status = Main.run(args, workingDirectory, out, err, this);
+			}
+			synchronized (output) {
+				output.write((STATUS_PREFIX + Integer.toString(status) + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		} catch (IOException | RuntimeException e) {
+			/* The client is gone, or sent a malformed request: only the server's log can tell */
+			System.err.println("Request failed: " + e);
+		}
+	}
+
+	private static String readLine(BufferedReader reader) throws IOException {
+		String line = reader.readLine();
+		if (line == null) {
+			throw new EOFException("Incomplete request");
+		}
+		return line;
+	}
+
+	StylesheetCache getStylesheetCache() {
+		return stylesheetCache;
+	}
+
+	DocumentPool getDocumentPool() {
+		return documentPool;
+	}
+
+
+	/* Send each line written to the stream as a line of the response, with the given prefix. The lines of the output
+	 * and error streams are written to the socket atomically, so that they are not interleaved */
+	private static class FramedOutputStream extends OutputStream {
+
+		private final OutputStream output;
+		private final char prefix;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+
+		FramedOutputStream(OutputStream output, char prefix) {
+			this.output = output;
+			this.prefix = prefix;
+			line.write(prefix);
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			line.write(b);
+			if (b == '\n') {
+				sendLine();
+			}
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			for (int i = off; i < off + len; ++i) {
+				write(b[i]);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			/* Terminate the last line, if any */
+			if (line.size() > 1) {
+				write('\n');
+			}
+		}
+
+		private void sendLine() throws IOException {
+			synchronized (output) {
+				line.writeTo(output);
+			}
+			line.reset();
+			line.write(prefix);
+		}
+	}
+}
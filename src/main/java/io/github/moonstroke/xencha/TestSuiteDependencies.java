@@ -0,0 +1,165 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import io.github.moonstroke.xencha.model.Batch;
+import io.github.moonstroke.xencha.model.Case;
+import io.github.moonstroke.xencha.model.Source;
+import io.github.moonstroke.xencha.model.TestSuite;
+
+/**
+ * This class determines the files on which the outcome of a test suite depends.
+ */
+public class TestSuiteDependencies {
+
+	private static final String XSL_NAMESPACE_URI = "http://www.w3.org/1999/XSL/Transform";
+
+
+	private TestSuiteDependencies() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Determine the files a test suite depends on: its descriptor, the stylesheet it tests and the modules that this
+	 * stylesheet includes or imports, and the external inputs and expected outputs of its cases and batches.
+	 *
+	 * @param testSuitePath The path to the test suite descriptor
+	 *
+	 * @return The absolute, normalized paths of the dependencies of the suite, starting with the descriptor itself
+	 *
+	 * @throws IOException        if the descriptor, or the input directory of a batch, cannot be read
+	 * @throws XMLStreamException if the descriptor is malformed
+	 */
+	public static Set<Path> of(Path testSuitePath) throws IOException, XMLStreamException {
+		Path descriptorPath = testSuitePath.toAbsolutePath().normalize();
+		Path rootPath = descriptorPath.getParent();
+		Set<Path> dependencies = new LinkedHashSet<>();
+		dependencies.add(descriptorPath);
+		/* Only the paths are needed: an invalid descriptor is reported when it is run */
+		TestSuite testSuite = TestSuiteRunner.readTestSuite(descriptorPath, /* validate: */ false);
+		if (testSuite.getSource().getPath() != null) {
+			dependencies.addAll(ofStylesheet(rootPath.resolve(testSuite.getSource().getPath())));
+		}
+		for (Case c : testSuite.getCases().getCase()) {
+			addExternalSource(dependencies, rootPath, c.getInput());
+			addExternalSource(dependencies, rootPath, c.getExpectedOutput());
+		}
+		for (Batch batch : testSuite.getCases().getBatch()) {
+			addBatchFiles(dependencies, rootPath, batch);
+		}
+		return dependencies;
+	}
+
+	/* The files of the cases of the batch, as listed now: the files added later are not watched */
+	private static void addBatchFiles(Set<Path> dependencies, Path rootPath, Batch batch) throws IOException {
+		Path inputDirectory = rootPath.resolve(batch.getInputDirectory()).normalize();
+		Path expectedOutputDirectory = rootPath.resolve(batch.getExpectedOutputDirectory()).normalize();
+		try (DirectoryStream<Path> inputs = Files.newDirectoryStream(inputDirectory, Files::isRegularFile)) {
+			for (Path input : inputs) {
+				dependencies.add(input);
+				dependencies.add(expectedOutputDirectory.resolve(input.getFileName()));
+			}
+		} catch (NoSuchFileException e) {
+			/* Reported when the suite is run */
+		}
+	}
+
+	private static void addExternalSource(Set<Path> dependencies, Path rootPath, Source source) {
+		if (source.getPath() != null) {
+			dependencies.add(rootPath.resolve(source.getPath()).normalize());
+		}
+	}
+
+	/**
+	 * Determine the modules of a stylesheet: the stylesheet itself, and all the modules that it includes or imports,
+	 * directly or not.
+	 *
+	 * Only the modules referenced by a local path or a {@code file:} URI are followed; missing or unreadable modules
+	 * are listed but not explored.
+	 *
+	 * @param stylesheetPath The path to the principal stylesheet module
+	 *
+	 * @return The absolute, normalized paths of the stylesheet modules, starting with the principal module
+	 */
+	public static Set<Path> ofStylesheet(Path stylesheetPath) {
+		Set<Path> modules = new LinkedHashSet<>();
+		Deque<Path> pending = new ArrayDeque<>();
+		pending.add(stylesheetPath.toAbsolutePath().normalize());
+		while (!pending.isEmpty()) {
+			Path module = pending.poll();
+			if (!modules.add(module)) {
+				continue;
+			}
+			try (InputStream inputStream = Files.newInputStream(module)) {
+				XMLStreamReader reader = TestSuiteRunner.TestSuiteXMLInputFactory.INSTANCE.get()
+				                                                                        .createXMLStreamReader(inputStream);
+				try {
+					addReferencedModules(reader, module, pending);
+				} finally {
+					reader.close();
+				}
+			} catch (IOException | XMLStreamException e) {
+				/* The error, if any, will be reported when compiling the stylesheet */
+			}
+		}
+		return modules;
+	}
+
+	/* Queue the targets of the xsl:include and xsl:import declarations of the module read */
+	private static void addReferencedModules(XMLStreamReader reader, Path module, Deque<Path> pending)
+			throws XMLStreamException {
+		int depth = 0;
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				++depth;
+				/* Declarations are top-level elements, i.e. children of the root */
+				if (depth == 2 && XSL_NAMESPACE_URI.equals(reader.getNamespaceURI())
+				    && (reader.getLocalName().equals("include") || reader.getLocalName().equals("import"))) {
+					String href = reader.getAttributeValue(null, "href");
+					if (href != null) {
+						Path target = resolve(module, href);
+						if (target != null) {
+							pending.add(target);
+						}
+					}
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				--depth;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private static Path resolve(Path module, String href) {
+		try {
+			URI target = module.toUri().resolve(new URI(href));
+			if (!"file".equals(target.getScheme())) {
+				return null;
+			}
+			return Path.of(target).normalize();
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,565 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.SAXException;
+
+import io.github.moonstroke.xencha.model.Batch;
+import io.github.moonstroke.xencha.model.Budget;
+import io.github.moonstroke.xencha.model.Case;
+import io.github.moonstroke.xencha.model.Comparison;
+import io.github.moonstroke.xencha.model.Parameters;
+import io.github.moonstroke.xencha.model.Source;
+import io.github.moonstroke.xencha.model.TestSuite;
+
+/**
+ * This class reads test suite descriptors into their model, in a single streaming pass.
+ *
+ * The inline contents of the descriptor are kept in serialized form, and only parsed when the cases that use them
+ * are run. The descriptor can be validated beforehand against the schema, compiled once for all the descriptors.
+ */
+final class TestSuiteReader {
+
+	private static final String NAMESPACE_URI = "http://moonstroke.github.io/xencha";
+
+	private static final Schema SCHEMA;
+	private static final DatatypeFactory DATATYPE_FACTORY;
+
+	static {
+		try {
+			SCHEMA = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+			                      .newSchema(TestSuiteReader.class.getResource("/test.xsd"));
+			DATATYPE_FACTORY = DatatypeFactory.newInstance();
+		} catch (SAXException | DatatypeConfigurationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/* Validators are not thread-safe: the schema is shared, but each thread gets its own validator */
+	private static final ThreadLocal<Validator> VALIDATOR = ThreadLocal.withInitial(SCHEMA::newValidator);
+
+	private final XMLStreamReader reader;
+	/* The namespace declarations in scope, as pairs of prefix and URI, and the number of pairs at each open element */
+	private final List<String> namespaces = new ArrayList<>();
+	private final List<Integer> namespaceScopes = new ArrayList<>();
+
+
+	private TestSuiteReader(XMLStreamReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Read the test suite descriptor at the given path.
+	 *
+	 * @param path     The path to the descriptor
+	 * @param validate Whether to validate the descriptor against the schema. The structure of the descriptor is
+	 *                 checked regardless
+	 *
+	 * @return The test suite described
+	 *
+	 * @throws IOException        if the descriptor cannot be read
+	 * @throws XMLStreamException if the descriptor is malformed or invalid
+	 */
+	static TestSuite read(Path path, boolean validate) throws IOException, XMLStreamException {
+		/* The file is read once, for both the validation and the parsing */
+		byte[] descriptor = Files.readAllBytes(path);
+		String systemId = path.toUri().toString();
+		if (validate) {
+			try {
+				VALIDATOR.get().validate(new StreamSource(new ByteArrayInputStream(descriptor), systemId));
+			} catch (SAXException e) {
+				throw new XMLStreamException("Invalid descriptor: " + e.getMessage(), e);
+			}
+		}
+		XMLInputFactory inputFactory = TestSuiteRunner.TestSuiteXMLInputFactory.INSTANCE.get();
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(systemId, new ByteArrayInputStream(descriptor));
+		try {
+			return new TestSuiteReader(reader).readDocument();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private TestSuite readDocument() throws XMLStreamException {
+		reader.nextTag();
+		enterElement();
+		if (!"test".equals(elementName())) {
+			throw unexpectedElement();
+		}
+		return readTestSuite();
+	}
+
+	private TestSuite readTestSuite() throws XMLStreamException {
+		TestSuite testSuite = new TestSuite();
+		while (nextChildElement()) {
+			switch (elementName()) {
+			case "name":
+				testSuite.setName(readText());
+				break;
+			case "source":
+				testSuite.setSource(readSource());
+				break;
+			case "comparison":
+				testSuite.setComparison(readComparison());
+				break;
+			case "cases":
+				testSuite.setCases(readCases());
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		requireElement(testSuite.getSource(), "source", "test");
+		requireElement(testSuite.getCases(), "cases", "test");
+		return testSuite;
+	}
+
+	private Source readSource() throws XMLStreamException {
+		String parentName = reader.getLocalName();
+		Source source = new Source();
+		while (nextChildElement()) {
+			if (source.getPath() != null || source.getInline() != null) {
+				throw unexpectedElement();
+			}
+			switch (elementName()) {
+			case "path":
+				source.setPath(readText());
+				break;
+			case "inline":
+				source.setInline(readInline());
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		if (source.getPath() == null && source.getInline() == null) {
+			throw error("Missing element path or inline in " + parentName);
+		}
+		return source;
+	}
+
+	/* Serialize the inline content, to be parsed on first access */
+	private LazyInlineSource readInline() throws XMLStreamException {
+		LazyInlineSource inline = new LazyInlineSource();
+		StringBuilder text = new StringBuilder();
+		while (true) {
+			switch (reader.next()) {
+			case CHARACTERS:
+			case CDATA:
+			case SPACE:
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				break;
+			case START_ELEMENT:
+				if (text.length() > 0) {
+					inline.addText(text.toString());
+					text.setLength(0);
+				}
+				enterElement();
+				inline.addElement(serializeElement());
+				leaveElement();
+				break;
+			case END_ELEMENT:
+				if (text.length() > 0) {
+					inline.addText(text.toString());
+				}
+				leaveElement();
+				return inline;
+			default:
+				/* Comments and processing instructions are not part of the content */
+			}
+		}
+	}
+
+	/* Serialize the current element, declaring on it all the namespaces in scope */
+	private String serializeElement() throws XMLStreamException {
+		StringBuilder markup = new StringBuilder();
+		int depth = 0;
+		while (true) {
+			switch (reader.getEventType()) {
+			case START_ELEMENT:
+				markup.append('<');
+				appendName(markup, reader.getPrefix(), reader.getLocalName());
+				if (depth == 0) {
+					for (Map.Entry<String, String> namespace : namespacesInScope().entrySet()) {
+						appendNamespaceDeclaration(markup, namespace.getKey(), namespace.getValue());
+					}
+				} else {
+					for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+						appendNamespaceDeclaration(markup, reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+					}
+				}
+				for (int i = 0; i < reader.getAttributeCount(); ++i) {
+					markup.append(' ');
+					appendName(markup, reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+					markup.append("=\"");
+					appendEscaped(markup, reader.getAttributeValue(i), true);
+					markup.append('"');
+				}
+				markup.append('>');
+				++depth;
+				break;
+			case END_ELEMENT:
+				markup.append("</");
+				appendName(markup, reader.getPrefix(), reader.getLocalName());
+				markup.append('>');
+				--depth;
+				break;
+			case CHARACTERS:
+			case CDATA:
+			case SPACE:
+				appendEscaped(markup, reader.getText(), false);
+				break;
+			default:
+				/* Comments and processing instructions are not part of the content */
+			}
+			if (depth == 0) {
+				return markup.toString();
+			}
+			reader.next();
+		}
+	}
+
+	private Comparison readComparison() throws XMLStreamException {
+		Comparison comparison = new Comparison();
+		while (nextChildElement()) {
+			switch (elementName()) {
+			case "ignoreWhitespaceNodes":
+				comparison.setIgnoreWhitespaceNodes(readBoolean());
+				break;
+			case "ignoreDifferingNsPrefixes":
+				comparison.setIgnoreDifferingNsPrefixes(readBoolean());
+				break;
+			case "canonical":
+				comparison.setCanonical(readBoolean());
+				break;
+			case "unorderedElements":
+				/* The prefixes are resolved in the scope of the element */
+				for (String name : reader.getElementText().strip().split("\\s+")) {
+					if (!name.isEmpty()) {
+						comparison.getUnorderedElements().add(resolveName(name));
+					}
+				}
+				leaveElement();
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		return comparison;
+	}
+
+	private TestSuite.Cases readCases() throws XMLStreamException {
+		TestSuite.Cases cases = new TestSuite.Cases();
+		while (nextChildElement()) {
+			switch (elementName()) {
+			case "case":
+				if (!cases.getBatch().isEmpty()) {
+					throw unexpectedElement();
+				}
+				cases.getCase().add(readCase());
+				break;
+			case "batch":
+				cases.getBatch().add(readBatch());
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		return cases;
+	}
+
+	private Case readCase() throws XMLStreamException {
+		Case c = new Case();
+		while (nextChildElement()) {
+			switch (elementName()) {
+			case "name":
+				c.setName(readText());
+				break;
+			case "input":
+				c.setInput(readSource());
+				break;
+			case "expectedOutput":
+				c.setExpectedOutput(readSource());
+				break;
+			case "parameters":
+				c.setParameters(readParameters());
+				break;
+			case "budget":
+				c.setBudget(readBudget());
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		requireElement(c.getInput(), "input", "case");
+		requireElement(c.getExpectedOutput(), "expectedOutput", "case");
+		return c;
+	}
+
+	private Batch readBatch() throws XMLStreamException {
+		Batch batch = new Batch();
+		while (nextChildElement()) {
+			switch (elementName()) {
+			case "name":
+				batch.setName(readText());
+				break;
+			case "inputDirectory":
+				batch.setInputDirectory(readText());
+				break;
+			case "expectedOutputDirectory":
+				batch.setExpectedOutputDirectory(readText());
+				break;
+			case "parameters":
+				batch.setParameters(readParameters());
+				break;
+			default:
+				throw unexpectedElement();
+			}
+		}
+		requireElement(batch.getInputDirectory(), "inputDirectory", "batch");
+		requireElement(batch.getExpectedOutputDirectory(), "expectedOutputDirectory", "batch");
+		return batch;
+	}
+
+	private Parameters readParameters() throws XMLStreamException {
+		Parameters parameters = new Parameters();
+		while (nextChildElement()) {
+			if (!"param".equals(elementName())) {
+				throw unexpectedElement();
+			}
+			String name = reader.getAttributeValue(null, "name");
+			if (name == null) {
+				throw error("Missing attribute name in param");
+			}
+			Parameters.Param param = new Parameters.Param();
+			/* As in XSLT, unprefixed parameter names are in no namespace */
+			param.setName(name.indexOf(':') < 0 ? new QName(name.strip()) : resolveName(name.strip()));
+			param.setValue(readText());
+			parameters.getParam().add(param);
+		}
+		return parameters;
+	}
+
+	private Budget readBudget() throws XMLStreamException {
+		Budget budget = new Budget();
+		while (nextChildElement()) {
+			String name = elementName();
+			String value = readText().strip();
+			try {
+				switch (name) {
+				case "maxDuration":
+					budget.setMaxDuration(DATATYPE_FACTORY.newDuration(value));
+					break;
+				case "maxAllocatedBytes":
+					budget.setMaxAllocatedBytes(Long.parseLong(value));
+					break;
+				case "warmUpIterations":
+					budget.setWarmUpIterations(parseInt(value, 0));
+					break;
+				case "iterations":
+					budget.setIterations(parseInt(value, 1));
+					break;
+				default:
+					throw error("Unexpected element " + name);
+				}
+			} catch (IllegalArgumentException e) {
+				throw error("Invalid value of " + name + ": " + value);
+			}
+		}
+		/* The schema cannot require one of the elements of an all group: a budget without limits would always pass */
+		if (budget.getMaxDuration() == null && budget.getMaxAllocatedBytes() == null) {
+			throw error("Missing element maxDuration or maxAllocatedBytes in budget");
+		}
+		return budget;
+	}
+
+	private static int parseInt(String value, int min) {
+		int parsedValue = Integer.parseInt(value);
+		if (parsedValue < min) {
+			throw new IllegalArgumentException();
+		}
+		return parsedValue;
+	}
+
+	private Boolean readBoolean() throws XMLStreamException {
+		String value = readText().strip();
+		switch (value) {
+		case "true":
+		case "1":
+			return Boolean.TRUE;
+		case "false":
+		case "0":
+			return Boolean.FALSE;
+		default:
+			throw error("Invalid boolean: " + value);
+		}
+	}
+
+	/* Read the text content of the current element, and leave it */
+	private String readText() throws XMLStreamException {
+		String text = reader.getElementText();
+		leaveElement();
+		return text;
+	}
+
+	/* Move to the next child element of the current one. Return false, after leaving the current element, if there is
+	 * none */
+	private boolean nextChildElement() throws XMLStreamException {
+		while (true) {
+			switch (reader.next()) {
+			case START_ELEMENT:
+				enterElement();
+				return true;
+			case END_ELEMENT:
+				leaveElement();
+				return false;
+			case CHARACTERS:
+			case CDATA:
+				if (!reader.isWhiteSpace()) {
+					throw error("Unexpected text: " + reader.getText().strip());
+				}
+				break;
+			default:
+				/* Whitespace, comments and processing instructions */
+			}
+		}
+	}
+
+	private void enterElement() {
+		namespaceScopes.add(namespaces.size());
+		for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+			String prefix = reader.getNamespacePrefix(i);
+			String namespaceUri = reader.getNamespaceURI(i);
+			namespaces.add(prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix);
+			namespaces.add(namespaceUri == null ? XMLConstants.NULL_NS_URI : namespaceUri);
+		}
+	}
+
+	private void leaveElement() {
+		int scope = namespaceScopes.remove(namespaceScopes.size() - 1);
+		namespaces.subList(scope, namespaces.size()).clear();
+	}
+
+	/* The namespaces in scope of the current element, by prefix */
+	private Map<String, String> namespacesInScope() {
+		Map<String, String> namespacesInScope = new LinkedHashMap<>();
+		for (int i = 0; i < namespaces.size(); i += 2) {
+			namespacesInScope.put(namespaces.get(i), namespaces.get(i + 1));
+		}
+		/* An undeclared default namespace needs no declaration */
+		namespacesInScope.remove(XMLConstants.DEFAULT_NS_PREFIX, XMLConstants.NULL_NS_URI);
+		return namespacesInScope;
+	}
+
+	private QName resolveName(String name) throws XMLStreamException {
+		int colonIndex = name.indexOf(':');
+		String prefix = colonIndex < 0 ? XMLConstants.DEFAULT_NS_PREFIX : name.substring(0, colonIndex);
+		for (int i = namespaces.size() - 2; i >= 0; i -= 2) {
+			if (namespaces.get(i).equals(prefix)) {
+				return new QName(namespaces.get(i + 1), name.substring(colonIndex + 1), prefix);
+			}
+		}
+		if (!prefix.isEmpty()) {
+			throw error("Undeclared prefix: " + prefix);
+		}
+		return new QName(name);
+	}
+
+	/* The local name of the current element, which must be in the namespace of the descriptors */
+	private String elementName() throws XMLStreamException {
+		if (!NAMESPACE_URI.equals(reader.getNamespaceURI())) {
+			throw unexpectedElement();
+		}
+		return reader.getLocalName();
+	}
+
+	private void requireElement(Object element, String name, String parentName) throws XMLStreamException {
+		if (element == null) {
+			throw error("Missing element " + name + " in " + parentName);
+		}
+	}
+
+	private XMLStreamException unexpectedElement() {
+		return error("Unexpected element " + reader.getName());
+	}
+
+	private XMLStreamException error(String message) {
+		return new XMLStreamException(message, reader.getLocation());
+	}
+
+	private static void appendName(StringBuilder markup, String prefix, String localName) {
+		if (prefix != null && !prefix.isEmpty()) {
+			markup.append(prefix).append(':');
+		}
+		markup.append(localName);
+	}
+
+	private static void appendNamespaceDeclaration(StringBuilder markup, String prefix, String namespaceUri) {
+		markup.append(" xmlns");
+		if (prefix != null && !prefix.isEmpty()) {
+			markup.append(':').append(prefix);
+		}
+		markup.append("=\"");
+		appendEscaped(markup, namespaceUri == null ? XMLConstants.NULL_NS_URI : namespaceUri, true);
+		markup.append('"');
+	}
+
+	private static void appendEscaped(StringBuilder markup, String text, boolean attribute) {
+		for (int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				markup.append("&amp;");
+				break;
+			case '<':
+				markup.append("&lt;");
+				break;
+			case '>':
+				markup.append("&gt;");
+				break;
+			case '\r':
+				/* Would be normalized by the parser */
+				markup.append("&#13;");
+				break;
+			case '"':
+			case '\t':
+			case '\n':
+				if (!attribute) {
+					markup.append(c);
+					break;
+				}
+				markup.append("&#").append((int) c).append(';');
+				break;
+			default:
+				markup.append(c);
+			}
+		}
+	}
+}
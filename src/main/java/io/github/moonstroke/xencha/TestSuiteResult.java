@@ -2,19 +2,24 @@
  * SPDX-License-Identifier: MIT */
 package io.github.moonstroke.xencha;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Objects;
 
 /**
  * This class summarizes the result of the execution of a full test suite (comprising multiple test cases).
+ *
+ * Instances of this class are thread-safe.
  */
 public class TestSuiteResult {
 
 	private final String name;
+	private Path path;
 	private TestStatus status;
 	private String details;
 	private final Collection<TestResult> testResults = new ArrayList<>();
+	private final PhaseTimings timings = new PhaseTimings();
 
 
 	/**
@@ -36,12 +41,30 @@ public class TestSuiteResult {
 		return name;
 	}
 
+	/**
+	 * Assign the path to the descriptor of the test suite.
+	 *
+	 * @param path The path to the test suite descriptor
+	 */
+	public synchronized void setPath(Path path) {
+		this.path = Objects.requireNonNull(path);
+	}
+
+	/**
+	 * Retrieve the path to the descriptor of the test suite.
+	 *
+	 * @return The path to the test suite descriptor, or {@code null} if unspecified
+	 */
+	public synchronized Path getPath() {
+		return path;
+	}
+
 	/**
 	 * Assign the given status to this test suite execution.
 	 *
 	 * @param status The test suite execution status
 	 */
-	public void setStatus(TestStatus status) {
+	public synchronized void setStatus(TestStatus status) {
 		this.status = Objects.requireNonNull(status);
 	}
 
@@ -53,7 +76,7 @@ public class TestSuiteResult {
 	 *
 	 * @return the global status of the suite's execution
 	 */
-	public TestStatus getStatus() {
+	public synchronized TestStatus getStatus() {
 		return status;
 	}
 
@@ -62,7 +85,7 @@ public class TestSuiteResult {
 	 *
 	 * @param status The test suite execution details
 	 */
-	public void setDetails(String details) {
+	public synchronized void setDetails(String details) {
 		this.details = Objects.requireNonNull(details);
 	}
 
@@ -71,7 +94,7 @@ public class TestSuiteResult {
 	 *
 	 * @return the global details of the suite's execution, or {@code null} if unspecified
 	 */
-	public String getDetails() {
+	public synchronized String getDetails() {
 		return details;
 	}
 
@@ -80,8 +103,9 @@ public class TestSuiteResult {
 	 *
 	 * @param testResult The test result to add
 	 */
-	public void addTestResult(TestResult testResult) {
+	public synchronized void addTestResult(TestResult testResult) {
 		testResults.add(testResult);
+		timings.add(testResult.getTimings());
 		/* FAILURE overrides SUCCESS, and ERROR overrides FAILURE */
 		TestStatus testResultStatus = testResult.getStatus();
 		if (testResultStatus == TestStatus.FAILURE && status == TestStatus.SUCCESS
@@ -94,9 +118,29 @@ public class TestSuiteResult {
 	/**
 	 * Retrieve the results of the execution of this suite's test cases.
 	 *
-	 * @return the test case execution results
+	 * @return a snapshot of the test case execution results
+	 */
+	public synchronized Collection<TestResult> getTestResults() {
+		return new ArrayList<>(testResults);
+	}
+
+	/**
+	 * Add the timings of the phases of the suite that are not specific to a test case.
+	 *
+	 * @param timings The timings to add
+	 */
+	public synchronized void addTimings(PhaseTimings timings) {
+		this.timings.add(timings);
+	}
+
+	/**
+	 * Retrieve the time spent and memory allocated in each phase of the execution of this suite.
+	 *
+	 * The timings of the test cases are summed, even if they were run concurrently.
+	 *
+	 * @return a snapshot of the test suite execution timings
 	 */
-	public Collection<TestResult> getTestResults() {
-		return testResults;
+	public synchronized PhaseTimings getTimings() {
+		return new PhaseTimings(timings);
 	}
 }
@@ -2,46 +2,363 @@
  * SPDX-License-Identifier: MIT */
 package io.github.moonstroke.xencha;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
-import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.Duration;
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.SchemaFactory;
 
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import io.github.moonstroke.xencha.model.Budget;
 import io.github.moonstroke.xencha.model.Case;
+import io.github.moonstroke.xencha.model.Comparison;
 import io.github.moonstroke.xencha.model.InlineSource;
+import io.github.moonstroke.xencha.model.Parameters;
 import io.github.moonstroke.xencha.model.TestSuite;
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBElement;
-import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Unmarshaller;
+import net.sf.saxon.Controller;
+import net.sf.saxon.Version;
+import net.sf.saxon.jaxp.SaxonTransformerFactory;
+import net.sf.saxon.jaxp.TemplatesImpl;
+import net.sf.saxon.jaxp.TransformerImpl;
+import net.sf.saxon.lib.ErrorReporter;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmDestination;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+import net.sf.saxon.type.BuiltInAtomicType;
+import net.sf.saxon.value.StringValue;
 
 /**
  * This class handles the execution of a single test suite.
+ *
+ * Once configured, instances can be shared between threads.
  */
 public class TestSuiteRunner {
 
-	private final OutputComparator outputComparator = new OutputComparator(/* ignoreWhitespaceNodes: */ false,
-	                                                                       /* ignoreDifferingNsPrefixes: */ false);
+	/* The numbers of runs of the transformations of the cases with a budget, when unspecified in the descriptor */
+	private static final int DEFAULT_WARM_UP_ITERATIONS = 2;
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	/* The number of cases submitted to the case executor ahead of the collection of their results, so that the cases
+	 * of the batches are not all expanded at once */
+	private static final int MAX_PENDING_CASES = 64;
+
+	/* The comparators of the suites whose descriptor specifies no comparison options */
+	private OutputComparator outputComparator = new OutputComparator(/* ignoreWhitespaceNodes: */ false,
+	                                                                 /* ignoreDifferingNsPrefixes: */ false);
+	private final StreamingOutputComparator streamingOutputComparator =
+			new StreamingOutputComparator(/* ignoreWhitespaceNodes: */ false, /* ignoreDifferingNsPrefixes: */ false);
+	private final XdmOutputComparator xdmOutputComparator =
+			new XdmOutputComparator(/* ignoreWhitespaceNodes: */ false, /* ignoreDifferingNsPrefixes: */ false);
+	private final StylesheetCache stylesheetCache;
+	private ExecutorService caseExecutor;
+	private boolean streamingComparison;
+	private boolean parallelComparison;
+	private Engine engine = Engine.JAXP;
+	private ResultCache resultCache;
+	private DocumentPool documentPool;
+	private boolean descriptorValidation = true;
+	private DigestOutputComparator digestOutputComparator;
+	private int benchmarkWarmUpIterations;
+	private int benchmarkIterations;
+	private DiagnosticsLevel diagnosticsLevel = DiagnosticsLevel.ON_FAILURE;
+	private boolean failFast;
+	private StylesheetProfiler profiler;
+	/* Set on the first failure or error in fail-fast mode */
+	private volatile boolean stopped;
+	private final FailureDiagnostics failureDiagnostics = new FailureDiagnostics(TestSuiteTransformerFactory.INSTANCE);
+	private final List<TestListener> listeners = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * Construct a test suite runner with its own stylesheet cache.
+	 */
+	public TestSuiteRunner() {
+		this(newStylesheetCache(StylesheetCache.DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Construct a test suite runner that retrieves the compiled stylesheets from the given cache.
+	 *
+	 * @param stylesheetCache The cache of compiled stylesheets, possibly shared with other runners
+	 */
+	public TestSuiteRunner(StylesheetCache stylesheetCache) {
+		this.stylesheetCache = Objects.requireNonNull(stylesheetCache);
+	}
+
+	/**
+	 * Create a cache for the stylesheets compiled by test suite runners.
+	 *
+	 * @param capacity The maximum number of compiled stylesheets to retain
+	 *
+	 * @return A new, empty stylesheet cache
+	 */
+	public static StylesheetCache newStylesheetCache(int capacity) {
+		return newStylesheetCache(capacity, /* instrumented: */ false);
+	}
+
+	/**
+	 * Create a cache for the stylesheets compiled by test suite runners, possibly with the instrumentation that their
+	 * profiling requires.
+	 *
+	 * @param capacity     The maximum number of compiled stylesheets to retain
+	 * @param instrumented Whether to compile the stylesheets so that their templates and functions can be profiled
+	 *
+	 * @return A new, empty stylesheet cache
+	 *
+	 * @see #setProfiler(StylesheetProfiler)
+	 */
+	public static StylesheetCache newStylesheetCache(int capacity, boolean instrumented) {
+		TransformerFactory transformerFactory = TestSuiteTransformerFactory.INSTANCE;
+		if (instrumented) {
+			/* Sharing the configuration of the factory ensures that the trees share its name pool */
+			transformerFactory = StylesheetProfiler.newInstrumentingTransformerFactory(
+					((SaxonTransformerFactory) transformerFactory).getConfiguration());
+		}
+		return new StylesheetCache(transformerFactory, capacity);
+	}
+
+	/**
+	 * Set the executor used to run the cases of each suite concurrently.
+	 *
+	 * The results of the cases are still reported in the order of their declaration in the descriptor.
+	 *
+	 * @param caseExecutor The executor that runs the test cases, or {@code null} to run them sequentially in the
+	 *                     calling thread (the default)
+	 */
+	public void setCaseExecutor(ExecutorService caseExecutor) {
+		this.caseExecutor = caseExecutor;
+	}
+
+	/**
+	 * Set whether to compare the outputs as streams of events rather than as trees.
+	 *
+	 * In streaming mode, the external inputs are given to the stylesheet without being parsed beforehand, and the
+	 * output of the transformation is compared on the fly against the expected output, when the latter is external:
+	 * neither tree is built in memory and the transformation is stopped at the first difference. Inline expected
+	 * outputs are already in memory and are still compared as trees.
+	 *
+	 * @param streamingComparison {@code true} to compare the outputs in streaming mode, {@code false} (the default)
+	 *                            to compare them as DOM trees
+	 */
+	public void setStreamingComparison(boolean streamingComparison) {
+		this.streamingComparison = streamingComparison;
+	}
+
+	/**
+	 * Set whether to compare the children of the elements that have many in parallel, when the outputs are compared
+	 * as DOM trees.
+	 *
+	 * @param parallelComparison {@code true} to compare the large trees in parallel, {@code false} (the default) to
+	 *                           compare them in the thread of the case
+	 *
+	 * @see OutputComparator#OutputComparator(boolean, boolean, boolean, Set, boolean)
+	 */
+	public void setParallelComparison(boolean parallelComparison) {
+		this.parallelComparison = parallelComparison;
+		outputComparator = new OutputComparator(/* ignoreWhitespaceNodes: */ false,
+		                                        /* ignoreDifferingNsPrefixes: */ false, /* canonical: */ false,
+		                                        Collections.emptySet(), parallelComparison);
+	}
+
+	/**
+	 * Set the engine used to execute the test cases.
+	 *
+	 * The streaming comparison mode only applies to the {@link Engine#JAXP JAXP} engine.
+	 *
+	 * @param engine The test case execution engine ({@link Engine#JAXP JAXP} by default)
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = Objects.requireNonNull(engine);
+	}
+
+	/**
+	 * Set the cache in which to look up the results of the test cases before running them.
+	 *
+	 * @param resultCache The persistent cache of test results, or {@code null} to run every case (the default)
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Set the comparator with which to compare the outputs through their structural digests.
+	 *
+	 * In this mode, the digest of the output of the transformation is computed while it is built, and compared to the
+	 * digest of the expected output. The expected output is only built, and the outputs compared in detail, when the
+	 * digests differ. This mode only applies to the {@link Engine#JAXP JAXP} engine, and does not apply to the cases
+	 * compared in streaming mode.
+	 *
+	 * @param digestOutputComparator The digest comparator, possibly shared with other runners so that the digests of
+	 *                               the expected outputs are only computed once; or {@code null} to compare the
+	 *                               outputs as DOM trees (the default)
+	 */
+	public void setDigestOutputComparator(DigestOutputComparator digestOutputComparator) {
+		this.digestOutputComparator = digestOutputComparator;
+	}
+
+	/**
+	 * Set the numbers of runs of the transformations of the cases in benchmark mode.
+	 *
+	 * In benchmark mode, the transformation of each successful case is run again the given numbers of times, on its
+	 * input parsed once, and the statistics of the measured runs are given in its result. The result cache is not
+	 * used in this mode.
+	 *
+	 * @param warmUpIterations The number of unmeasured runs, that precede the measured ones
+	 * @param iterations       The number of measured runs, or 0 to disable the benchmark mode (the default)
+	 *
+	 * @throws IllegalArgumentException if a given number is negative
+	 */
+	public void setBenchmarkIterations(int warmUpIterations, int iterations) {
+		if (warmUpIterations < 0 || iterations < 0) {
+			throw new IllegalArgumentException("Invalid number of iterations: " + warmUpIterations + ", "
+			                                   + iterations);
+		}
+		this.benchmarkWarmUpIterations = warmUpIterations;
+		this.benchmarkIterations = iterations;
+	}
+
+	/**
+	 * Set the level of the diagnostics attached to the results of the cases.
+	 *
+	 * The diagnostics are only produced for the outputs compared as trees by the {@link Engine#JAXP JAXP} engine: in
+	 * streaming mode, the details of the failures describe the first difference.
+	 *
+	 * @param diagnosticsLevel The diagnostics level ({@link DiagnosticsLevel#ON_FAILURE ON_FAILURE} by default)
+	 */
+	public void setDiagnosticsLevel(DiagnosticsLevel diagnosticsLevel) {
+		this.diagnosticsLevel = Objects.requireNonNull(diagnosticsLevel);
+	}
+
+	/**
+	 * Set whether to stop at the first failure or error.
+	 *
+	 * In fail-fast mode, once a case or a suite fails, the cases not started yet of the current suites are not run,
+	 * and {@link #isStopped()} tells the caller not to run more suites.
+	 *
+	 * @param failFast {@code true} to stop at the first failure, {@code false} (the default) to run all the cases
+	 */
+	public void setFailFast(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Set the profiler that measures the transformations of the cases.
+	 *
+	 * Only the stylesheets compiled by an instrumented cache are profiled. The result cache is not used while
+	 * profiling, and the durations measured for the budgets and benchmarks are those of the profiled transformations.
+	 *
+	 * @param profiler The profiler, possibly shared with other runners, or {@code null} not to profile the
+	 *                 transformations (the default)
+	 *
+	 * @see #newStylesheetCache(int, boolean)
+	 */
+	public void setProfiler(StylesheetProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Tell whether a failure has stopped the run, in fail-fast mode.
+	 *
+	 * @return {@code true} if a case or a suite has failed in fail-fast mode
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Register a listener to notify of the results of the suites and of their cases.
+	 *
+	 * @param listener The listener to add
+	 */
+	public void addListener(TestListener listener) {
+		listeners.add(Objects.requireNonNull(listener));
+	}
+
+	/**
+	 * Create a pool for the documents parsed by test suite runners.
+	 *
+	 * @param budget The maximum estimated size in memory of the documents to retain, in bytes
+	 *
+	 * @return A new, empty document pool
+	 */
+	public static DocumentPool newDocumentPool(long budget) {
+		return new DocumentPool(TestSuiteTransformerFactory.PROCESSOR, budget);
+	}
+
+	/**
+	 * Set the pool from which to retrieve the parsed external inputs and expected outputs of the cases.
+	 *
+	 * @param documentPool The pool of parsed documents, possibly shared with other runners, or {@code null} to parse
+	 *                     the files of each case (the default)
+	 */
+	public void setDocumentPool(DocumentPool documentPool) {
+		this.documentPool = documentPool;
+	}
+
+	/**
+	 * Enable or disable the validation of the test suite descriptors against their schema.
+	 *
+	 * The structure of the descriptors is checked regardless, but not the values of their elements.
+	 *
+	 * @param descriptorValidation {@code false} to skip the validation, {@code true} (the default) to validate the
+	 *                             descriptors
+	 */
+	public void setDescriptorValidation(boolean descriptorValidation) {
+		this.descriptorValidation = descriptorValidation;
+	}
 
 	/**
 	 * Run the test suite described inthe file of given path.
@@ -51,52 +368,105 @@ public class TestSuiteRunner {
 	 * @return The result if the execution of the test suite
 	 */
 	public TestSuiteResult runSuite(Path testSuitePath) {
+		for (TestListener listener : listeners) {
+			listener.testSuiteStarted(testSuitePath);
+		}
+		TestSuiteResult result = executeTestSuite(testSuitePath);
+		result.setPath(testSuitePath);
+		if (failFast && result.getStatus() != TestStatus.SUCCESS) {
+			stopped = true;
+		}
+		for (TestListener listener : listeners) {
+			listener.testSuiteFinished(result);
+		}
+		return result;
+	}
+
+	private TestSuiteResult executeTestSuite(Path testSuitePath) {
+		PhaseTimings descriptorTimings = new PhaseTimings();
+		PhaseTimer timer = new PhaseTimer(descriptorTimings, testSuitePath.toString(), null);
 		TestSuite testSuite;
 		try {
-			testSuite = parseTestSuiteFromPath(testSuitePath, TestSuiteUnmarshaller.INSTANCE);
-		} catch (IOException | JAXBException e) {
+			testSuite = readTestSuite(testSuitePath, descriptorValidation);
+		} catch (IOException | XMLStreamException e) {
+			timer.lap(Phase.DESCRIPTOR_PARSING);
 			TestSuiteResult errorResult = new TestSuiteResult(testSuitePath.toString());
+			errorResult.addTimings(descriptorTimings);
 			errorResult.setStatus(TestStatus.ERROR);
 			errorResult.setDetails(e.toString());
 			return errorResult;
 		}
-		return runTestSuite(testSuitePath.getParent(), testSuite);
+		timer.lap(Phase.DESCRIPTOR_PARSING);
+		return runTestSuite(testSuitePath.toAbsolutePath().getParent(), testSuite, descriptorTimings);
 	}
 
-	private TestSuite parseTestSuiteFromPath(Path path, Unmarshaller unmarshaller) throws IOException, JAXBException {
-		try (InputStream inputStream = Files.newInputStream(path)) {
-			@SuppressWarnings("unchecked")
-			JAXBElement<TestSuite> root = (JAXBElement<TestSuite>) unmarshaller.unmarshal(inputStream);
-			return root.getValue();
-		}
+	/* Parse, and optionally validate, the test suite descriptor of given path */
+	static TestSuite readTestSuite(Path path, boolean validate) throws IOException, XMLStreamException {
+		return TestSuiteReader.read(path, validate);
 	}
 
-	private TestSuiteResult runTestSuite(Path rootPath, TestSuite testSuite) {
-		TestSuiteResult result = new TestSuiteResult(testSuite.getName());
+	private TestSuiteResult runTestSuite(Path rootPath, TestSuite testSuite, PhaseTimings descriptorTimings) {
+		String testSuiteName = testSuite.getName();
+		TestSuiteResult result = new TestSuiteResult(testSuiteName);
+		result.addTimings(descriptorTimings);
+		SuiteStylesheet testStylesheet = new SuiteStylesheet(rootPath, testSuite.getSource(), testSuiteName);
 		try {
-			Source testSource = getTestSource(rootPath, testSuite.getSource());
-			Transformer sourceStylesheet = TestSuiteTransformerFactory.INSTANCE.newTransformer(testSource);
-			for (Case c : testSuite.getCases().getCase()) {
-				TestResult caseResult = runTestCase(rootPath, sourceStylesheet, c);
-				result.addTestResult(caseResult);
+			OutputComparators comparators = getOutputComparators(testSuite.getComparison());
+			byte[] testSuiteDigest = resultCache == null ? null : digestTestSuite(rootPath, testSuite);
+			try (BatchCases batchCases = new BatchCases(rootPath, testSuite.getCases().getBatch())) {
+				/* The cases of the batches are expanded as they are run */
+				Iterator<Case> cases = testSuite.getCases().getCase().iterator();
+				if (caseExecutor == null) {
+					while (!stopped && !testStylesheet.hasFailed()
+					       && (cases.hasNext() || (cases = batchCases).hasNext())) {
+						addTestResult(result, runTestCase(testSuiteName, rootPath, testStylesheet, comparators,
+						                                  testSuiteDigest, cases.next()));
+					}
+				} else {
+					Deque<Future<TestResult>> caseResults = new ArrayDeque<>();
+					while (!stopped && !testStylesheet.hasFailed()
+					       && (cases.hasNext() || (cases = batchCases).hasNext())) {
+						Case c = cases.next();
+						if (caseResults.size() == MAX_PENDING_CASES) {
+							addTestResult(result, TestRunner.getResult(caseResults.poll()));
+						}
+						caseResults.add(caseExecutor.submit(() -> runTestCase(testSuiteName, rootPath, testStylesheet,
+						                                                      comparators, testSuiteDigest, c)));
+					}
+					for (Future<TestResult> caseResult : caseResults) {
+						addTestResult(result, TestRunner.getResult(caseResult));
+					}
+				}
 			}
-		} catch (IOException | IllegalStateException | TransformerConfigurationException e) {
+		} catch (IOException | IllegalStateException | TransformerException e) {
 			result.setStatus(TestStatus.ERROR);
 			result.setDetails(e.toString());
-			return result;
+		} finally {
+			result.addTimings(testStylesheet.getTimings());
+		}
+		Exception compilationError = testStylesheet.getError();
+		if (compilationError != null) {
+			result.setStatus(TestStatus.ERROR);
+			result.setDetails(compilationError.toString());
 		}
 		return result;
 	}
 
-	private Source getTestSource(Path rootPath, io.github.moonstroke.xencha.model.Source testSource) throws IOException {
-		Source src;
+	/* The cases that could not run for want of a stylesheet have no result */
+	private static void addTestResult(TestSuiteResult result, TestResult testResult) {
+		if (testResult != null) {
+			result.addTestResult(testResult);
+		}
+	}
+
+	private Templates getTestStylesheet(Path rootPath, io.github.moonstroke.xencha.model.Source testSource)
+			throws IOException, TransformerConfigurationException {
 		if (testSource.getPath() == null) {
 			/* Node.getOwnerDocument conveniently returns a standalone document object, not the descriptor's */
-			src = new DOMSource(getInlineXslRoot(testSource.getInline()).getOwnerDocument());
-		} else {
-			src = new StreamSource(Files.newInputStream(rootPath.resolve(testSource.getPath())));
+			Source src = new DOMSource(getInlineXslRoot(testSource.getInline()).getOwnerDocument());
+			return stylesheetCache.getTransformerFactory().newTemplates(src);
 		}
-		return src;
+		return stylesheetCache.getTemplates(rootPath.resolve(testSource.getPath()));
 	}
 
 	/* Retrieve the root element of the inline source and ensure that it is a valid XSL root element (stylesheet or
@@ -128,93 +498,704 @@ public class TestSuiteRunner {
 		return rootElement;
 	}
 
-	private TestResult runTestCase(Path rootPath, Transformer sourceStylesheet, Case c) {
+	/* Configure the comparators of the outputs of a suite after the options of its descriptor */
+	private OutputComparators getOutputComparators(Comparison comparison) {
+		if (comparison == null) {
+			return new OutputComparators(outputComparator, streamingOutputComparator, xdmOutputComparator,
+			                             digestOutputComparator);
+		}
+		boolean ignoreWhitespaceNodes = Boolean.TRUE.equals(comparison.isIgnoreWhitespaceNodes());
+		boolean ignoreDifferingNsPrefixes = Boolean.TRUE.equals(comparison.isIgnoreDifferingNsPrefixes());
+		Set<QName> unorderedElements = comparison.getUnorderedElements().isEmpty()
+		                               ? Collections.emptySet() : new HashSet<>(comparison.getUnorderedElements());
+		OutputComparator treeComparator = new OutputComparator(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes,
+		                                                       Boolean.TRUE.equals(comparison.isCanonical()),
+		                                                       unorderedElements, parallelComparison);
+		if (!unorderedElements.isEmpty()) {
+			/* Only the comparison of DOM trees matches the children of unordered elements */
+			return new OutputComparators(treeComparator, null, null, null);
+		}
+		DigestOutputComparator digestComparator = digestOutputComparator;
+		if (digestComparator != null && (ignoreWhitespaceNodes || ignoreDifferingNsPrefixes)) {
+			/* The digests of the shared comparator are computed with the default options */
+			digestComparator = new DigestOutputComparator(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes,
+			                                              digestComparator.getDigestDirectory());
+		}
+		return new OutputComparators(treeComparator,
+		                             new StreamingOutputComparator(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes),
+		                             new XdmOutputComparator(ignoreWhitespaceNodes, ignoreDifferingNsPrefixes),
+		                             digestComparator);
+	}
+
+	/* Digest the settings of the run and the stylesheet of the suite, as the common part of the cache keys of its
+	 * cases */
+	private byte[] digestTestSuite(Path rootPath, TestSuite testSuite) throws IOException, TransformerException {
+		MessageDigest digest = StylesheetCache.newDigest();
+		digestString(digest, Version.getProductVersion());
+		digestString(digest, engine.name());
+		digestString(digest, Boolean.toString(streamingComparison));
+		digestString(digest, Boolean.toString(digestOutputComparator != null));
+		Comparison comparison = testSuite.getComparison();
+		if (comparison != null) {
+			digestString(digest, String.valueOf(comparison.isIgnoreWhitespaceNodes()));
+			digestString(digest, String.valueOf(comparison.isIgnoreDifferingNsPrefixes()));
+			digestString(digest, String.valueOf(comparison.isCanonical()));
+			for (QName unorderedElement : comparison.getUnorderedElements()) {
+				digestString(digest, unorderedElement.toString());
+			}
+		}
+		io.github.moonstroke.xencha.model.Source testSource = testSuite.getSource();
+		if (testSource.getPath() == null) {
+			digestSource(digest, rootPath, testSource);
+		} else {
+			for (Path module : TestSuiteDependencies.ofStylesheet(rootPath.resolve(testSource.getPath()))) {
+				digestString(digest, module.toString());
+				digestFile(digest, module);
+			}
+		}
+		return digest.digest();
+	}
+
+	private byte[] digestTestCase(byte[] testSuiteDigest, Path rootPath, Case c)
+			throws IOException, TransformerException {
+		MessageDigest digest = StylesheetCache.newDigest();
+		digest.update(testSuiteDigest);
+		digestSource(digest, rootPath, c.getInput());
+		digestSource(digest, rootPath, c.getExpectedOutput());
+		if (c.getParameters() != null) {
+			for (Parameters.Param param : c.getParameters().getParam()) {
+				digestString(digest, param.getName().toString());
+				digestString(digest, param.getValue());
+			}
+		}
+		return digest.digest();
+	}
+
+	private static void digestSource(MessageDigest digest, Path rootPath, io.github.moonstroke.xencha.model.Source source)
+			throws IOException, TransformerException {
+		if (source.getPath() == null) {
+			digestString(digest, "inline");
+			if (source.getInline() instanceof LazyInlineSource) {
+				/* Digest the inline content as written in the descriptor, without parsing it */
+				digestString(digest, ((LazyInlineSource) source.getInline()).getMarkup());
+				return;
+			}
+			Element root = getInlineRoot(source);
+			if (root != null) {
+				/* Inline contents are digested in serialized form */
+				try (OutputStream digestStream = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+					TestSuiteTransformerFactory.INSTANCE.newTransformer().transform(new DOMSource(root),
+					                                                                new StreamResult(digestStream));
+				}
+			}
+		} else {
+			digestString(digest, "path");
+			byte[] content = BatchCases.getContent(source);
+			if (content == null) {
+				digestFile(digest, rootPath.resolve(source.getPath()));
+			} else {
+				digest.update(ByteBuffer.allocate(Long.BYTES).putLong(content.length).array());
+				digest.update(content);
+			}
+		}
+	}
+
+	/* Strings are prefixed with their length, so that consecutive values cannot collide */
+	private static void digestString(MessageDigest digest, String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	private static void digestFile(MessageDigest digest, Path path) throws IOException {
+		digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Files.size(path)).array());
+		try (InputStream inputStream = new DigestInputStream(Files.newInputStream(path), digest)) {
+			inputStream.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	/* Return null if the case cannot run because the stylesheet of its suite cannot be compiled */
+	private TestResult runTestCase(String testSuiteName, Path rootPath, SuiteStylesheet suiteStylesheet,
+	                               OutputComparators comparators, byte[] testSuiteDigest, Case c) {
+		byte[] cacheKey = null;
+		/* The cases with a budget, in benchmark mode or profiled are always run, as their measures depend on the
+		 * machine; the outputs of the successful cases are only known by running them */
+		if (resultCache != null && c.getBudget() == null && benchmarkIterations == 0 && profiler == null
+		    && diagnosticsLevel != DiagnosticsLevel.ALWAYS) {
+			try {
+				cacheKey = digestTestCase(testSuiteDigest, rootPath, c);
+				TestResult cachedResult = resultCache.get(c.getName(), cacheKey);
+				if (cachedResult != null) {
+					fireTestCaseFinished(testSuiteName, cachedResult);
+					return cachedResult;
+				}
+			} catch (IOException | TransformerException | RuntimeException e) {
+				/* Let the execution of the case report the error */
+				cacheKey = null;
+			}
+		}
+		Templates testStylesheet = suiteStylesheet.get();
+		if (testStylesheet == null) {
+			return null;
+		}
+		TestResult result = executeTestCase(testSuiteName, rootPath, testStylesheet, comparators, c);
+		if (c.getBudget() != null && result.getStatus() == TestStatus.SUCCESS) {
+			result = checkBudget(testSuiteName, rootPath, testStylesheet, c, result);
+		}
+		if (benchmarkIterations > 0 && result.getStatus() == TestStatus.SUCCESS) {
+			result = benchmark(testSuiteName, rootPath, testStylesheet, c, result);
+		}
+		if (cacheKey != null) {
+			resultCache.put(cacheKey, result);
+		}
+		fireTestCaseFinished(testSuiteName, result);
+		return result;
+	}
+
+	private void fireTestCaseFinished(String testSuiteName, TestResult result) {
+		if (failFast && result.getStatus() != TestStatus.SUCCESS) {
+			stopped = true;
+		}
+		for (TestListener listener : listeners) {
+			listener.testCaseFinished(testSuiteName, result);
+		}
+	}
+
+	/* Run the transformation of the successful case repeatedly, and compare the medians of its measures against the
+	 * budget of the case */
+	private TestResult checkBudget(String testSuiteName, Path rootPath, Templates testStylesheet, Case c,
+	                               TestResult result) {
+		Budget budget = c.getBudget();
+		int warmUpIterations = budget.getWarmUpIterations() == null ? DEFAULT_WARM_UP_ITERATIONS
+		                                                            : budget.getWarmUpIterations();
+		int iterations = budget.getIterations() == null ? DEFAULT_ITERATIONS : budget.getIterations();
+		/* The runs are accounted in the timings of the case */
+		PhaseTimings timings = new PhaseTimings(result.getTimings());
+		BenchmarkStatistics statistics;
+		try {
+			statistics = measureTransformation(testSuiteName, rootPath, testStylesheet, c, warmUpIterations,
+			                                   iterations, timings);
+		} catch (RuntimeException | IOException | SAXException | TransformerException | SaxonApiException e) {
+			return new TestResult(c.getName(), TestStatus.ERROR, e.toString(), timings);
+		}
+		List<String> exceededLimits = new ArrayList<>();
+		long medianDuration = statistics.getP50Duration();
+		if (budget.getMaxDuration() != null && medianDuration > toNanos(budget.getMaxDuration())) {
+			exceededLimits.add(String.format(Locale.ROOT, "median duration of %.3f ms for a maximum of %s",
+			                                 medianDuration / 1e6, budget.getMaxDuration()));
+		}
+		long medianAllocatedBytes = statistics.getMedianAllocatedBytes();
+		if (budget.getMaxAllocatedBytes() != null && medianAllocatedBytes > budget.getMaxAllocatedBytes()) {
+			exceededLimits.add("median allocation of " + medianAllocatedBytes + " bytes for a maximum of "
+			                   + budget.getMaxAllocatedBytes());
+		}
+		if (exceededLimits.isEmpty()) {
+			return new TestResult(c.getName(), TestStatus.SUCCESS, null, timings, null, result.getDiagnostics());
+		}
+		return new TestResult(c.getName(), TestStatus.FAILURE,
+		                      "The transformation exceeds its budget: " + String.join(", ", exceededLimits) + " ("
+		                      + iterations + " iterations)",
+		                      timings);
+	}
+
+	/* Run the transformation of the successful case repeatedly, and attach the statistics of its measures to the
+	 * result */
+	private TestResult benchmark(String testSuiteName, Path rootPath, Templates testStylesheet, Case c,
+	                             TestResult result) {
+		PhaseTimings timings = new PhaseTimings(result.getTimings());
+		try {
+			BenchmarkStatistics statistics = measureTransformation(testSuiteName, rootPath, testStylesheet, c,
+			                                                       benchmarkWarmUpIterations, benchmarkIterations,
+			                                                       timings);
+			return new TestResult(c.getName(), result.getStatus(), result.getDetails(), timings, statistics,
+			                      result.getDiagnostics());
+		} catch (RuntimeException | IOException | SAXException | TransformerException | SaxonApiException e) {
+			return new TestResult(c.getName(), TestStatus.ERROR, e.toString(), timings);
+		}
+	}
+
+	/* Run the transformation of the case the given numbers of times, on the input parsed once. The runs are accounted
+	 * in the given timings */
+	private BenchmarkStatistics measureTransformation(String testSuiteName, Path rootPath, Templates testStylesheet,
+	                                                 Case c, int warmUpIterations, int iterations,
+	                                                 PhaseTimings timings)
+			throws IOException, SAXException, TransformerException, SaxonApiException {
+		long[] durations = new long[iterations];
+		long[] allocatedBytes = new long[iterations];
+		Transformation transformation = prepareTransformation(rootPath, testStylesheet, c);
+		for (int i = 0; i < warmUpIterations + iterations; ++i) {
+			PhaseTimings iterationTimings = new PhaseTimings();
+			PhaseTimer timer = new PhaseTimer(iterationTimings, testSuiteName, c.getName());
+			transformation.run();
+			timer.lap(Phase.TRANSFORMATION);
+			timings.add(iterationTimings);
+			if (i >= warmUpIterations) {
+				durations[i - warmUpIterations] = iterationTimings.getDuration(Phase.TRANSFORMATION);
+				allocatedBytes[i - warmUpIterations] = iterationTimings.getAllocatedBytes(Phase.TRANSFORMATION);
+			}
+		}
+		return BenchmarkStatistics.of(durations, allocatedBytes);
+	}
+
+	/* The comparators of the outputs of a suite. Those that do not support its options are null */
+	private static final class OutputComparators {
+
+		final OutputComparator tree;
+		final StreamingOutputComparator streaming;
+		final XdmOutputComparator xdm;
+		final DigestOutputComparator digest;
+
+
+		OutputComparators(OutputComparator tree, StreamingOutputComparator streaming, XdmOutputComparator xdm,
+		                  DigestOutputComparator digest) {
+			this.tree = tree;
+			this.streaming = streaming;
+			this.xdm = xdm;
+			this.digest = digest;
+		}
+	}
+
+	/* The stylesheet of a suite, compiled for the first case that is not taken from the result cache */
+	private final class SuiteStylesheet {
+
+		private final Path rootPath;
+		private final io.github.moonstroke.xencha.model.Source source;
+		private final String testSuiteName;
+		private final PhaseTimings timings = new PhaseTimings();
+		private Templates templates;
+		private volatile Exception error;
+
+
+		SuiteStylesheet(Path rootPath, io.github.moonstroke.xencha.model.Source source, String testSuiteName) {
+			this.rootPath = rootPath;
+			this.source = source;
+			this.testSuiteName = testSuiteName;
+		}
+
+		/* Return null if the stylesheet cannot be compiled */
+		synchronized Templates get() {
+			if (templates == null && error == null) {
+				PhaseTimer timer = new PhaseTimer(timings, testSuiteName, null);
+				try {
+					templates = getTestStylesheet(rootPath, source);
+				} catch (IOException | IllegalStateException | TransformerConfigurationException e) {
+					error = e;
+				} finally {
+					timer.lap(Phase.STYLESHEET_COMPILATION);
+				}
+			}
+			return templates;
+		}
+
+		boolean hasFailed() {
+			return error != null;
+		}
+
+		Exception getError() {
+			return error;
+		}
+
+		synchronized PhaseTimings getTimings() {
+			return new PhaseTimings(timings);
+		}
+	}
+
+	/* A transformation of the input of a case, that can be run repeatedly */
+	private interface Transformation {
+
+		void run() throws TransformerException, SaxonApiException;
+	}
+
+	/* Parse the input of the case once, for the repeated runs of its transformation */
+	private Transformation prepareTransformation(Path rootPath, Templates testStylesheet, Case c)
+			throws IOException, SAXException, SaxonApiException {
+		if (engine == Engine.SAXON) {
+			XdmNode input = buildNode(rootPath, c.getInput());
+			return () -> {
+				XsltTransformer transformer = loadTransformer(testStylesheet, c);
+				transformer.setInitialContextNode(input);
+				transformer.setDestination(new XdmDestination());
+				transformer.transform();
+			};
+		}
+		Source input = getParsedInputSource(rootPath, c.getInput());
+		return () -> transform(newTransformer(testStylesheet, c), input);
+	}
+
+	/* Duration.getTimeInMillis would lose the fractions of milliseconds */
+	private static long toNanos(Duration duration) {
+		BigDecimal seconds = (BigDecimal) duration.getField(DatatypeConstants.SECONDS);
+		if (seconds == null) {
+			seconds = BigDecimal.ZERO;
+		}
+		long wholeSeconds = ((duration.getDays() * 24L + duration.getHours()) * 60 + duration.getMinutes()) * 60;
+		return duration.getSign() * seconds.add(BigDecimal.valueOf(wholeSeconds)).movePointRight(9).longValue();
+	}
+
+	/* Transformers are not thread-safe: each case gets its own, from the stylesheet compiled once for the suite */
+	private TestResult executeTestCase(String testSuiteName, Path rootPath, Templates testStylesheet,
+	                                   OutputComparators comparators, Case c) {
 		TestStatus status = TestStatus.SUCCESS;
 		String details = null;
+		String diagnostics = null;
+		PhaseTimings timings = new PhaseTimings();
 		try {
-			System.err.println("DEBUG running case " + c.getName());
-			Source input = getSource(rootPath, c.getInput());
-			Result target = transform(sourceStylesheet, input);
-			System.err.println("DEBUG transformation result:");
-			TestSuiteTransformerFactory.INSTANCE.newTransformer().transform(new DOMSource(((DOMResult) target).getNode()), new StreamResult(System.err));
-			Source expectedOutput = getSource(rootPath, c.getExpectedOutput());
-			System.err.println("DEBUG transformation expected result:");
-			TestSuiteTransformerFactory.INSTANCE.newTransformer().transform(expectedOutput, new StreamResult(System.err));
-			if (!outputComparator.areEqual(expectedOutput, target)) {
-				status = TestStatus.FAILURE;
-				details = "The output of the test differs from the expected output";
-			}
-		} catch (RuntimeException | IOException | SAXException | TransformerException e) {
+			PhaseTimer timer = new PhaseTimer(timings, testSuiteName, c.getName());
+			if (engine == Engine.SAXON) {
+				if (comparators.xdm == null) {
+					throw new IllegalStateException("Unordered elements are not supported by the SAXON engine");
+				}
+				if (!transformAndCompare(timer, testStylesheet, comparators.xdm, rootPath, c)) {
+					status = TestStatus.FAILURE;
+					details = "The output of the test differs from the expected output";
+				}
+			} else if (streamingComparison && comparators.streaming != null
+			           && c.getExpectedOutput().getPath() != null) {
+				Source input = getInputSource(rootPath, c.getInput());
+				timer.lap(Phase.DOCUMENT_PARSING);
+				String mismatch = transformAndCompare(newTransformer(testStylesheet, c), comparators.streaming, input,
+				                                      rootPath, c.getExpectedOutput());
+				timer.lap(Phase.TRANSFORMATION);
+				if (mismatch != null) {
+					status = TestStatus.FAILURE;
+					details = "The output of the test differs from the expected output: " + mismatch;
+				}
+			} else {
+				Source input = getParsedInputSource(rootPath, c.getInput());
+				timer.lap(Phase.DOCUMENT_PARSING);
+				Document obtainedOutput = TestSuiteDocumentBuilder.INSTANCE.get().newDocument();
+				Mismatch mismatch;
+				if (comparators.digest != null) {
+					mismatch = transformAndCompareDigests(timer, newTransformer(testStylesheet, c), comparators.digest,
+					                                      input, rootPath, c.getExpectedOutput(), obtainedOutput);
+				} else {
+					Result target = new DOMResult(obtainedOutput);
+					newTransformer(testStylesheet, c).transform(input, target);
+					timer.lap(Phase.TRANSFORMATION);
+					Source expectedOutput = getSource(rootPath, c.getExpectedOutput());
+					timer.lap(Phase.DOCUMENT_PARSING);
+					mismatch = comparators.tree.findMismatch(expectedOutput, target);
+					timer.lap(Phase.COMPARISON);
+				}
+				if (mismatch != null) {
+					status = TestStatus.FAILURE;
+					details = "The output of the test differs from the expected output at " + mismatch.getPath();
+					if (diagnosticsLevel != DiagnosticsLevel.OFF) {
+						diagnostics = failureDiagnostics.describe(mismatch);
+					}
+				} else if (diagnosticsLevel == DiagnosticsLevel.ALWAYS) {
+					diagnostics = failureDiagnostics.serialize(obtainedOutput);
+				}
+			}
+		} catch (RuntimeException | IOException | SAXException | TransformerException | XMLStreamException
+		         | SaxonApiException e) {
 			status = TestStatus.ERROR;
 			details = e.toString();
 		}
-		return new TestResult(c.getName(), status, details);
+		return new TestResult(c.getName(), status, details, timings, null, diagnostics);
+	}
+
+	/* Stream the output of the transformation into a comparison against the expected output file. Return the
+	 * description of the first difference, or null if there is none */
+	private String transformAndCompare(Transformer sourceStylesheet,
+	                                   StreamingOutputComparator streamingOutputComparator, Source input,
+	                                   Path rootPath, io.github.moonstroke.xencha.model.Source expectedOutputSource)
+			throws IOException, TransformerException, XMLStreamException {
+		Path expectedOutputPath = rootPath.resolve(expectedOutputSource.getPath());
+		try (InputStream expectedOutputStream = openSource(rootPath, expectedOutputSource)) {
+			XMLEventReader expectedOutput = TestSuiteXMLInputFactory.INSTANCE.get()
+			                                                                 .createXMLEventReader(expectedOutputPath.toUri().toString(),
+			                                                                                       expectedOutputStream);
+			try {
+				StreamingOutputComparator.Comparison comparison = streamingOutputComparator.compareTo(expectedOutput);
+				SAXResult target = new SAXResult(comparison);
+				target.setLexicalHandler(comparison);
+				/* The abort is not an error of the stylesheet: do not let Saxon report it */
+				Controller controller = ((TransformerImpl) sourceStylesheet).getUnderlyingController();
+				ErrorReporter errorReporter = controller.getErrorReporter();
+				controller.setErrorReporter(error -> {
+					if (!isMismatch(error.getCause())) {
+						errorReporter.report(error);
+					}
+				});
+				try {
+					sourceStylesheet.transform(input, target);
+				} catch (TransformerException e) {
+					/* The comparison aborts the transformation on the first difference */
+					if (comparison.getMismatch() == null) {
+						throw e;
+					}
+				}
+				if (comparison.areEqual()) {
+					return null;
+				}
+				return comparison.getMismatch() == null ? "incomplete output" : comparison.getMismatch();
+			} finally {
+				expectedOutput.close();
+			}
+		}
+	}
+
+	private static boolean isMismatch(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof StreamingOutputComparator.MismatchException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Digest the output of the transformation while building it in the given document, and compare it to the digest of
+	 * the expected output. Return the first difference, or null if there is none */
+	private Mismatch transformAndCompareDigests(PhaseTimer timer, Transformer sourceStylesheet,
+	                                            DigestOutputComparator digestOutputComparator, Source input,
+	                                            Path rootPath,
+	                                            io.github.moonstroke.xencha.model.Source expectedOutputSource,
+	                                            Document obtainedOutput)
+			throws IOException, SAXException, TransformerException {
+		TransformerHandler outputBuilder = ((SAXTransformerFactory) TestSuiteTransformerFactory.INSTANCE).newTransformerHandler();
+		outputBuilder.setResult(new DOMResult(obtainedOutput));
+		DigestOutputComparator.Digester digester = digestOutputComparator.newDigester(outputBuilder, outputBuilder);
+		SAXResult target = new SAXResult(digester);
+		target.setLexicalHandler(digester);
+		sourceStylesheet.transform(input, target);
+		timer.lap(Phase.TRANSFORMATION);
+		byte[] expectedDigest;
+		Document expectedOutput = null;
+		if (expectedOutputSource.getPath() == null) {
+			expectedOutput = (Document) ((DOMSource) getSource(rootPath, expectedOutputSource)).getNode();
+			if (expectedOutput == null) {
+				/* Empty inline content */
+				expectedOutput = TestSuiteDocumentBuilder.INSTANCE.get().newDocument();
+			}
+			expectedDigest = digestOutputComparator.digest(expectedOutput);
+		} else {
+			byte[] content = BatchCases.getContent(expectedOutputSource);
+			if (content == null) {
+				expectedDigest = digestOutputComparator.digest(rootPath.resolve(expectedOutputSource.getPath()));
+			} else {
+				/* The content read ahead, rather than the file which may have changed since */
+				InputSource contentSource = new InputSource(new ByteArrayInputStream(content));
+				contentSource.setSystemId(getSystemId(rootPath, expectedOutputSource));
+				expectedDigest = digestOutputComparator.digest(contentSource);
+			}
+		}
+		boolean digestsEqual = Arrays.equals(expectedDigest, digester.getDigest());
+		timer.lap(Phase.COMPARISON);
+		if (digestsEqual) {
+			return null;
+		}
+		if (expectedOutput == null) {
+			expectedOutput = (Document) ((DOMSource) getSource(rootPath, expectedOutputSource)).getNode();
+			timer.lap(Phase.DOCUMENT_PARSING);
+		}
+		Mismatch mismatch = digestOutputComparator.findMismatch(expectedOutput, obtainedOutput);
+		timer.lap(Phase.COMPARISON);
+		return mismatch;
+	}
+
+	/* Run the case through s9api, with the input and outputs as TinyTrees, and compare the outputs */
+	private boolean transformAndCompare(PhaseTimer timer, Templates testStylesheet,
+	                                    XdmOutputComparator xdmOutputComparator, Path rootPath, Case c)
+			throws IOException, SaxonApiException {
+		XsltTransformer transformer = loadTransformer(testStylesheet, c);
+		transformer.setInitialContextNode(buildNode(rootPath, c.getInput()));
+		timer.lap(Phase.DOCUMENT_PARSING);
+		XdmDestination target = new XdmDestination();
+		transformer.setDestination(target);
+		transformer.transform();
+		timer.lap(Phase.TRANSFORMATION);
+		XdmNode expectedOutput = buildNode(rootPath, c.getExpectedOutput());
+		timer.lap(Phase.DOCUMENT_PARSING);
+		boolean equal = xdmOutputComparator.areEqual(expectedOutput, target.getXdmNode());
+		timer.lap(Phase.COMPARISON);
+		return equal;
+	}
+
+	/* Transformers are not thread-safe: each case gets its own, with its parameters */
+	private Transformer newTransformer(Templates testStylesheet, Case c) throws TransformerConfigurationException {
+		Transformer transformer = testStylesheet.newTransformer();
+		if (profiler != null) {
+			((TransformerImpl) transformer).getUnderlyingController().setTraceListener(profiler.newTraceListener());
+		}
+		if (c.getParameters() != null) {
+			for (Parameters.Param param : c.getParameters().getParam()) {
+				/* Saxon accepts names in Clark notation */
+				transformer.setParameter(param.getName().toString(), toUntypedAtomic(param.getValue()));
+			}
+		}
+		return transformer;
+	}
+
+	private XsltTransformer loadTransformer(Templates testStylesheet, Case c) throws SaxonApiException {
+		XsltTransformer transformer = getExecutable(testStylesheet).load();
+		if (profiler != null) {
+			transformer.setTraceListener(profiler.newTraceListener());
+		}
+		if (c.getParameters() != null) {
+			for (Parameters.Param param : c.getParameters().getParam()) {
+				transformer.setParameter(new net.sf.saxon.s9api.QName(param.getName()),
+				                         toUntypedAtomic(param.getValue()));
+			}
+		}
+		return transformer;
+	}
+
+	/* Untyped values are cast to the declared types of the parameters */
+	private static XdmAtomicValue toUntypedAtomic(String value) {
+		return new XdmAtomicValue(new StringValue(value, BuiltInAtomicType.UNTYPED_ATOMIC));
+	}
+
+	private static XsltExecutable getExecutable(Templates testStylesheet) {
+		if (!(testStylesheet instanceof TemplatesImpl)) {
+			throw new IllegalStateException("Saxon stylesheet expected, got " + testStylesheet.getClass());
+		}
+		return ((TemplatesImpl) testStylesheet).getImplementation();
+	}
+
+	private XdmNode buildNode(Path rootPath, io.github.moonstroke.xencha.model.Source source)
+			throws IOException, SaxonApiException {
+		net.sf.saxon.s9api.DocumentBuilder documentBuilder = TestSuiteTransformerFactory.PROCESSOR.newDocumentBuilder();
+		if (source.getPath() == null) {
+			Element root = getInlineRoot(source);
+			/* Copy the inline content into a TinyTree; an empty one is an empty document, as for the JAXP engine */
+			Document document = root == null ? TestSuiteDocumentBuilder.INSTANCE.get().newDocument()
+			                                 : root.getOwnerDocument();
+			return documentBuilder.build(new DOMSource(document));
+		}
+		byte[] content = BatchCases.getContent(source);
+		if (content != null) {
+			return documentBuilder.build(new StreamSource(new ByteArrayInputStream(content), getSystemId(rootPath,
+			                                                                                            source)));
+		}
+		if (documentPool != null) {
+			return documentPool.getTree(rootPath.resolve(source.getPath()));
+		}
+		return documentBuilder.build(rootPath.resolve(source.getPath()).toFile());
+	}
+
+	/* Same as getSource, but leave the parsing of external inputs to the transformer, unless they are pooled */
+	private Source getInputSource(Path rootPath, io.github.moonstroke.xencha.model.Source source)
+			throws IOException, SAXException, SaxonApiException {
+		if (source.getPath() == null || documentPool != null && BatchCases.getContent(source) == null) {
+			return getParsedInputSource(rootPath, source);
+		}
+		return new StreamSource(openSource(rootPath, source), getSystemId(rootPath, source));
+	}
+
+	/* Same as getSource, but retrieve the pooled external inputs as Saxon trees: the transformer reads the DOM
+	 * documents through their node lists, which concurrent cases cannot share */
+	private Source getParsedInputSource(Path rootPath, io.github.moonstroke.xencha.model.Source source)
+			throws IOException, SAXException, SaxonApiException {
+		if (source.getPath() != null && documentPool != null && BatchCases.getContent(source) == null) {
+			return documentPool.getTree(rootPath.resolve(source.getPath())).getUnderlyingNode();
+		}
+		return getSource(rootPath, source);
 	}
 
 	private Result transform(Transformer sourceStylesheet, Source input) throws TransformerException {
-		Result target = new DOMResult(TestSuiteDocumentBuilder.INSTANCE.newDocument());
+		Result target = new DOMResult(TestSuiteDocumentBuilder.INSTANCE.get().newDocument());
 		sourceStylesheet.transform(input, target);
 		return target;
 	}
 
 	private Source getSource(Path rootPath, io.github.moonstroke.xencha.model.Source source) throws IOException, SAXException {
 		if (source.getPath() == null) {
-			List<Object> content = source.getInline().getContent();
-			if (content.isEmpty()) {
+			Element root = getInlineRoot(source);
+			if (root == null) {
 				return new DOMSource(/* empty source */);
 			}
-			Object root = content.get(0);
-			if (root instanceof String) {
-				String text = (String) root;
-				if (text.isBlank()) {
-					/* Whitespace only => discard (consider empty) */
-					if (content.size() == 1) {
-						return new DOMSource(/* empty source */);
-					}
-					root = content.get(1);
-				} else {
-					throw new IllegalStateException("Expected XML input, got text: \"" + text + "\"");
-				}
-			}
-			return new DOMSource(((Element) root).getOwnerDocument());
+			return new DOMSource(root.getOwnerDocument());
 		}
-		return new DOMSource(TestSuiteDocumentBuilder.INSTANCE.parse(rootPath.resolve(source.getPath()).toString()));
+		byte[] content = BatchCases.getContent(source);
+		if (content != null) {
+			return new DOMSource(TestSuiteDocumentBuilder.INSTANCE.get().parse(new ByteArrayInputStream(content),
+			                                                                   getSystemId(rootPath, source)));
+		}
+		if (documentPool != null) {
+			return new DOMSource(documentPool.getDocument(rootPath.resolve(source.getPath())));
+		}
+		return new DOMSource(TestSuiteDocumentBuilder.INSTANCE.get().parse(rootPath.resolve(source.getPath()).toString()));
 	}
 
+	/* Open the file of an external source, or its content if it was read ahead */
+	private static InputStream openSource(Path rootPath, io.github.moonstroke.xencha.model.Source source)
+			throws IOException {
+		byte[] content = BatchCases.getContent(source);
+		if (content != null) {
+			return new ByteArrayInputStream(content);
+		}
+		return Files.newInputStream(rootPath.resolve(source.getPath()));
+	}
 
-	private static class TestSuiteUnmarshaller {
-
-		private static final Unmarshaller INSTANCE;
+	private static String getSystemId(Path rootPath, io.github.moonstroke.xencha.model.Source source) {
+		return rootPath.resolve(source.getPath()).toUri().toString();
+	}
 
-		static {
-			try {
-				JAXBContext context = JAXBContext.newInstance(TestSuite.class);
-				INSTANCE = context.createUnmarshaller();
-				INSTANCE.setSchema(SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
-				                                .newSchema(TestRunner.class.getResource("/test.xsd")));
-			} catch (JAXBException | SAXException e) {
-				throw new ExceptionInInitializerError(e);
+	/* Retrieve the root element of the given inline source, or null if it is empty */
+	private static Element getInlineRoot(io.github.moonstroke.xencha.model.Source source) {
+		List<Object> content = source.getInline().getContent();
+		if (content.isEmpty()) {
+			return null;
+		}
+		Object root = content.get(0);
+		if (root instanceof String) {
+			String text = (String) root;
+			if (text.isBlank()) {
+				/* Whitespace only => discard (consider empty) */
+				if (content.size() == 1) {
+					return null;
+				}
+				root = content.get(1);
+			} else {
+				throw new IllegalStateException("Expected XML input, got text: \"" + text + "\"");
 			}
 		}
+		return (Element) root;
+	}
+
+
+	/* StAX input factories are not thread-safe: each thread gets its own, for the readers of the XML files */
+	static class TestSuiteXMLInputFactory {
+
+		static final ThreadLocal<XMLInputFactory> INSTANCE = ThreadLocal.withInitial(() -> {
+			XMLInputFactory factory = XMLInputFactory.newFactory();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			return factory;
+		});
 	}
 
 	private static class TestSuiteTransformerFactory {
 
 		private static final TransformerFactory INSTANCE = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl",
 		                                                                                  null);
+		/* Sharing the processor of the factory ensures that trees built through s9api share its name pool */
+		private static final Processor PROCESSOR = ((SaxonTransformerFactory) INSTANCE).getProcessor();
 	}
 
-	private static class TestSuiteDocumentBuilder {
+	/* Same as above: document builders are not thread-safe, hence one per thread */
+	static class TestSuiteDocumentBuilder {
+
+		private static final DocumentBuilderFactory FACTORY = DocumentBuilderFactory.newInstance();
 
-		private static final DocumentBuilder INSTANCE;
 		static {
+			FACTORY.setNamespaceAware(true);
 			try {
-				DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-				documentBuilderFactory.setNamespaceAware(true);
-				INSTANCE = documentBuilderFactory.newDocumentBuilder();
+				/* Deferred nodes are expanded when first read, which the tasks of a parallel comparison would do
+				 * concurrently */
+				FACTORY.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
 			} catch (ParserConfigurationException e) {
-				throw new ExceptionInInitializerError(e);
+				throw new IllegalStateException("The DOM implementation does not support eager node expansion", e);
 			}
 		}
+
+		static final ThreadLocal<DocumentBuilder> INSTANCE = ThreadLocal.withInitial(() -> {
+			try {
+				return FACTORY.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new IllegalStateException(e);
+			}
+		});
 	}
 }
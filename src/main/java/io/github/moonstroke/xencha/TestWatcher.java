@@ -0,0 +1,150 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * This class reruns test suites when the files they depend on are modified.
+ *
+ * The suites are run by a same test runner, so that the stylesheets compiled by a run are reused by the next ones when
+ * they have not changed.
+ *
+ * @see TestSuiteDependencies
+ */
+public class TestWatcher {
+
+	/* The delay during which to wait for more changes after one is detected, so that the saving of multiple files
+	 * triggers only one run */
+	private static final long SETTLE_DELAY_MILLIS = 200;
+
+	private final TestRunner testRunner;
+	/* The dependencies of each suite, indexed by the absolute path of its descriptor, in order of the runner's paths */
+	private final Map<Path, Set<Path>> dependencies = new LinkedHashMap<>();
+	private final Map<Path, WatchKey> watchedDirectories = new HashMap<>();
+
+
+	/**
+	 * Construct a watcher for the test suites of the given runner.
+	 *
+	 * @param testRunner The runner of the test suites to watch
+	 */
+	public TestWatcher(TestRunner testRunner) {
+		this.testRunner = testRunner;
+		for (Path path : testRunner.getPaths()) {
+			dependencies.put(path.toAbsolutePath().normalize(), Collections.emptySet());
+		}
+	}
+
+	/**
+	 * Watch the dependencies of the test suites, and rerun the suites affected by each change.
+	 *
+	 * This method only returns if the watch is interrupted.
+	 *
+	 * @param afterRun The action to run after each run, once its results are reported to the listeners of the runner
+	 *
+	 * @throws IOException if the file system cannot be watched
+	 */
+	public void watch(Runnable afterRun) throws IOException {
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			updateWatchedDirectories(watchService, dependencies.keySet());
+			while (true) {
+				Set<Path> changedPaths = new HashSet<>();
+				boolean overflow;
+				try {
+					overflow = awaitChanges(watchService, changedPaths);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				Collection<Path> affectedSuites = new ArrayList<>();
+				for (Map.Entry<Path, Set<Path>> suiteDependencies : dependencies.entrySet()) {
+					if (overflow || !Collections.disjoint(suiteDependencies.getValue(), changedPaths)) {
+						affectedSuites.add(suiteDependencies.getKey());
+					}
+				}
+				if (!affectedSuites.isEmpty()) {
+					/* The dependencies themselves may have changed */
+					updateWatchedDirectories(watchService, affectedSuites);
+					testRunner.runTests(affectedSuites, null);
+					afterRun.run();
+				}
+			}
+		}
+	}
+
+	/* Wait for file changes, and collect them until they settle. Return whether some changes were lost */
+	private boolean awaitChanges(WatchService watchService, Set<Path> changedPaths) throws InterruptedException {
+		boolean overflow = false;
+		WatchKey key = watchService.take();
+		do {
+			Path directory = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == OVERFLOW) {
+					overflow = true;
+				} else {
+					changedPaths.add(directory.resolve((Path) event.context()));
+				}
+			}
+			key.reset();
+			key = watchService.poll(SETTLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		} while (key != null);
+		return overflow;
+	}
+
+	/* Recompute the dependencies of the given suites, and watch the directories containing them */
+	private void updateWatchedDirectories(WatchService watchService, Collection<Path> testSuitePaths)
+			throws IOException {
+		for (Path testSuitePath : testSuitePaths) {
+			Set<Path> suiteDependencies;
+			try {
+				suiteDependencies = TestSuiteDependencies.of(testSuitePath);
+			} catch (IOException | XMLStreamException e) {
+				/* The descriptor is invalid: only watch it, the error is reported when running it */
+				suiteDependencies = Collections.singleton(testSuitePath);
+			}
+			dependencies.put(testSuitePath, suiteDependencies);
+		}
+		Set<Path> directories = new HashSet<>();
+		for (Set<Path> suiteDependencies : dependencies.values()) {
+			for (Path dependency : suiteDependencies) {
+				directories.add(dependency.getParent());
+			}
+		}
+		for (Path directory : directories) {
+			if (!watchedDirectories.containsKey(directory) && Files.isDirectory(directory)) {
+				watchedDirectories.put(directory,
+				                       directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+			}
+		}
+		watchedDirectories.keySet().removeIf(directory -> {
+			if (directories.contains(directory)) {
+				return false;
+			}
+			watchedDirectories.get(directory).cancel();
+			return true;
+		});
+	}
+}
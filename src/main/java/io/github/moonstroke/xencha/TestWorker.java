@@ -0,0 +1,83 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * This class is the entry point of the worker processes of a forked run: it is started by the parent process, and is
+ * not meant to be run directly.
+ *
+ * @see TestRunner#setFork(int, java.util.List, int)
+ */
+public final class TestWorker {
+
+	private TestWorker() {
+		/* Static methods only */
+	}
+
+	/**
+	 * Entry method.
+	 *
+	 * @param args Ignored: the configuration is read from the standard input
+	 *
+	 * @throws IOException if the communication with the parent process fails
+	 */
+	public static void main(String[] args) throws IOException {
+		/* The standard output carries the results: what the stylesheets and their extensions print is diverted */
+		FileOutputStream standardOutput = new FileOutputStream(FileDescriptor.out);
+		System.setOut(System.err);
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(standardOutput));
+		DataInputStream input = new DataInputStream(new BufferedInputStream(System.in));
+		TestRunner configuration = TestRunner.readConfiguration(input);
+		ExecutorService caseExecutor = configuration.newCaseExecutor();
+		try {
+			TestSuiteRunner runner = configuration.newTestSuiteRunner(caseExecutor);
+			runner.addListener(new TestListener() {
+
+				@Override
+				public void testCaseFinished(String testSuiteName, TestResult result) {
+					try {
+						synchronized (output) {
+							output.writeByte(WorkerProtocol.CASE_FINISHED);
+							WorkerProtocol.writeString(output, testSuiteName);
+							WorkerProtocol.writeTestResult(output, result);
+							output.flush();
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+			while (true) {
+				String path;
+				try {
+					path = input.readUTF();
+				} catch (EOFException e) {
+					/* Released by the parent */
+					break;
+				}
+				TestSuiteResult result = runner.runSuite(Path.of(path));
+				synchronized (output) {
+					output.writeByte(WorkerProtocol.SUITE_FINISHED);
+					WorkerProtocol.writeTestSuiteResult(output, result);
+					output.flush();
+				}
+			}
+		} finally {
+			if (caseExecutor != null) {
+				caseExecutor.shutdownNow();
+			}
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs test suites in a pool of worker processes, and gathers their results as if they had been run in this
+ * process.
+ *
+ * The suites are dispatched one at a time to the first idle worker, so that the long suites do not hold up the
+ * others. Each worker is replaced after a given number of suites, to bound the memory its caches retain, and as soon
+ * as it dies: the suite it was running is reported as an error, with the results of the cases finished before.
+ *
+ * @see WorkerProtocol
+ */
+final class WorkerPool {
+
+	/* The exit status of a JVM stopped by -XX:+ExitOnOutOfMemoryError */
+	private static final int OUT_OF_MEMORY_EXIT_STATUS = 3;
+
+	/* The delay given to a worker to exit once released, or once its output is closed */
+	private static final long EXIT_TIMEOUT_SECONDS = 10;
+
+	private final TestRunner configuration;
+	private final int workerCount;
+	private final List<String> jvmOptions;
+	private final int suitesPerWorker;
+	private final boolean failFast;
+	private final Collection<TestListener> listeners;
+	/* Set on the first failure or error in fail-fast mode: no more suite is dispatched */
+	private volatile boolean stopped;
+
+
+	WorkerPool(TestRunner configuration, int workerCount, List<String> jvmOptions, int suitesPerWorker,
+	           boolean failFast, Collection<TestListener> listeners) {
+		this.configuration = configuration;
+		this.workerCount = workerCount;
+		this.jvmOptions = jvmOptions;
+		this.suitesPerWorker = suitesPerWorker;
+		this.failFast = failFast;
+		this.listeners = listeners;
+	}
+
+	/* Run the given suites, and add their results to the given list in the same order, unless it is null. Return the
+	 * number of suites run */
+	int runTests(Collection<Path> paths, List<TestSuiteResult> results) {
+		/* The paths may still be being discovered: each one is taken by the first idle worker as it comes */
+		Iterator<Path> pathIterator = paths.iterator();
+		Map<Integer, TestSuiteResult> indexedResults = new ConcurrentHashMap<>();
+		int[] nextIndex = { 0 };
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < workerCount; ++i) {
+				futures.add(executor.submit(() -> {
+					Worker worker = null;
+					try {
+						while (true) {
+							Path path;
+							int index;
+							synchronized (pathIterator) {
+								if (stopped || !pathIterator.hasNext()) {
+									break;
+								}
+								path = pathIterator.next();
+								index = nextIndex[0]++;
+							}
+							if (worker == null) {
+								worker = new Worker();
+							}
+							TestSuiteResult result = worker.runSuite(path);
+							if (results != null) {
+								indexedResults.put(index, result);
+							}
+							if (worker.dead || worker.suiteCount == suitesPerWorker) {
+								worker.release();
+								worker = null;
+							}
+						}
+					} finally {
+						if (worker != null) {
+							worker.release();
+						}
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				TestRunner.getResult(future);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (results != null) {
+			for (int i = 0; i < nextIndex[0]; ++i) {
+				results.add(indexedResults.get(i));
+			}
+		}
+		return nextIndex[0];
+	}
+
+
+	private class Worker {
+
+		private final Process process;
+		private final DataOutputStream input;
+		private final DataInputStream output;
+		private int suiteCount;
+		private boolean dead;
+
+
+		Worker() {
+			List<String> command = new ArrayList<>();
+			command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+			command.addAll(jvmOptions);
+			command.add("-XX:+ExitOnOutOfMemoryError");
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(TestWorker.class.getName());
+			try {
+				process = new ProcessBuilder(command).redirectError(Redirect.INHERIT).start();
+				input = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+				output = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+				configuration.writeConfiguration(input);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot start a worker process", e);
+			}
+		}
+
+		TestSuiteResult runSuite(Path path) {
+			for (TestListener listener : listeners) {
+				listener.testSuiteStarted(path);
+			}
+			++suiteCount;
+			/* Kept to be reported if the worker dies before the end of the suite */
+			List<TestResult> testResults = new ArrayList<>();
+			TestSuiteResult result;
+			try {
+				input.writeUTF(path.toAbsolutePath().toString());
+				input.flush();
+				while (true) {
+					byte message = output.readByte();
+					if (message == WorkerProtocol.SUITE_FINISHED) {
+						result = WorkerProtocol.readTestSuiteResult(output);
+						break;
+					}
+					if (message != WorkerProtocol.CASE_FINISHED) {
+						throw new IOException("Unexpected message from a worker process: " + message);
+					}
+					String testSuiteName = WorkerProtocol.readString(output);
+					TestResult testResult = WorkerProtocol.readTestResult(output);
+					testResults.add(testResult);
+					if (failFast && testResult.getStatus() != TestStatus.SUCCESS) {
+						stopped = true;
+					}
+					for (TestListener listener : listeners) {
+						listener.testCaseFinished(testSuiteName, testResult);
+					}
+				}
+			} catch (IOException e) {
+				dead = true;
+				result = new TestSuiteResult(path.toString());
+				for (TestResult testResult : testResults) {
+					result.addTestResult(testResult);
+				}
+				result.setStatus(TestStatus.ERROR);
+				result.setDetails(describeDeath(e));
+			}
+			result.setPath(path);
+			if (failFast && result.getStatus() != TestStatus.SUCCESS) {
+				stopped = true;
+			}
+			for (TestListener listener : listeners) {
+				listener.testSuiteFinished(result);
+			}
+			return result;
+		}
+
+		private String describeDeath(IOException e) {
+			try {
+				if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+					return "The worker process stopped responding: " + e;
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				process.destroyForcibly();
+				return "Interrupted while waiting for the worker process";
+			}
+			if (process.exitValue() == OUT_OF_MEMORY_EXIT_STATUS) {
+				return "The worker process ran out of memory";
+			}
+			return "The worker process exited with status " + process.exitValue();
+		}
+
+		/* Let the worker exit, once it has finished its suites */
+		void release() {
+			try {
+				input.close();
+			} catch (IOException e) {
+				/* The worker is already dead */
+			}
+			try {
+				if (!process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				process.destroyForcibly();
+			}
+		}
+	}
+}
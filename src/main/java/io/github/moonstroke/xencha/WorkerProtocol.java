@@ -0,0 +1,155 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class encodes the messages exchanged with the worker processes of a forked run.
+ *
+ * The parent sends the configuration of the run, then the absolute path to each suite to run; the worker answers with
+ * the result of each case of the suite as soon as it is finished, then with the result of the suite. The worker exits
+ * when its input is closed.
+ *
+ * @see WorkerPool
+ * @see TestWorker
+ */
+final class WorkerProtocol {
+
+	static final byte CASE_FINISHED = 'C';
+	static final byte SUITE_FINISHED = 'F';
+
+	private static final Phase[] PHASES = Phase.values();
+
+
+	private WorkerProtocol() {
+		/* Static methods only */
+	}
+
+	/* Strings are not limited in length, unlike with writeUTF: diagnostics can be long */
+	static void writeString(DataOutput output, String str) throws IOException {
+		if (str == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	static String readString(DataInput input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeTestResult(DataOutput output, TestResult result) throws IOException {
+		writeString(output, result.getName());
+		output.writeByte(result.getStatus().ordinal());
+		output.writeBoolean(result.isCached());
+		if (result.isCached()) {
+			return;
+		}
+		writeString(output, result.getDetails());
+		writeTimings(output, result.getTimings());
+		BenchmarkStatistics statistics = result.getBenchmarkStatistics();
+		output.writeBoolean(statistics != null);
+		if (statistics != null) {
+			output.writeInt(statistics.getIterations());
+			output.writeDouble(statistics.getMeanDuration());
+			output.writeDouble(statistics.getDurationVariance());
+			output.writeLong(statistics.getP50Duration());
+			output.writeLong(statistics.getP90Duration());
+			output.writeLong(statistics.getP99Duration());
+			output.writeLong(statistics.getMedianAllocatedBytes());
+		}
+		writeString(output, result.getDiagnostics());
+	}
+
+	static TestResult readTestResult(DataInput input) throws IOException {
+		String name = readString(input);
+		TestStatus status = TestStatus.values()[input.readByte()];
+		if (input.readBoolean()) {
+			return TestResult.fromCache(name, status);
+		}
+		String details = readString(input);
+		PhaseTimings timings = readTimings(input);
+		BenchmarkStatistics statistics = null;
+		if (input.readBoolean()) {
+			statistics = new BenchmarkStatistics(input.readInt(), input.readDouble(), input.readDouble(),
+			                                     input.readLong(), input.readLong(), input.readLong(),
+			                                     input.readLong());
+		}
+		return new TestResult(name, status, details, timings, statistics, readString(input));
+	}
+
+	static void writeTestSuiteResult(DataOutput output, TestSuiteResult result) throws IOException {
+		Collection<TestResult> testResults = result.getTestResults();
+		writeString(output, result.getName());
+		output.writeByte(result.getStatus().ordinal());
+		writeString(output, result.getDetails());
+		/* Only the timings that are not those of a case: the others are summed again when the cases are added */
+		PhaseTimings suiteTimings = result.getTimings();
+		PhaseTimings ownTimings = new PhaseTimings();
+		for (Phase phase : PHASES) {
+			long duration = suiteTimings.getDuration(phase);
+			long allocatedBytes = suiteTimings.getAllocatedBytes(phase);
+			for (TestResult testResult : testResults) {
+				duration -= testResult.getTimings().getDuration(phase);
+				allocatedBytes -= testResult.getTimings().getAllocatedBytes(phase);
+			}
+			ownTimings.add(phase, duration, allocatedBytes);
+		}
+		writeTimings(output, ownTimings);
+		output.writeInt(testResults.size());
+		for (TestResult testResult : testResults) {
+			writeTestResult(output, testResult);
+		}
+	}
+
+	static TestSuiteResult readTestSuiteResult(DataInput input) throws IOException {
+		TestSuiteResult result = new TestSuiteResult(readString(input));
+		TestStatus status = TestStatus.values()[input.readByte()];
+		String details = readString(input);
+		result.addTimings(readTimings(input));
+		int testResultCount = input.readInt();
+		List<TestResult> testResults = new ArrayList<>(testResultCount);
+		for (int i = 0; i < testResultCount; ++i) {
+			testResults.add(readTestResult(input));
+		}
+		for (TestResult testResult : testResults) {
+			result.addTestResult(testResult);
+		}
+		/* The status of the suite is not always that of its cases */
+		result.setStatus(status);
+		if (details != null) {
+			result.setDetails(details);
+		}
+		return result;
+	}
+
+	private static void writeTimings(DataOutput output, PhaseTimings timings) throws IOException {
+		for (Phase phase : PHASES) {
+			output.writeLong(timings.getDuration(phase));
+			output.writeLong(timings.getAllocatedBytes(phase));
+		}
+	}
+
+	private static PhaseTimings readTimings(DataInput input) throws IOException {
+		PhaseTimings timings = new PhaseTimings();
+		for (Phase phase : PHASES) {
+			timings.add(phase, input.readLong(), input.readLong());
+		}
+		return timings;
+	}
+}
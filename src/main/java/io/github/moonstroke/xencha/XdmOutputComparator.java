@@ -0,0 +1,133 @@
+/* SPDX-FileCopyrightText: 2025 (c) Joachim MARIE <moonstroke+github@live.fr>
+ * SPDX-License-Identifier: MIT */
+package io.github.moonstroke.xencha;
+
+import java.util.Iterator;
+
+import net.sf.saxon.om.AttributeInfo;
+import net.sf.saxon.om.AttributeMap;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.type.Type;
+
+/**
+ * This class compares output trees held in Saxon's native tree model.
+ *
+ * The comparison follows the same rules as {@link OutputComparator}, except that attributes are matched by name
+ * regardless of their order, and that namespace declarations are not compared as attributes.
+ */
+public class XdmOutputComparator {
+
+	private final boolean ignoreWhitespaceNodes;
+	private final boolean ignoreDifferingNsPrefixes;
+
+
+	/**
+	 * Construct a new output comparator for XDM trees.
+	 *
+	 * @param ignoreWhitespaceNodes     Whether to skip whitespace-only text nodes
+	 * @param ignoreDifferingNsPrefixes Whether to ignore differences in prefixes for a same namespace
+	 */
+	public XdmOutputComparator(boolean ignoreWhitespaceNodes, boolean ignoreDifferingNsPrefixes) {
+		this.ignoreWhitespaceNodes = ignoreWhitespaceNodes;
+		this.ignoreDifferingNsPrefixes = ignoreDifferingNsPrefixes;
+	}
+
+	/**
+	 * Compare the given documents for equality.
+	 *
+	 * @param expectedOutput The first document
+	 * @param obtainedOutput The second document
+	 *
+	 * @return {@code true} if, and only if, the document elements of the two trees are recursively equal
+	 */
+	public boolean areEqual(XdmNode expectedOutput, XdmNode obtainedOutput) {
+		NodeInfo expectedRoot = getDocumentElement(expectedOutput.getUnderlyingNode());
+		NodeInfo obtainedRoot = getDocumentElement(obtainedOutput.getUnderlyingNode());
+		if (expectedRoot == null || obtainedRoot == null) {
+			return expectedRoot == obtainedRoot;
+		}
+		return areEqual(expectedRoot, obtainedRoot);
+	}
+
+	private static NodeInfo getDocumentElement(NodeInfo node) {
+		if (node.getNodeKind() != Type.DOCUMENT) {
+			throw new IllegalArgumentException("Documents expected");
+		}
+		for (NodeInfo child : node.children()) {
+			if (child.getNodeKind() == Type.ELEMENT) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	private boolean areEqual(NodeInfo node1, NodeInfo node2) {
+		int nodeKind = node1.getNodeKind();
+		if (nodeKind != node2.getNodeKind()) {
+			return false;
+		}
+		switch (nodeKind) {
+		case Type.ELEMENT:
+			return haveSameName(node1, node2) && haveSameAttributes(node1.attributes(), node2.attributes())
+			       && haveSameChildren(node1, node2);
+		case Type.PROCESSING_INSTRUCTION:
+			return node1.getLocalPart().equals(node2.getLocalPart())
+			       && node1.getStringValue().equals(node2.getStringValue());
+		default:
+			return node1.getStringValue().equals(node2.getStringValue());
+		}
+	}
+
+	private boolean haveSameName(NodeInfo node1, NodeInfo node2) {
+		/* Trees built by a same configuration share their name pool: equal fingerprints mean equal expanded names */
+		if (node1.hasFingerprint() && node2.hasFingerprint()) {
+			if (node1.getFingerprint() != node2.getFingerprint()) {
+				return false;
+			}
+		} else if (!node1.getLocalPart().equals(node2.getLocalPart()) || !node1.getURI().equals(node2.getURI())) {
+			return false;
+		}
+		return ignoreDifferingNsPrefixes || node1.getPrefix().equals(node2.getPrefix());
+	}
+
+	private boolean haveSameAttributes(AttributeMap attrs1, AttributeMap attrs2) {
+		if (attrs1.size() != attrs2.size()) {
+			return false;
+		}
+		for (AttributeInfo attr1 : attrs1) {
+			AttributeInfo attr2 = attrs2.get(attr1.getNodeName().getNamespaceUri(), attr1.getNodeName().getLocalPart());
+			if (attr2 == null || !attr1.getValue().equals(attr2.getValue())
+			    || !ignoreDifferingNsPrefixes
+			       && !attr1.getNodeName().getPrefix().equals(attr2.getNodeName().getPrefix())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean haveSameChildren(NodeInfo node1, NodeInfo node2) {
+		Iterator<? extends NodeInfo> children1 = node1.children().iterator();
+		Iterator<? extends NodeInfo> children2 = node2.children().iterator();
+		while (true) {
+			NodeInfo child1 = nextChild(children1);
+			NodeInfo child2 = nextChild(children2);
+			if (child1 == null || child2 == null) {
+				return child1 == child2; /* Both exhausted */
+			}
+			if (!areEqual(child1, child2)) {
+				return false;
+			}
+		}
+	}
+
+	private NodeInfo nextChild(Iterator<? extends NodeInfo> children) {
+		while (children.hasNext()) {
+			NodeInfo child = children.next();
+			if (!ignoreWhitespaceNodes || child.getNodeKind() != Type.TEXT || !child.getStringValue().isBlank()) {
+				return child;
+			}
+		}
+		return null;
+	}
+}